@@ -0,0 +1,363 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.loadtest;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfiguration;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.mail.BodyPart;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.internet.MimeMessage;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.Dwese2526TicketLoggerWebappAlvarosegoviaApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.sql.DataSource;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba de carga del flujo de recuperación de contraseña: {@code POST /auth/forgot} y
+ * {@code POST /auth/reset-password} con N usuarios y C clientes concurrentes.
+ * <p>
+ * Arranca la aplicación completa contra un MariaDB embebido (MariaDB4j) y un SMTP local (GreenMail),
+ * así que no necesita servicios externos. Cada cliente tiene su propia sesión y token CSRF, como un
+ * navegador; solo se mide el POST. Informa de p50/p99, rendimiento, conexiones del pool de Hikari en
+ * uso (máximo muestreado) y el retraso de entrega del correo ({@code mail_outbox.sent_at - created_at}).
+ * </p>
+ * <p>
+ * Solo se compila y ejecuta con el perfil Maven {@code loadtest}. Parámetros (propiedades del sistema):
+ * {@code loadtest.users} (200), {@code loadtest.concurrency} (16), {@code loadtest.pool-size} (10) y
+ * {@code loadtest.mail-timeout} (PT2M).
+ * </p>
+ */
+class PasswordResetLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordResetLoadTest.class);
+
+    private static final int USERS = Integer.getInteger("loadtest.users", 200);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 16);
+    private static final int POOL_SIZE = Integer.getInteger("loadtest.pool-size", 10);
+    private static final Duration MAIL_TIMEOUT = Duration.parse(System.getProperty("loadtest.mail-timeout", "PT2M"));
+
+    private static final String EMAIL_DOMAIN = "@loadtest.local";
+    private static final String NEW_PASSWORD = "LoadTest-Pass-2024";
+
+    private static final Pattern CSRF = Pattern.compile("name=\"_csrf\"\\s+value=\"([^\"]+)\"|value=\"([^\"]+)\"\\s+name=\"_csrf\"");
+    private static final Pattern TOKEN = Pattern.compile("token=([A-Za-z0-9_-]{43})");
+
+    private static DB db;
+    private static GreenMail greenMail;
+    private static ConfigurableApplicationContext context;
+    private static String baseUrl;
+    private static JdbcTemplate jdbcTemplate;
+    private static HikariPoolMXBean pool;
+
+    @BeforeAll
+    static void startEnvironment() throws Exception {
+        DBConfigurationBuilder dbConfig = DBConfigurationBuilder.newBuilder();
+        dbConfig.setPort(0); // puerto libre
+        if ("root".equals(System.getProperty("user.name"))) {
+            // mariadbd se niega a arrancar como root salvo que se indique explícitamente (contenedores de CI)
+            dbConfig.addArg("--user=root");
+        }
+        DBConfiguration configuration = dbConfig.build();
+        db = DB.newEmbeddedDB(configuration);
+        db.start();
+        db.createDB("ticketlogger");
+
+        greenMail = new GreenMail(ServerSetupTest.SMTP.dynamicPort());
+        greenMail.start();
+
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("server.port", 0);
+        props.put("spring.datasource.url", configuration.getURL("ticketlogger"));
+        props.put("spring.datasource.username", "root");
+        props.put("spring.datasource.password", "");
+        props.put("spring.datasource.driver-class-name", "org.mariadb.jdbc.Driver");
+        props.put("spring.datasource.hikari.maximum-pool-size", POOL_SIZE);
+        props.put("spring.jpa.show-sql", false);
+        props.put("logging.level.org.springframework.jdbc.datasource.DataSourceTransactionManager", "INFO");
+        props.put("spring.devtools.restart.enabled", false);
+        props.put("app.upload-root", Files.createTempDirectory("loadtest-uploads").toString());
+        props.put("spring.security.oauth2.client.registration.github.client-id", "loadtest");
+        props.put("spring.security.oauth2.client.registration.github.client-secret", "loadtest");
+        props.put("gemini.api.key", "loadtest");
+        props.put("gemini.api.baseUrl", "http://127.0.0.1:9");
+        props.put("gemini.api.model", "loadtest");
+        props.put("spring.mail.host", "127.0.0.1");
+        props.put("spring.mail.port", greenMail.getSmtp().getPort());
+        props.put("spring.mail.username", "");
+        props.put("spring.mail.password", "");
+        props.put("spring.mail.from", "noreply" + EMAIL_DOMAIN);
+        props.put("spring.mail.properties.mail.smtp.auth", false);
+        props.put("spring.mail.properties.mail.smtp.starttls.enable", false);
+        props.put("spring.mail.properties.mail.smtp.starttls.required", false);
+        // Todas las peticiones salen de 127.0.0.1: con el límite por IP se mediría el 429
+        props.put("app.rate-limit.enabled", false);
+
+        // Como argumentos de línea de comandos: tienen prioridad sobre application.properties
+        String[] args = props.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        context = new SpringApplicationBuilder(Dwese2526TicketLoggerWebappAlvarosegoviaApplication.class).run(args);
+        baseUrl = "http://127.0.0.1:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        pool = context.getBean(DataSource.class).unwrap(HikariDataSource.class).getHikariPoolMXBean();
+
+        seedUsers(context.getBean(PasswordEncoder.class).encode("Initial-Pass-2024"));
+    }
+
+    @AfterAll
+    static void stopEnvironment() throws Exception {
+        if (context != null) context.close();
+        if (greenMail != null) greenMail.stop();
+        if (db != null) db.stop();
+    }
+
+    @Test
+    void forgotAndResetPasswordUnderLoad() throws Exception {
+        logger.info("Prueba de carga: {} usuarios, {} clientes concurrentes, pool de {} conexiones",
+                USERS, CONCURRENCY, POOL_SIZE);
+
+        // 1) Solicitudes de recuperación
+        PhaseResult forgot = runPhase("POST /auth/forgot", i -> {
+            String email = email(i);
+            return new Call("/auth/forgot-password", "/auth/forgot", Map.of("email", email));
+        });
+        assertEquals(0, forgot.errors, "Solicitudes de recuperación fallidas");
+
+        // 2) Entrega de correo y extracción de los tokens
+        assertTrue(greenMail.waitForIncomingEmail(MAIL_TIMEOUT.toMillis(), USERS), "No han llegado todos los correos");
+        Map<String, String> tokens = tokensByRecipient(greenMail.getReceivedMessages());
+        assertEquals(USERS, tokens.size(), "Correos sin enlace de recuperación");
+        List<Long> mailLag = jdbcTemplate.queryForList(
+                "SELECT TIMESTAMPDIFF(MICROSECOND, created_at, sent_at) FROM mail_outbox "
+                        + "WHERE status = 'SENT' AND recipient LIKE ?", Long.class, "%" + EMAIL_DOMAIN);
+
+        // 3) Cambio de contraseña con cada token
+        PhaseResult reset = runPhase("POST /auth/reset-password", i -> {
+            String token = tokens.get(email(i));
+            return new Call("/auth/reset-password?token=" + token, "/auth/reset-password",
+                    Map.of("token", token, "newPassword", NEW_PASSWORD, "confirmPassword", NEW_PASSWORD));
+        });
+        assertEquals(0, reset.errors, "Cambios de contraseña fallidos");
+        Integer used = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM password_reset_tokens t JOIN users u ON u.id = t.user_id "
+                        + "WHERE t.used_at IS NOT NULL AND u.email LIKE ?", Integer.class, "%" + EMAIL_DOMAIN);
+        assertTrue(used != null && used >= USERS, "Tokens sin consumir");
+
+        logger.info("\n{}\n{}\n{}", forgot.format(), reset.format(),
+                String.format("%-26s n=%d p50=%.1fms p99=%.1fms max=%.1fms", "Entrega de correo",
+                        mailLag.size(), percentile(mailLag, 0.50) / 1_000.0, percentile(mailLag, 0.99) / 1_000.0,
+                        percentile(mailLag, 1.0) / 1_000.0));
+    }
+
+    /**
+     * Ejecuta una llamada por usuario repartidas entre {@link #CONCURRENCY} clientes, muestreando a la
+     * vez el uso del pool de conexiones.
+     */
+    private PhaseResult runPhase(String name, IntFunction<Call> callForUser) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        long[] latencies = new long[USERS];
+        ConnectionSampler sampler = new ConnectionSampler();
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+
+        Thread samplerThread = Thread.ofPlatform().daemon().start(sampler);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < CONCURRENCY; c++) {
+                futures.add(clients.submit(() -> {
+                    // Un cliente = un navegador: su propia cookie de sesión y su token CSRF
+                    HttpClient http = HttpClient.newBuilder()
+                            .cookieHandler(new CookieManager())
+                            .followRedirects(HttpClient.Redirect.NEVER)
+                            .connectTimeout(Duration.ofSeconds(5))
+                            .build();
+                    for (int i = next.getAndIncrement(); i < USERS; i = next.getAndIncrement()) {
+                        Call call = callForUser.apply(i);
+                        String csrf = fetchCsrf(http, call.formPath());
+                        long t0 = System.nanoTime();
+                        HttpResponse<Void> response = http.send(post(call.postPath(), call.fields(), csrf),
+                                HttpResponse.BodyHandlers.discarding());
+                        latencies[i] = System.nanoTime() - t0;
+                        if (!isExpectedRedirect(response)) {
+                            errors.incrementAndGet();
+                            logger.warn("{}: respuesta inesperada {} {}", name, response.statusCode(),
+                                    response.headers().firstValue("Location").orElse(""));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            clients.shutdownNow();
+            sampler.stop();
+            samplerThread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new PhaseResult(name, latencies, elapsed, errors.get(), sampler.maxActive, sampler.maxTotal,
+                sampler.maxWaiting);
+    }
+
+    private static boolean isExpectedRedirect(HttpResponse<?> response) {
+        // forgot redirige a su formulario; reset a /login. Cualquier otra cosa es un fallo
+        String location = response.headers().firstValue("Location").orElse("");
+        return response.statusCode() == 302
+                && (location.endsWith("/auth/forgot-password") || location.endsWith("/login"));
+    }
+
+    private String fetchCsrf(HttpClient http, String path) throws Exception {
+        HttpResponse<String> page = http.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher m = CSRF.matcher(page.body());
+        if (!m.find()) {
+            throw new IllegalStateException("Sin token CSRF en " + path + " (HTTP " + page.statusCode() + ")");
+        }
+        return m.group(1) != null ? m.group(1) : m.group(2);
+    }
+
+    private HttpRequest post(String path, Map<String, String> fields, String csrf) {
+        Map<String, String> form = new LinkedHashMap<>(fields);
+        form.put("_csrf", csrf);
+        String body = form.entrySet().stream()
+                .map(e -> e.getKey() + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static void seedUsers(String passwordHash) {
+        List<Object[]> rows = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            rows.add(new Object[]{email(i), passwordHash});
+        }
+        jdbcTemplate.batchUpdate("INSERT IGNORE INTO users (email, password_hash, active, account_non_locked, "
+                + "email_verified, must_change_password) VALUES (?, ?, TRUE, TRUE, TRUE, FALSE)", rows);
+    }
+
+    private static String email(int i) {
+        return "user" + i + EMAIL_DOMAIN;
+    }
+
+    private static Map<String, String> tokensByRecipient(MimeMessage[] messages) throws Exception {
+        Map<String, String> tokens = new HashMap<>();
+        for (MimeMessage message : messages) {
+            Matcher m = TOKEN.matcher(textOf(message));
+            if (m.find()) {
+                // Con varios correos para el mismo usuario vale el último (los anteriores se invalidan)
+                tokens.put(message.getAllRecipients()[0].toString(), m.group(1));
+            }
+        }
+        return tokens;
+    }
+
+    private static String textOf(Part part) throws Exception {
+        Object content = part.getContent();
+        if (content instanceof String text) return text;
+        if (content instanceof Multipart multipart) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                BodyPart bodyPart = multipart.getBodyPart(i);
+                sb.append(textOf(bodyPart));
+            }
+            return sb.toString();
+        }
+        return "";
+    }
+
+    private static long percentile(List<Long> values, double p) {
+        return percentile(values.stream().mapToLong(Long::longValue).toArray(), p);
+    }
+
+    private static long percentile(long[] values, double p) {
+        if (values.length == 0) return 0;
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /** Página del formulario (para la sesión y el token CSRF), ruta del POST y sus campos. */
+    private record Call(String formPath, String postPath, Map<String, String> fields) {
+    }
+
+    private record PhaseResult(String name, long[] latencies, long elapsedNanos, int errors,
+                               int maxActive, int maxTotal, int maxWaiting) {
+
+        String format() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("%-26s n=%d errores=%d %.1f req/s p50=%.1fms p99=%.1fms max=%.1fms "
+                            + "conexiones BD activas=%d abiertas=%d hilos esperando=%d",
+                    name, latencies.length, errors, latencies.length / seconds,
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    percentile(latencies, 1.0) / 1e6, maxActive, maxTotal, maxWaiting);
+        }
+    }
+
+    /** Muestrea el pool de Hikari cada milisegundo y guarda los máximos. */
+    private static final class ConnectionSampler implements Runnable {
+
+        private volatile boolean running = true;
+        private volatile int maxActive;
+        private volatile int maxTotal;
+        private volatile int maxWaiting;
+
+        @Override
+        public void run() {
+            while (running) {
+                maxActive = Math.max(maxActive, pool.getActiveConnections());
+                maxTotal = Math.max(maxTotal, pool.getTotalConnections());
+                maxWaiting = Math.max(maxWaiting, pool.getThreadsAwaitingConnection());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        void stop() {
+            running = false;
+        }
+    }
+}
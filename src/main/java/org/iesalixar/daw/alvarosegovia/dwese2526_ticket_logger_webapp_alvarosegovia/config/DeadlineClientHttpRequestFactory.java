@@ -0,0 +1,177 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config;
+
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HttpComponentsClientHttpRequestFactory} con un tiempo máximo total por petición.
+ * <p>
+ * Los timeouts de Apache HttpClient son por fase (conexión, espera de una conexión del pool,
+ * inactividad del socket): un servidor que devuelve la respuesta byte a byte nunca los supera.
+ * Aquí cada petición se aborta ({@link Cancellable#cancel()}) si sigue en curso al cumplirse
+ * {@code totalTimeout}, lo que cierra su conexión y hace fallar la lectura con una
+ * {@code IOException} (que {@code RestTemplate} convierte en {@code ResourceAccessException}).
+ * </p>
+ * <p>
+ * El aborto se programa al ejecutar la petición y se cancela al cerrar la respuesta (o si la
+ * ejecución falla), así que el planificador solo guarda las peticiones en curso. Debe registrarse
+ * como bean para que {@link #destroy()} pare su hilo al cerrar el contexto.
+ * </p>
+ */
+public class DeadlineClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private final long totalTimeoutMs;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /** Petición de Apache creada en {@link #postProcessHttpRequest} durante {@link #createRequest}. */
+    private final ThreadLocal<Cancellable> createdRequest = new ThreadLocal<>();
+
+    public DeadlineClientHttpRequestFactory(HttpClient httpClient, Duration totalTimeout) {
+        super(httpClient);
+        this.totalTimeoutMs = totalTimeout.toMillis();
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "http-deadline");
+            t.setDaemon(true);
+            return t;
+        });
+        // Las respuestas que terminan a tiempo no dejan su tarea en la cola hasta que venza
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        try {
+            ClientHttpRequest request = super.createRequest(uri, httpMethod);
+            Cancellable cancellable = createdRequest.get();
+            if (totalTimeoutMs <= 0 || cancellable == null) {
+                return request;
+            }
+            return new DeadlineRequest(request, cancellable);
+        } finally {
+            createdRequest.remove();
+        }
+    }
+
+    @Override
+    protected void postProcessHttpRequest(ClassicHttpRequest request) {
+        if (request instanceof Cancellable cancellable) {
+            createdRequest.set(cancellable);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        scheduler.shutdownNow();
+        super.destroy();
+    }
+
+    /**
+     * Programa el aborto al ejecutarse y lo entrega a la respuesta para cancelarlo al cerrarla.
+     */
+    private final class DeadlineRequest implements ClientHttpRequest {
+
+        private final ClientHttpRequest delegate;
+        private final Cancellable cancellable;
+
+        private DeadlineRequest(ClientHttpRequest delegate, Cancellable cancellable) {
+            this.delegate = delegate;
+            this.cancellable = cancellable;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            ScheduledFuture<?> deadline = scheduler.schedule(cancellable::cancel, totalTimeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                return new DeadlineResponse(delegate.execute(), deadline);
+            } catch (IOException | RuntimeException e) {
+                deadline.cancel(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return delegate.getAttributes();
+        }
+    }
+
+    /**
+     * Respuesta que cancela el aborto pendiente al cerrarse.
+     */
+    private static final class DeadlineResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final ScheduledFuture<?> deadline;
+
+        private DeadlineResponse(ClientHttpResponse delegate, ScheduledFuture<?> deadline) {
+            this.delegate = delegate;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+    }
+}
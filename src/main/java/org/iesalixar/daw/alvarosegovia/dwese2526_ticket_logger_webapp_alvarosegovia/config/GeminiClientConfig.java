@@ -0,0 +1,159 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.Bulkhead;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * Cliente HTTP de las llamadas a Gemini.
+ * <p>
+ * Sustituye al {@code new RestTemplate()} (una conexión nueva por llamada y sin timeouts, así que
+ * una llamada colgada retenía el hilo de Tomcat indefinidamente) por Apache HttpClient con:
+ * </p>
+ * <ul>
+ *     <li>Pool de conexiones keep-alive ({@code gemini.http.max-connections}); las inactivas más de
+ *     {@code gemini.http.max-idle} se cierran y las que llevan un rato paradas se validan antes de usarse.</li>
+ *     <li>Timeouts de conexión, de espera de una conexión libre del pool, de inactividad de lectura y
+ *     total por petición ({@link DeadlineClientHttpRequestFactory}).</li>
+ *     <li>Métricas del pool ({@code httpcomponents.httpclient.pool.*}, etiqueta {@code httpclient=gemini})
+ *     y, al construirse con {@link RestTemplateBuilder}, de cada petición ({@code http.client.requests}).</li>
+ * </ul>
+ * <p>
+ * También define el {@link CircuitBreaker} y el {@link Bulkhead} con los que {@code GeminiServiceImpl}
+ * protege cada llamada, para que una caída de Gemini falle rápido en lugar de retener hilos, y el
+ * executor propio de la generación en streaming.
+ * </p>
+ */
+@Configuration
+public class GeminiClientConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiClientConfig.class);
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager geminiConnectionManager(
+            @Value("${gemini.http.max-connections:20}") int maxConnections,
+            @Value("${gemini.http.connect-timeout:PT2S}") Duration connectTimeout,
+            @Value("${gemini.http.read-timeout:PT20S}") Duration readTimeout,
+            MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                // Un solo host: el límite por ruta es el total
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "gemini").bindTo(meterRegistry);
+        logger.info("Cliente HTTP de Gemini: hasta {} conexiones, connect={} read={}",
+                maxConnections, connectTimeout, readTimeout);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient geminiHttpClient(
+            @Qualifier("geminiConnectionManager") PoolingHttpClientConnectionManager connectionManager,
+            @Value("${gemini.http.pool-wait-timeout:PT1S}") Duration poolWaitTimeout,
+            @Value("${gemini.http.read-timeout:PT20S}") Duration readTimeout,
+            @Value("${gemini.http.max-idle:PT30S}") Duration maxIdle) {
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        // Pool agotado: se falla rápido en lugar de encolar hilos de Tomcat
+                        .setConnectionRequestTimeout(Timeout.of(poolWaitTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(maxIdle))
+                .disableCookieManagement()
+                .build();
+    }
+
+    @Bean
+    public CircuitBreaker geminiCircuitBreaker(
+            @Value("${gemini.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${gemini.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${gemini.circuit-breaker.failure-rate-threshold:50}") double failureRateThreshold,
+            @Value("${gemini.circuit-breaker.open-duration:PT30S}") Duration openDuration,
+            @Value("${gemini.circuit-breaker.half-open-probes:2}") int halfOpenProbes,
+            MeterRegistry meterRegistry) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("gemini", windowSize, minimumCalls,
+                failureRateThreshold, openDuration, halfOpenProbes);
+        Gauge.builder("gemini.circuit_breaker.state", circuitBreaker, cb -> cb.getState().ordinal())
+                .description("Estado del circuit breaker de Gemini (0 = CLOSED, 1 = OPEN, 2 = HALF_OPEN)")
+                .register(meterRegistry);
+        return circuitBreaker;
+    }
+
+    @Bean
+    public Bulkhead geminiBulkhead(
+            @Value("${gemini.bulkhead.max-concurrent:10}") int maxConcurrent,
+            @Value("${gemini.bulkhead.max-wait:PT0.2S}") Duration maxWait,
+            MeterRegistry meterRegistry) {
+        Bulkhead bulkhead = new Bulkhead(maxConcurrent, maxWait);
+        Gauge.builder("gemini.bulkhead.in_flight", bulkhead, Bulkhead::getInFlight)
+                .description("Llamadas a Gemini en curso")
+                .register(meterRegistry);
+        return bulkhead;
+    }
+
+    /**
+     * Hilos en los que se espera a Gemini durante la generación de biografías en streaming (SSE).
+     * Tantos como admite el bulkhead y sin cola: cada stream retiene su hilo toda la llamada, y en el
+     * {@code applicationTaskExecutor} dejaría sin hilos a la bandeja de salida o a la importación de
+     * usuarios. Sin hilos libres la tarea se rechaza y el stream responde con error al momento.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor geminiStreamExecutor(
+            @Value("${gemini.bulkhead.max-concurrent:10}") int maxConcurrent) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrent);
+        executor.setMaxPoolSize(maxConcurrent);
+        executor.setQueueCapacity(0);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("gemini-sse-");
+        return executor;
+    }
+
+    /**
+     * Bean propio para que el contexto llame a {@link DeadlineClientHttpRequestFactory#destroy()}
+     * y pare el hilo que aborta las peticiones vencidas.
+     */
+    @Bean
+    public DeadlineClientHttpRequestFactory geminiRequestFactory(
+            @Qualifier("geminiHttpClient") CloseableHttpClient httpClient,
+            @Value("${gemini.http.total-timeout:PT30S}") Duration totalTimeout) {
+        return new DeadlineClientHttpRequestFactory(httpClient, totalTimeout);
+    }
+
+    @Bean
+    public RestTemplate geminiRestTemplate(
+            RestTemplateBuilder restTemplateBuilder,
+            @Qualifier("geminiRequestFactory") DeadlineClientHttpRequestFactory requestFactory) {
+        return restTemplateBuilder
+                .requestFactory(() -> requestFactory)
+                .build();
+    }
+}
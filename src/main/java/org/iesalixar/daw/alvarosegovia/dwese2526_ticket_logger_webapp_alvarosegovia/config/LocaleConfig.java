@@ -7,9 +7,10 @@ import org.springframework.web.servlet.LocaleResolver;
 import org.springframework.web.servlet.i18n.LocaleChangeInterceptor;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-import org.springframework.web.servlet.i18n.SessionLocaleResolver;
+import org.springframework.web.servlet.i18n.CookieLocaleResolver;
 
 
+import java.time.Duration;
 import java.util.Locale;
 
 
@@ -23,16 +24,20 @@ public class LocaleConfig implements WebMvcConfigurer {
 
     /**
      * Define el `LocaleResolver` que se usará para almacenar la configuración de idioma del usuario.
-     * En este caso, utilizamos `SessionLocaleResolver` para almacenar el idioma en la sesión.
+     * Se guarda en una cookie: al iniciar sesión se fija con el idioma del perfil (ver
+     * `CustomFormLoginSuccessHandler`) y ninguna petición posterior necesita consultar la BD.
+     * Tampoco depende de la sesión, así que sobrevive al logout y a los cambios de nodo.
      *
-     * @return una instancia de `SessionLocaleResolver` con el idioma predeterminado configurado.
+     * @return una instancia de `CookieLocaleResolver` con el idioma predeterminado configurado.
      */
     @Bean
     public LocaleResolver localeResolver() {
-        SessionLocaleResolver slr = new SessionLocaleResolver();
-        slr.setDefaultLocale(Locale.of("es")); // Establece el español como idioma por defecto
+        CookieLocaleResolver clr = new CookieLocaleResolver("APP_LOCALE");
+        clr.setDefaultLocale(Locale.of("es")); // Establece el español como idioma por defecto
+        clr.setCookieMaxAge(Duration.ofDays(365));
+        clr.setCookieHttpOnly(true);
         logger.info("LocaleResolver configurado con el idioma predeterminado: es");
-        return slr;
+        return clr;
     }
 
 
@@ -0,0 +1,116 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.RateLimitBackend;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.RateLimitBackend.BucketSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Limita los POST de login, solicitud de recuperación y cambio de contraseña con cubetas de
+ * tokens por IP y, donde hay email, por email.
+ * <p>
+ * Se ejecuta antes de la cadena de Spring Security: una petición rechazada no llega a consultar
+ * la BD, crear tokens ni enviar correo. Responde {@code 429} con {@code Retry-After} (vista
+ * {@code error/429}). El email se guarda como hash truncado, nunca en claro. Detrás de un
+ * proxy, la IP real requiere {@code server.forward-headers-strategy}.
+ * </p>
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 10)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    /**
+     * Endpoint limitado: límite por IP y, si tiene parámetro de email, límite por email.
+     */
+    private record Rule(String name, String emailParam, BucketSpec perIp, BucketSpec perEmail) {
+    }
+
+    private final Map<String, Rule> rules;
+    private final boolean enabled;
+
+    @Autowired
+    private RateLimitBackend backend;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public RateLimitFilter(@Value("${app.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${app.rate-limit.login.per-ip:20/PT1M}") String loginPerIp,
+                           @Value("${app.rate-limit.login.per-email:5/PT1M}") String loginPerEmail,
+                           @Value("${app.rate-limit.forgot.per-ip:5/PT1M}") String forgotPerIp,
+                           @Value("${app.rate-limit.forgot.per-email:3/PT15M}") String forgotPerEmail,
+                           @Value("${app.rate-limit.reset.per-ip:10/PT1M}") String resetPerIp) {
+        this.enabled = enabled;
+        this.rules = Map.of(
+                "/login", new Rule("login", "username", BucketSpec.parse(loginPerIp), BucketSpec.parse(loginPerEmail)),
+                "/auth/forgot", new Rule("forgot", "email", BucketSpec.parse(forgotPerIp), BucketSpec.parse(forgotPerEmail)),
+                "/auth/reset-password", new Rule("reset", null, BucketSpec.parse(resetPerIp), null));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod()) || !rules.containsKey(path(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Rule rule = rules.get(path(request));
+
+        long wait = backend.tryConsume("ip:" + rule.name() + ":" + request.getRemoteAddr(), rule.perIp());
+        String dimension = "ip";
+        if (wait == 0 && rule.emailParam() != null) {
+            String email = request.getParameter(rule.emailParam());
+            if (email != null && !email.isBlank()) {
+                wait = backend.tryConsume("email:" + rule.name() + ":" + hashEmail(email), rule.perEmail());
+                dimension = "email";
+            }
+        }
+
+        if (wait > 0) {
+            meterRegistry.counter("rate_limit.rejected", "endpoint", rule.name(), "key", dimension).increment();
+            logger.warn("Límite de peticiones superado en {} por {} (IP {})", rule.name(), dimension, request.getRemoteAddr());
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, (wait + 999) / 1000)));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value());
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static String hashEmail(String email) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(email.trim().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            // 128 bits bastan para distinguir cubetas
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
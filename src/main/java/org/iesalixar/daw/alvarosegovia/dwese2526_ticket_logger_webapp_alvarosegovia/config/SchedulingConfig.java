@@ -0,0 +1,16 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Activa la ejecución de tareas programadas ({@code @Scheduled}) de la aplicación:
+ * limpiezas periódicas, volcados por lotes, etc.
+ * <p>
+ * El tamaño del pool del planificador se configura con {@code spring.task.scheduling.pool.size}.
+ * </p>
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,13 +1,17 @@
 package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config;
 
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.handlers.CustomFormLoginSuccessHandler;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.handlers.CustomOAuth2FailureHandler;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.handlers.CustomOAuth2SuccessHandler;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.BoundedSessionRegistry;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.CaffeineUserCache;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.CustomUserDetailsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.CredentialsExpiredException;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -20,6 +24,10 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.ExceptionMappingAuthenticationFailureHandler;
+import org.springframework.security.web.session.HttpSessionEventPublisher;
+
+import java.util.Map;
 
 /**
  * Configura la seguridad de la aplicación, definiendo autenticación y autorización
@@ -32,6 +40,9 @@ public class SecurityConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
 
+    @Autowired
+    private CustomFormLoginSuccessHandler customFormLoginSuccessHandler;
+
     @Autowired
     private CustomOAuth2SuccessHandler customOAuth2SuccessHandler;
 
@@ -40,6 +51,12 @@ public class SecurityConfig {
 
     @Autowired
     private CustomUserDetailsService customUserDetailsService;
+
+    @Autowired
+    private CaffeineUserCache userCache;
+
+    @Autowired
+    private BoundedSessionRegistry sessionRegistry;
     /**
      * Configura el filtro de seguridad para las solicitudes HTTP, especificando las
      * rutas permitidas y los roles necesarios para acceder a diferentes endpoints.
@@ -72,7 +89,8 @@ public class SecurityConfig {
                     logger.debug("Configurando formulario de inicio de sesión");
                     form
                             .loginPage("/login")
-                            .defaultSuccessUrl("/") // Redirige al inicio después del login
+                            .successHandler(customFormLoginSuccessHandler) // Aplica el idioma del perfil y redirige al inicio
+                            .failureHandler(formLoginFailureHandler())
                             .permitAll();           // Permite el login a todos los usuarios
                 })
                 .oauth2Login(oauth2 -> {
@@ -86,6 +104,10 @@ public class SecurityConfig {
                     logger.debug("Configurando política de gestión de sesiones");
                     // Usa sesiones cuando sea necesario
                     session.sessionCreationPolicy(SessionCreationPolicy.IF_REQUIRED);
+                    // Registro de sesiones sin límite por usuario: permite listarlas y forzar su cierre
+                    session.maximumSessions(-1)
+                            .sessionRegistry(sessionRegistry)
+                            .expiredUrl("/login?expired");
                 });
 
         logger.info("Saliendo del método securityFilterChain");
@@ -108,11 +130,41 @@ public class SecurityConfig {
         DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
         provider.setUserDetailsService(customUserDetailsService);
         provider.setPasswordEncoder(passwordEncoder());
+        // UserDetails cacheados (con copia defensiva) para no ir a BD en cada login
+        provider.setUserCache(userCache);
 
         logger.info("Saliendo del método authenticationProvider");
         return provider;
     }
 
+    /**
+     * Handler de fallo del login por formulario.
+     *
+     * <p>Si la contraseña es correcta pero ha caducado ({@link CredentialsExpiredException},
+     * flag {@code must_change_password}), redirige al flujo de recuperación de contraseña;
+     * cualquier otro fallo vuelve a {@code /login?error}.</p>
+     *
+     * @return handler que asigna URL de destino según el tipo de excepción.
+     */
+    private ExceptionMappingAuthenticationFailureHandler formLoginFailureHandler() {
+        ExceptionMappingAuthenticationFailureHandler handler = new ExceptionMappingAuthenticationFailureHandler();
+        handler.setExceptionMappings(Map.of(
+                CredentialsExpiredException.class.getName(), "/auth/forgot-password?expired"));
+        handler.setDefaultFailureUrl("/login?error");
+        return handler;
+    }
+
+    /**
+     * Traduce los eventos de sesión del contenedor a eventos de Spring para que el
+     * {@link BoundedSessionRegistry} elimine las sesiones invalidadas o caducadas.
+     *
+     * @return publicador de eventos de {@code HttpSession}.
+     */
+    @Bean
+    public HttpSessionEventPublisher httpSessionEventPublisher() {
+        return new HttpSessionEventPublisher();
+    }
+
     /**
      * Configura el codificador de contraseñas para cifrar las contraseñas de los usuarios
      * utilizando BCrypt.
@@ -0,0 +1,51 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.JdbcHttpSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+/**
+ * Configura el almacenamiento de las sesiones HTTP en MariaDB para desplegar varios nodos
+ * sin sticky sessions.
+ * <p>
+ * Solo se activa con {@code app.session.jdbc.enabled=true}; en caso contrario se mantiene
+ * la sesión en memoria del contenedor (Tomcat).
+ * </p>
+ */
+@Configuration
+@EnableSpringHttpSession
+@ConditionalOnProperty(name = "app.session.jdbc.enabled", havingValue = "true")
+public class SessionConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionConfig.class);
+
+    /**
+     * Define el repositorio de sesiones JDBC que usará el {@code SessionRepositoryFilter}.
+     *
+     * @param jdbcTemplate       acceso JDBC a la base de datos de la aplicación.
+     * @param transactionManager gestor de transacciones para agrupar las escrituras de cada sesión.
+     * @param timeout            tiempo máximo de inactividad de las sesiones.
+     * @param flushInterval      cada cuánto vuelca cada nodo los últimos accesos; es el margen con el
+     *                           que se dan por caducadas las sesiones.
+     * @return repositorio de sesiones respaldado por MariaDB.
+     */
+    @Bean
+    public JdbcHttpSessionRepository sessionRepository(JdbcTemplate jdbcTemplate,
+                                                       PlatformTransactionManager transactionManager,
+                                                       @Value("${server.servlet.session.timeout:30m}") Duration timeout,
+                                                       @Value("${app.session.jdbc.flush-interval:PT10S}") Duration flushInterval) {
+        logger.info("Sesiones HTTP persistidas en BD (timeout={})", timeout);
+        return new JdbcHttpSessionRepository(jdbcTemplate, new TransactionTemplate(transactionManager),
+                timeout, flushInterval);
+    }
+}
@@ -4,6 +4,8 @@ import jakarta.validation.Valid;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.*;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.exeptions.DuplicateResourceException;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.exeptions.ResourceNotFoundException;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.BoundedSessionRegistry;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.UserImportService;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,12 +15,17 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.security.Principal;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -35,6 +42,12 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private BoundedSessionRegistry sessionRegistry;
+
     @Autowired
     private MessageSource messageSource;
 
@@ -100,13 +113,16 @@ public class UserController {
     }
 
     /**
-     * Lista todos los usuarios paginados.
+     * Lista los usuarios paginados, aplicando los filtros opcionales del formulario de búsqueda.
      */
     @GetMapping
-    public String listUsers(@PageableDefault(size = 10, sort = "email", direction = Sort.Direction.ASC) Pageable pageable,
+    public String listUsers(@ModelAttribute("filter") UserFilterDTO filter,
+                            @PageableDefault(size = 10, sort = "email", direction = Sort.Direction.ASC) Pageable pageable,
                             Model model) {
+        model.addAttribute("listRoles", userService.listRoles());
+        model.addAttribute("filterQuery", toQueryString(filter));
         try {
-            Page<UserDTO> users = userService.list(pageable);
+            Page<UserDTO> users = userService.list(filter, pageable);
             model.addAttribute("page", users);
 
             String sortParam = "email,asc";
@@ -204,4 +220,158 @@ public class UserController {
         }
         return "redirect:/users";
     }
+
+    /**
+     * Asigna o retira un rol a varios usuarios a la vez: a los seleccionados en el listado
+     * ({@code scope=selected}) o a todos los que cumplen el filtro actual ({@code scope=filter}).
+     * El rol a cambiar llega en {@code bulkRoleId} porque {@code roleId} es un criterio del filtro.
+     * Un filtro sin criterios se rechaza (abarcaría a todos los usuarios) y el administrador que
+     * lanza el cambio conserva siempre su propio rol de administrador.
+     */
+    @PostMapping("/roles/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public String bulkRoleChange(@RequestParam("bulkRoleId") Long roleId,
+                                 @RequestParam("action") String action,
+                                 @RequestParam(value = "scope", defaultValue = "selected") String scope,
+                                 @RequestParam(value = "userIds", required = false) List<Long> userIds,
+                                 @ModelAttribute UserFilterDTO filter,
+                                 Principal principal,
+                                 RedirectAttributes redirectAttributes,
+                                 Locale locale) {
+        boolean grant = "grant".equals(action);
+        String redirect = "redirect:/users?" + toQueryString(filter).replaceFirst("^&", "");
+        try {
+            int changed;
+            if ("filter".equals(scope)) {
+                if (filter.isEmpty()) {
+                    String msg = messageSource.getMessage("msg.user-controller.bulkRoles.emptyFilter", null, locale);
+                    redirectAttributes.addFlashAttribute("errorMessage", msg);
+                    return redirect;
+                }
+                changed = grant
+                        ? userService.grantRole(roleId, filter)
+                        : userService.revokeRole(roleId, filter, principal.getName());
+            } else {
+                if (userIds == null || userIds.isEmpty()) {
+                    String msg = messageSource.getMessage("msg.user-controller.bulkRoles.noSelection", null, locale);
+                    redirectAttributes.addFlashAttribute("errorMessage", msg);
+                    return redirect;
+                }
+                changed = grant
+                        ? userService.grantRole(roleId, userIds)
+                        : userService.revokeRole(roleId, userIds, principal.getName());
+            }
+            logger.info("Cambio masivo de rol {} ({}, {}): {} asignaciones afectadas", roleId, action, scope, changed);
+            String msg = messageSource.getMessage(
+                    grant ? "msg.user-controller.bulkRoles.granted" : "msg.user-controller.bulkRoles.revoked",
+                    new Object[]{changed}, locale);
+            redirectAttributes.addFlashAttribute("successMessage", msg);
+        } catch (ResourceNotFoundException ex) {
+            String msg = messageSource.getMessage("msg.user-controller.bulkRoles.roleNotFound", null, locale);
+            redirectAttributes.addFlashAttribute("errorMessage", msg);
+        } catch (Exception e) {
+            logger.error("Error en el cambio masivo de rol {}: {}", roleId, e.getMessage(), e);
+            String msg = messageSource.getMessage("msg.user-controller.bulkRoles.error", null, locale);
+            redirectAttributes.addFlashAttribute("errorMessage", msg);
+        }
+        return redirect;
+    }
+
+    /**
+     * Muestra el formulario de importación masiva de usuarios (CSV).
+     */
+    @GetMapping("/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    public String showImportForm() {
+        return "views/user/user-import";
+    }
+
+    /**
+     * Lanza la importación del CSV en segundo plano y redirige a la vista de progreso.
+     */
+    @PostMapping("/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    public String importUsers(@RequestParam("file") MultipartFile file,
+                              RedirectAttributes redirectAttributes,
+                              Locale locale) {
+        if (file == null || file.isEmpty()) {
+            String msg = messageSource.getMessage("msg.user-import.empty", null, locale);
+            redirectAttributes.addFlashAttribute("errorMessage", msg);
+            return "redirect:/users/import";
+        }
+        try {
+            String jobId = userImportService.startImport(file);
+            return "redirect:/users/import/status?id=" + jobId;
+        } catch (Exception e) {
+            logger.error("Error al iniciar la importación de usuarios: {}", e.getMessage(), e);
+            String msg = messageSource.getMessage("msg.user-import.startError", null, locale);
+            redirectAttributes.addFlashAttribute("errorMessage", msg);
+            return "redirect:/users/import";
+        }
+    }
+
+    /**
+     * Muestra el progreso y el informe de errores de una importación.
+     */
+    @GetMapping("/import/status")
+    @PreAuthorize("hasRole('ADMIN')")
+    public String showImportStatus(@RequestParam("id") String id,
+                                   Model model,
+                                   RedirectAttributes redirectAttributes,
+                                   Locale locale) {
+        UserImportStatusDTO status = userImportService.getStatus(id);
+        if (status == null) {
+            String msg = messageSource.getMessage("msg.user-import.notFound", null, locale);
+            redirectAttributes.addFlashAttribute("errorMessage", msg);
+            return "redirect:/users/import";
+        }
+        model.addAttribute("importStatus", status);
+        return "views/user/user-import-status";
+    }
+
+    /**
+     * Muestra los usuarios con sesión abierta en este nodo y el total de sesiones.
+     */
+    @GetMapping("/sessions")
+    @PreAuthorize("hasRole('ADMIN')")
+    public String listSessions(Model model) {
+        model.addAttribute("activeUsers", sessionRegistry.listActiveUsers());
+        model.addAttribute("sessionCount", sessionRegistry.getSessionCount());
+        model.addAttribute("maxSessions", sessionRegistry.getMaxSessions());
+        return "views/user/user-sessions";
+    }
+
+    /**
+     * Fuerza el cierre de todas las sesiones de un usuario (en su siguiente petición).
+     */
+    @PostMapping("/sessions/expire")
+    @PreAuthorize("hasRole('ADMIN')")
+    public String expireSessions(@RequestParam("username") String username,
+                                 RedirectAttributes redirectAttributes,
+                                 Locale locale) {
+        int expired = sessionRegistry.expireUserSessions(username);
+        logger.info("Cierre forzado de {} sesiones de {}", expired, username);
+        String msg = messageSource.getMessage("msg.user-sessions.expired", new Object[]{expired, username}, locale);
+        redirectAttributes.addFlashAttribute("successMessage", msg);
+        return "redirect:/users/sessions";
+    }
+
+    /**
+     * Serializa los filtros activos como parámetros de URL ({@code &clave=valor...}) para
+     * conservarlos en los enlaces de ordenación y paginación.
+     */
+    private static String toQueryString(UserFilterDTO filter) {
+        UriComponentsBuilder builder = UriComponentsBuilder.newInstance();
+        if (filter.getRoleId() != null) builder.queryParam("roleId", filter.getRoleId());
+        if (filter.getActive() != null) builder.queryParam("active", filter.getActive());
+        if (filter.getLocked() != null) builder.queryParam("locked", filter.getLocked());
+        if (filter.getEmailVerified() != null) builder.queryParam("emailVerified", filter.getEmailVerified());
+        if (filter.getPasswordExpiresFrom() != null) builder.queryParam("passwordExpiresFrom", filter.getPasswordExpiresFrom());
+        if (filter.getPasswordExpiresTo() != null) builder.queryParam("passwordExpiresTo", filter.getPasswordExpiresTo());
+        if (filter.getEmailPrefix() != null && !filter.getEmailPrefix().isBlank()) {
+            builder.queryParam("emailPrefix", filter.getEmailPrefix().trim());
+        }
+        String query = builder.encode().build().getQuery();
+        return query == null ? "" : "&" + query;
+    }
 }
@@ -1,25 +1,39 @@
 package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.controllers;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserProfileFormDTO;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.exeptions.InvalidFileException;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.exeptions.ResourceNotFoundException;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.FileStorageService;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.GeminiService;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.UserLocaleService;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.UserProfileService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.LocaleResolver;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
 import java.security.Principal;
+import java.time.Duration;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Controlador MVC encargado de la gestión del perfil de usuario.
@@ -52,6 +66,22 @@ public class UserProfileController {
     @Autowired
     private FileStorageService fileStorageService;
 
+    /** Resolutor de idioma (cookie) para aplicar al momento el locale del perfil */
+    @Autowired
+    private LocaleResolver localeResolver;
+
+    @Autowired
+    private UserLocaleService userLocaleService;
+
+    /** Executor en el que se espera a Gemini durante la generación en streaming (ver {@code GeminiClientConfig}) */
+    @Autowired
+    @Qualifier("geminiStreamExecutor")
+    private AsyncTaskExecutor streamExecutor;
+
+    /** Timeout total de las llamadas a Gemini; el stream al navegador se cierra poco después */
+    @Value("${gemini.http.total-timeout:PT30S}")
+    private Duration geminiTotalTimeout;
+
     /**
      * Muestra el formulario de edición del perfil del usuario.
      *
@@ -107,7 +137,9 @@ public class UserProfileController {
             @RequestParam(value = "profileImageFile", required = false) MultipartFile profileImageFile,
             RedirectAttributes redirectAttributes,
             Locale locale,
-            Principal principal) {
+            Principal principal,
+            HttpServletRequest request,
+            HttpServletResponse response) {
 
         String email = principal.getName();
         logger.info("Actualizando perfil para email={}", email);
@@ -119,8 +151,11 @@ public class UserProfileController {
 
         try {
             userProfileService.updateProfile(email, profileDto, profileImageFile);
+            // Si ha cambiado el idioma del perfil, se aplica ya (sin esperar al próximo login)
+            Locale profileLocale = userLocaleService.findPreferredLocale(email).orElse(locale);
+            localeResolver.setLocale(request, response, profileLocale);
             String successMessage = messageSource.getMessage(
-                    "msg.user-profile.success", null, locale);
+                    "msg.user-profile.success", null, profileLocale);
             redirectAttributes.addFlashAttribute("successMessage", successMessage);
 
         } catch (ResourceNotFoundException ex) {
@@ -223,21 +258,28 @@ public class UserProfileController {
      * En caso de error durante la generación, se registra en logs
      * pero no se interrumpe el flujo de la aplicación.
      *
+     * La biografía se reutiliza si ya se generó para los mismos datos; tras la primera generación
+     * el formulario envía {@code regenerate=true} para que volver a pulsar el botón dé una nueva.
+     *
      * @param profileDto DTO con los datos del perfil del usuario.
+     * @param regenerate {@code true} para pedir una biografía nueva en lugar de la cacheada.
      * @param model      Modelo de Spring MVC para enviar datos a la vista.
      * @return Nombre de la vista que renderiza el formulario de perfil.
      */
     @PostMapping("/generate-bio")
-    public String generateBio(@ModelAttribute("userProfileForm") UserProfileFormDTO profileDto, Model model) {
+    public String generateBio(@ModelAttribute("userProfileForm") UserProfileFormDTO profileDto,
+                              @RequestParam(defaultValue = "false") boolean regenerate,
+                              Model model) {
 
         logger.info("Generando biografía por IA para {} {}", profileDto.getFirstName(), profileDto.getLastName());
 
         try {
             String fullName =  profileDto.getFirstName() + " " + profileDto.getLastName();
 
-            String generatedBio = geminiService.generateBiography(fullName, "profesional entusiasta");
+            String generatedBio = geminiService.generateBiography(fullName, "profesional entusiasta", regenerate);
 
             profileDto.setBio(generatedBio);
+            model.addAttribute("bioGenerated", true);
 
         } catch (Exception ex) {
             logger.error("Error al generar biografía: {}", ex.getMessage());
@@ -246,4 +288,102 @@ public class UserProfileController {
         model.addAttribute("userProfileForm", profileDto);
         return "views/user-profile/user-profile-form";
     }
+
+    /**
+     * Variante en streaming de {@link #generateBio}: la usa el botón de generar biografía cuando
+     * el navegador lo soporta ({@code scripts.js}), sin reenviar ni volver a pintar el formulario.
+     * <p>
+     * La llamada a Gemini se hace en el {@code geminiStreamExecutor}, así que el hilo de Tomcat
+     * queda libre mientras tanto, y cada fragmento de texto se envía al navegador como un evento
+     * SSE {@code chunk} ({@code {"text": "..."}}) en cuanto llega. Termina con un evento
+     * {@code done}, o con {@code error} (mensaje ya traducido) si falla la generación o no quedan
+     * hilos libres. Si el stream caduca o el navegador se desconecta, la generación se corta con
+     * el siguiente fragmento.
+     * </p>
+     *
+     * @param firstName Nombre escrito en el formulario.
+     * @param lastName  Apellido escrito en el formulario.
+     * @param regenerate {@code true} para pedir una biografía nueva en lugar de la cacheada.
+     * @param locale    Localización actual del usuario (para el mensaje de error).
+     * @return emisor SSE por el que se envía la biografía.
+     */
+    @PostMapping(value = "/generate-bio/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter streamBio(@RequestParam(defaultValue = "") String firstName,
+                                @RequestParam(defaultValue = "") String lastName,
+                                @RequestParam(defaultValue = "false") boolean regenerate,
+                                Locale locale) {
+
+        logger.info("Generando biografía por IA (streaming) para {} {}", firstName, lastName);
+
+        String fullName = (firstName + " " + lastName).trim();
+        String errorMessage = messageSource.getMessage("msg.userProfile.generateBio.error", null, locale);
+        SseEmitter emitter = new SseEmitter(geminiTotalTimeout.plusSeconds(5).toMillis());
+        AtomicBoolean closed = new AtomicBoolean();
+        emitter.onTimeout(() -> {
+            closed.set(true);
+            emitter.complete();
+        });
+        emitter.onError(ex -> closed.set(true));
+        emitter.onCompletion(() -> closed.set(true));
+
+        try {
+            streamExecutor.execute(() -> {
+                try {
+                    geminiService.streamBiography(fullName, "profesional entusiasta", regenerate,
+                            chunk -> sendEvent(emitter, closed, "chunk", chunk));
+                    sendEvent(emitter, closed, "done", "");
+                    emitter.complete();
+
+                } catch (StreamClosedException ex) {
+                    // Caducado o cerrado por el navegador: el contenedor ya da el stream por terminado
+                    logger.debug("Stream de biografía cancelado: {}", ex.getMessage());
+
+                } catch (Exception ex) {
+                    logger.error("Error al generar biografía: {}", ex.getMessage());
+                    sendError(emitter, closed, errorMessage);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            logger.warn("Sin hilos libres para generar la biografía en streaming");
+            sendError(emitter, closed, errorMessage);
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Envía un evento SSE con el texto como JSON (los saltos de línea quedan escapados).
+     *
+     * @throws StreamClosedException si el stream ya ha terminado (timeout, error o desconexión).
+     */
+    private static void sendEvent(SseEmitter emitter, AtomicBoolean closed, String name, String text) {
+        if (closed.get()) {
+            throw new StreamClosedException("stream ya terminado", null);
+        }
+        try {
+            emitter.send(SseEmitter.event().name(name).data(Map.of("text", text), MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // IllegalStateException: el emisor ya se completó (p.ej. por timeout)
+            throw new StreamClosedException(e.getMessage(), e);
+        }
+    }
+
+    private static void sendError(SseEmitter emitter, AtomicBoolean closed, String errorMessage) {
+        try {
+            sendEvent(emitter, closed, "error", errorMessage);
+            emitter.complete();
+        } catch (StreamClosedException ignored) {
+            // El navegador ya no está escuchando
+        }
+    }
+
+    /**
+     * El stream SSE ya no admite eventos: caducó, falló o el navegador se desconectó.
+     */
+    private static class StreamClosedException extends RuntimeException {
+        StreamClosedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 }
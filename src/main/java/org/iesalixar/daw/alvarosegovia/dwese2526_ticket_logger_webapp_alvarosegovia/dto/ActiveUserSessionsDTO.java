@@ -0,0 +1,32 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * Resumen de las sesiones abiertas de un usuario para la vista de administración.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActiveUserSessionsDTO {
+
+
+    // Email (username) del usuario autenticado
+    private String username;
+
+
+    // Número de sesiones registradas (incluidas las marcadas para expirar)
+    private int sessionCount;
+
+
+    // Sesiones ya marcadas para cierre forzado que aún no han vuelto a hacer peticiones
+    private int expiredCount;
+
+
+    // Última petición de cualquiera de sus sesiones
+    private Date lastRequest;
+}
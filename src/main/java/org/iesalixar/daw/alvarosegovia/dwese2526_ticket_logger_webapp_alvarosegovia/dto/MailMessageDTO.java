@@ -0,0 +1,34 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Correo basado en plantilla para los envíos por lotes de {@code MailService}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MailMessageDTO {
+
+
+    private String to;
+
+
+    // Clave i18n del asunto
+    private String subjectKey;
+
+
+    // Plantilla Thymeleaf (p.ej. "mail/password-reset")
+    private String templateName;
+
+
+    private Map<String, Object> variables;
+
+
+    private Locale locale;
+}
@@ -0,0 +1,57 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Criterios de búsqueda del listado de administración de usuarios.
+ * Todos los campos son opcionales: un campo {@code null} (o vacío) no filtra.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserFilterDTO {
+
+
+    // Id del rol que debe tener el usuario
+    private Long roleId;
+
+
+    private Boolean active;
+
+
+    // true = bloqueados (account_non_locked = FALSE)
+    private Boolean locked;
+
+
+    private Boolean emailVerified;
+
+
+    // Ventana de caducidad de la contraseña (ambos extremos incluidos)
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate passwordExpiresFrom;
+
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate passwordExpiresTo;
+
+
+    // Comienzo del email, sin distinguir mayúsculas (LIKE 'prefijo%' sobre el índice de email_normalized)
+    private String emailPrefix;
+
+
+    /**
+     * Indica si no hay ningún criterio activo.
+     */
+    public boolean isEmpty() {
+        return roleId == null && active == null && locked == null && emailVerified == null
+                && passwordExpiresFrom == null && passwordExpiresTo == null
+                && (emailPrefix == null || emailPrefix.isBlank());
+    }
+}
@@ -0,0 +1,25 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Error de una fila concreta del CSV de importación masiva de usuarios.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportRowErrorDTO {
+
+
+    // Número de línea del fichero (empezando en 1, incluida la cabecera)
+    private long lineNumber;
+
+
+    private String email;
+
+
+    // Clave i18n del motivo del error (msg.user-import.error.*)
+    private String messageKey;
+}
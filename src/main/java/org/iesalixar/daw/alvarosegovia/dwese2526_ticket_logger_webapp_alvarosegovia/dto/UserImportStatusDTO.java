@@ -0,0 +1,63 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Estado (progreso y errores) de una importación masiva de usuarios.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportStatusDTO {
+
+
+    private String jobId;
+
+
+    private String fileName;
+
+
+    // RUNNING, COMPLETED o FAILED
+    private String status;
+
+
+    private long totalRows;
+
+
+    private long processedRows;
+
+
+    private long importedRows;
+
+
+    private long failedRows;
+
+
+    private LocalDateTime startedAt;
+
+
+    private LocalDateTime finishedAt;
+
+
+    // Errores por fila (limitados para no crecer sin control)
+    private List<UserImportRowErrorDTO> errors;
+
+
+    /**
+     * Porcentaje procesado (0-100) para la barra de progreso.
+     */
+    public int getProgressPercent() {
+        if (totalRows <= 0) return "RUNNING".equals(status) ? 0 : 100;
+        return (int) Math.min(100, processedRows * 100 / totalRows);
+    }
+
+
+    public boolean isRunning() {
+        return "RUNNING".equals(status);
+    }
+}
@@ -27,9 +27,9 @@ public class PasswordResetToken {
     private User user;
 
 
-    /** Hash del token (SHA-256 en hex) para no almacenar el token en claro en base de datos. */
-    @Column(name = "token_hash", nullable = false, length = 64)
-    private String tokenHash; // SHA-256 hex
+    /** Hash del token (SHA-256, 32 bytes en binario) para no almacenar el token en claro en base de datos. */
+    @Column(name = "token_hash", nullable = false, length = 32, columnDefinition = "BINARY(32)")
+    private byte[] tokenHash;
 
 
     /** Fecha y hora límite hasta la que el token es válido (caducidad/TTL). */
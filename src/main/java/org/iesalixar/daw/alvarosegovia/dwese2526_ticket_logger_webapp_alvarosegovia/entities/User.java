@@ -48,6 +48,15 @@ public class User {
     private String email;
 
 
+    /**
+     * VARCHAR(100) GENERATED ALWAYS AS (LOWER(TRIM(email))) PERSISTENT, UNIQUE.
+     * Columna calculada por la BD: solo lectura desde JPA. Todas las búsquedas por email
+     * pasan por aquí para usar su índice único sin aplicar funciones sobre la columna.
+     */
+    @Column(name = "email_normalized", insertable = false, updatable = false, length = 100)
+    private String emailNormalized;
+
+
     /** VARCHAR(500) NOT NULL */
     @Column(name = "password_hash", nullable = false, length = 500)
     private String passwordHash;
@@ -0,0 +1,47 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.handlers;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.UserLocaleService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.SavedRequestAwareAuthenticationSuccessHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.LocaleResolver;
+
+import java.io.IOException;
+
+/**
+ * Handler de éxito del login por formulario.
+ * <p>
+ * Aplica el idioma guardado en el perfil del usuario (una única consulta, al iniciar sesión)
+ * a través del {@link LocaleResolver}, que lo conserva en cookie para el resto de peticiones.
+ * Después redirige como siempre: a la URL guardada o, si no hay, al inicio.
+ * </p>
+ */
+@Component
+public class CustomFormLoginSuccessHandler extends SavedRequestAwareAuthenticationSuccessHandler {
+
+
+    @Autowired
+    private UserLocaleService userLocaleService;
+
+
+    @Autowired
+    private LocaleResolver localeResolver;
+
+
+    public CustomFormLoginSuccessHandler() {
+        setDefaultTargetUrl("/");
+    }
+
+
+    @Override
+    public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response,
+                                        Authentication authentication) throws ServletException, IOException {
+        userLocaleService.findPreferredLocale(authentication.getName())
+                .ifPresent(locale -> localeResolver.setLocale(request, response, locale));
+        super.onAuthenticationSuccess(request, response, authentication);
+    }
+}
@@ -4,7 +4,9 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.UserRepository;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.BoundedSessionRegistry;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.CustomUserDetailsService;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.UserLocaleService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -14,6 +16,7 @@ import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.LocaleResolver;
 
 import java.io.IOException;
 
@@ -35,6 +38,18 @@ public class CustomOAuth2SuccessHandler implements AuthenticationSuccessHandler
     private CustomUserDetailsService customUserDetailsService;
 
 
+    @Autowired
+    private BoundedSessionRegistry sessionRegistry;
+
+
+    @Autowired
+    private UserLocaleService userLocaleService;
+
+
+    @Autowired
+    private LocaleResolver localeResolver;
+
+
     /**
      * Maneja el evento de autenticación exitosa con OAuth2.
      * Verifica si el usuario autenticado ya existe en la base de datos de la aplicación.
@@ -79,6 +94,15 @@ public class CustomOAuth2SuccessHandler implements AuthenticationSuccessHandler
         SecurityContextHolder.getContext().setAuthentication(authenticationToken);
 
 
+        // La sesión se registró con el principal de GitHub: se vuelve a registrar con el usuario local
+        // para que aparezca (y pueda cerrarse) por su email en la gestión de sesiones
+        sessionRegistry.registerNewSession(request.getSession().getId(), userDetails);
+
+
+        // Idioma del perfil: se consulta solo ahora y queda en la cookie del LocaleResolver
+        userLocaleService.findPreferredLocale(userDetails.getUsername())
+                .ifPresent(locale -> localeResolver.setLocale(request, response, locale));
+
 
 
         // Si el usuario está registrado, redirigir a la página principal
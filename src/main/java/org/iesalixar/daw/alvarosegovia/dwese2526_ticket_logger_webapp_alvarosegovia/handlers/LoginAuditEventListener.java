@@ -0,0 +1,71 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.handlers;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.LoginAuditService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.event.AbstractAuthenticationFailureEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.authentication.OAuth2LoginAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Locale;
+
+/**
+ * Escucha los eventos de autenticación de Spring Security (login por formulario y OAuth2)
+ * y los pasa a {@link LoginAuditService}, que solo los encola: no hay escritura en BD
+ * dentro del login.
+ */
+@Component
+public class LoginAuditEventListener {
+
+    @Autowired
+    private LoginAuditService loginAuditService;
+
+    @EventListener
+    public void onSuccess(AuthenticationSuccessEvent event) {
+        Authentication authentication = event.getAuthentication();
+        HttpServletRequest request = currentRequest();
+        loginAuditService.record(authentication.getName(), true, method(authentication),
+                ip(request), userAgent(request), null);
+    }
+
+    @EventListener
+    public void onFailure(AbstractAuthenticationFailureEvent event) {
+        Authentication authentication = event.getAuthentication();
+        HttpServletRequest request = currentRequest();
+        loginAuditService.record(authentication.getName(), false, method(authentication),
+                ip(request), userAgent(request), event.getException().getClass().getSimpleName());
+    }
+
+    /**
+     * FORM para usuario/contraseña; OAUTH2_&lt;PROVEEDOR&gt; (p.ej. OAUTH2_GITHUB) para OAuth2.
+     */
+    private static String method(Authentication authentication) {
+        if (authentication instanceof OAuth2AuthenticationToken token) {
+            return "OAUTH2_" + token.getAuthorizedClientRegistrationId().toUpperCase(Locale.ROOT);
+        }
+        if (authentication instanceof OAuth2LoginAuthenticationToken token) {
+            return "OAUTH2_" + token.getClientRegistration().getRegistrationId().toUpperCase(Locale.ROOT);
+        }
+        return "FORM";
+    }
+
+    // Los eventos se publican en el hilo de la petición (RequestContextFilter va antes que Security)
+    private static HttpServletRequest currentRequest() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getRequest() : null;
+    }
+
+    private static String ip(HttpServletRequest request) {
+        return request == null ? null : request.getRemoteAddr();
+    }
+
+    private static String userAgent(HttpServletRequest request) {
+        return request == null ? null : request.getHeader("User-Agent");
+    }
+}
@@ -0,0 +1,459 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Repositorio de sesiones HTTP persistidas en MariaDB (tablas {@code http_sessions} y
+ * {@code http_session_attributes}) para poder compartirlas entre varios nodos sin sticky sessions.
+ * <p>
+ * Para reducir la escritura en base de datos:
+ * <ul>
+ *   <li>Solo se escriben los atributos modificados con {@code setAttribute}/{@code removeAttribute}
+ *       (por ejemplo, los flash attributes de los redirect de los controladores).</li>
+ *   <li>Las actualizaciones de {@code last_access_time} se acumulan en memoria y se vuelcan
+ *       por lotes periódicamente.</li>
+ *   <li>Las sesiones caducadas se eliminan en segundo plano.</li>
+ * </ul>
+ * </p>
+ * <p>Como cada nodo retiene sus últimos accesos hasta el siguiente volcado, otro nodo puede leer en
+ * BD un {@code last_access_time} atrasado hasta {@code expiryGrace} (el intervalo de volcado). Por
+ * eso una sesión solo se da por caducada, al leerla o en la limpieza, cuando ha pasado ese margen
+ * adicional: así no se borra una sesión que sigue en uso en otro nodo.</p>
+ * <p>Cada sesión autenticada guarda además el usuario ({@code principal_name}) para poder cerrar
+ * todas sus sesiones en todos los nodos con {@link #deleteByPrincipalName(String)}.</p>
+ * <p><b>Nota:</b> los objetos guardados en sesión deben modificarse siempre con {@code setAttribute};
+ * un cambio "in situ" sobre un atributo ya cargado no se detecta.</p>
+ */
+public class JdbcHttpSessionRepository implements SessionRepository<JdbcHttpSessionRepository.JdbcHttpSession> {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcHttpSessionRepository.class);
+
+    private static final String SELECT_SESSION =
+            "SELECT primary_id, creation_time, last_access_time, max_inactive_interval " +
+            "FROM http_sessions WHERE session_id = ?";
+
+    private static final String SELECT_ATTRIBUTES =
+            "SELECT attribute_name, attribute_bytes FROM http_session_attributes WHERE session_primary_id = ?";
+
+    private static final String INSERT_SESSION =
+            "INSERT INTO http_sessions (primary_id, session_id, creation_time, last_access_time, " +
+            "max_inactive_interval, expiry_time, principal_name) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_SESSION =
+            "UPDATE http_sessions SET session_id = ?, last_access_time = ?, max_inactive_interval = ?, " +
+            "expiry_time = ?, principal_name = ? WHERE primary_id = ?";
+
+    private static final String UPDATE_LAST_ACCESS =
+            "UPDATE http_sessions SET last_access_time = ?, expiry_time = ? " +
+            "WHERE session_id = ? AND last_access_time < ?";
+
+    private static final String UPSERT_ATTRIBUTE =
+            "INSERT INTO http_session_attributes (session_primary_id, attribute_name, attribute_bytes) " +
+            "VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE attribute_bytes = VALUES(attribute_bytes)";
+
+    private static final String DELETE_ATTRIBUTE =
+            "DELETE FROM http_session_attributes WHERE session_primary_id = ? AND attribute_name = ?";
+
+    private static final String DELETE_SESSION =
+            "DELETE FROM http_sessions WHERE session_id = ?";
+
+    private static final String DELETE_PRINCIPAL_SESSIONS =
+            "DELETE FROM http_sessions WHERE principal_name = ?";
+
+    private static final String DELETE_EXPIRED_SESSIONS =
+            "DELETE FROM http_sessions WHERE expiry_time < ? ORDER BY expiry_time LIMIT ?";
+
+    private static final String SECURITY_CONTEXT_ATTRIBUTE =
+            HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
+
+    /** Máximo de sesiones borradas por sentencia en la limpieza (evita bloqueos largos). */
+    private static final int CLEANUP_CHUNK_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration defaultMaxInactiveInterval;
+
+    /** Margen sobre la caducidad para cubrir accesos aún sin volcar en otros nodos. */
+    private final long expiryGraceMs;
+
+    private final SerializingConverter serializer = new SerializingConverter();
+
+    private final DeserializingConverter deserializer =
+            new DeserializingConverter(JdbcHttpSessionRepository.class.getClassLoader());
+
+    /** Últimos accesos pendientes de volcar a BD, por id de sesión. */
+    private final Map<String, PendingAccess> pendingAccesses = new ConcurrentHashMap<>();
+
+    public JdbcHttpSessionRepository(JdbcTemplate jdbcTemplate,
+                                     TransactionTemplate transactionTemplate,
+                                     Duration defaultMaxInactiveInterval,
+                                     Duration expiryGrace) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.defaultMaxInactiveInterval = defaultMaxInactiveInterval;
+        this.expiryGraceMs = expiryGrace.toMillis();
+    }
+
+    @Override
+    public JdbcHttpSession createSession() {
+        MapSession delegate = new MapSession();
+        delegate.setMaxInactiveInterval(defaultMaxInactiveInterval);
+        return new JdbcHttpSession(UUID.randomUUID().toString(), delegate, true);
+    }
+
+    /**
+     * Persiste la sesión escribiendo únicamente lo que ha cambiado desde que se cargó.
+     *
+     * @param session sesión a guardar
+     */
+    @Override
+    public void save(JdbcHttpSession session) {
+        if (session.isNew) {
+            transactionTemplate.executeWithoutResult(status -> insertSession(session));
+        } else if (session.metadataChanged || !session.changedAttributes.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> updateSession(session));
+        } else if (session.lastAccessChanged) {
+            // Solo ha cambiado el último acceso: se acumula y se escribe en el siguiente lote.
+            pendingAccesses.merge(session.getId(), PendingAccess.of(session),
+                    (previous, current) -> current.lastAccess > previous.lastAccess ? current : previous);
+        }
+        session.clearChangeFlags();
+    }
+
+    /**
+     * Recupera una sesión por su id público, descartándola si ha caducado.
+     *
+     * @param id id de la sesión (cookie)
+     * @return la sesión o {@code null} si no existe o ha caducado
+     */
+    @Override
+    public JdbcHttpSession findById(String id) {
+        List<JdbcHttpSession> found = jdbcTemplate.query(SELECT_SESSION, (rs, rowNum) -> {
+            MapSession delegate = new MapSession(id);
+            delegate.setCreationTime(Instant.ofEpochMilli(rs.getLong("creation_time")));
+            delegate.setLastAccessedTime(Instant.ofEpochMilli(rs.getLong("last_access_time")));
+            delegate.setMaxInactiveInterval(Duration.ofSeconds(rs.getInt("max_inactive_interval")));
+            return new JdbcHttpSession(rs.getString("primary_id"), delegate, false);
+        }, id);
+
+        if (found.isEmpty()) {
+            return null;
+        }
+
+        JdbcHttpSession session = found.get(0);
+
+        // Un acceso aún no volcado es más reciente que el que hay en BD.
+        PendingAccess pending = pendingAccesses.get(id);
+        if (pending != null && pending.lastAccess > session.delegate.getLastAccessedTime().toEpochMilli()) {
+            session.delegate.setLastAccessedTime(Instant.ofEpochMilli(pending.lastAccess));
+        }
+
+        if (isExpired(session, System.currentTimeMillis())) {
+            deleteById(id);
+            return null;
+        }
+
+        jdbcTemplate.query(SELECT_ATTRIBUTES, rs -> {
+            String name = rs.getString("attribute_name");
+            try {
+                session.delegate.setAttribute(name, deserializer.convert(rs.getBytes("attribute_bytes")));
+            } catch (RuntimeException e) {
+                // Clase cambiada tras un despliegue, por ejemplo: se ignora el atributo.
+                logger.warn("No se pudo deserializar el atributo de sesión {}: {}", name, e.getMessage());
+            }
+        }, session.primaryId);
+
+        session.clearChangeFlags();
+        return session;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        pendingAccesses.remove(id);
+        jdbcTemplate.update(DELETE_SESSION, id);
+    }
+
+    /**
+     * Elimina todas las sesiones de un usuario, sea cual sea el nodo que las atiende: su siguiente
+     * petición ya no encontrará la sesión en BD.
+     *
+     * @param principalName nombre del usuario autenticado (email, sin distinguir mayúsculas/minúsculas).
+     * @return número de sesiones eliminadas.
+     */
+    public int deleteByPrincipalName(String principalName) {
+        if (principalName == null) {
+            return 0;
+        }
+        int deleted = jdbcTemplate.update(DELETE_PRINCIPAL_SESSIONS, normalizePrincipal(principalName));
+        if (deleted > 0) {
+            logger.info("Eliminadas {} sesiones HTTP de {}", deleted, normalizePrincipal(principalName));
+        }
+        return deleted;
+    }
+
+    /**
+     * Vuelca por lotes los últimos accesos acumulados.
+     * <p>La condición {@code last_access_time < ?} evita retroceder el acceso si otro nodo
+     * ya ha escrito uno más reciente.</p>
+     */
+    @Scheduled(fixedDelayString = "${app.session.jdbc.flush-interval:PT10S}")
+    public void flushPendingAccesses() {
+        if (pendingAccesses.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batch = new ArrayList<>();
+        for (String sessionId : new ArrayList<>(pendingAccesses.keySet())) {
+            PendingAccess pending = pendingAccesses.remove(sessionId);
+            if (pending != null) {
+                batch.add(new Object[]{pending.lastAccess, pending.expiryTime, sessionId, pending.lastAccess});
+            }
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_LAST_ACCESS, batch);
+        logger.debug("Volcados {} últimos accesos de sesión", batch.size());
+    }
+
+    /**
+     * Elimina en segundo plano las sesiones caducadas (sus atributos se borran en cascada),
+     * en bloques pequeños para no mantener bloqueos largos.
+     */
+    @Scheduled(cron = "${app.session.jdbc.cleanup-cron:0 * * * * *}")
+    public void cleanUpExpiredSessions() {
+        // Primero se vuelcan los accesos pendientes para no borrar sesiones que siguen vivas.
+        flushPendingAccesses();
+
+        // Con el margen, un acceso retenido en otro nodo todavía no volcado no deja la sesión por caducada.
+        long now = System.currentTimeMillis() - expiryGraceMs;
+        int deleted;
+        int total = 0;
+        do {
+            deleted = jdbcTemplate.update(DELETE_EXPIRED_SESSIONS, now, CLEANUP_CHUNK_SIZE);
+            total += deleted;
+        } while (deleted == CLEANUP_CHUNK_SIZE);
+
+        if (total > 0) {
+            logger.info("Eliminadas {} sesiones HTTP caducadas", total);
+        }
+    }
+
+    private void insertSession(JdbcHttpSession session) {
+        MapSession s = session.delegate;
+        jdbcTemplate.update(INSERT_SESSION,
+                session.primaryId,
+                s.getId(),
+                s.getCreationTime().toEpochMilli(),
+                s.getLastAccessedTime().toEpochMilli(),
+                (int) s.getMaxInactiveInterval().getSeconds(),
+                expiryTime(s),
+                principalName(s));
+
+        List<Object[]> attributes = new ArrayList<>();
+        for (String name : s.getAttributeNames()) {
+            attributes.add(new Object[]{session.primaryId, name, serializer.convert(s.getAttribute(name))});
+        }
+        if (!attributes.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_ATTRIBUTE, attributes);
+        }
+    }
+
+    private void updateSession(JdbcHttpSession session) {
+        MapSession s = session.delegate;
+
+        // El login y el logout cambian el contexto de seguridad: hay que actualizar principal_name
+        boolean principalChanged = session.changedAttributes.contains(SECURITY_CONTEXT_ATTRIBUTE);
+        if (session.metadataChanged || session.lastAccessChanged || principalChanged) {
+            jdbcTemplate.update(UPDATE_SESSION,
+                    s.getId(),
+                    s.getLastAccessedTime().toEpochMilli(),
+                    (int) s.getMaxInactiveInterval().getSeconds(),
+                    expiryTime(s),
+                    principalName(s),
+                    session.primaryId);
+            pendingAccesses.remove(session.originalId);
+            pendingAccesses.remove(s.getId());
+        }
+
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (String name : session.changedAttributes) {
+            Object value = s.getAttribute(name);
+            if (value == null) {
+                deletes.add(new Object[]{session.primaryId, name});
+            } else {
+                upserts.add(new Object[]{session.primaryId, name, serializer.convert(value)});
+            }
+        }
+        if (!upserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_ATTRIBUTE, upserts);
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_ATTRIBUTE, deletes);
+        }
+    }
+
+    private boolean isExpired(JdbcHttpSession session, long now) {
+        if (session.getMaxInactiveInterval().isNegative()) {
+            return false;
+        }
+        return now - expiryGraceMs >= expiryTime(session.delegate);
+    }
+
+    private static long expiryTime(MapSession s) {
+        return s.getLastAccessedTime().plus(s.getMaxInactiveInterval()).toEpochMilli();
+    }
+
+    /**
+     * Usuario autenticado de la sesión según el contexto de Spring Security guardado en ella,
+     * o {@code null} si es anónima.
+     */
+    private static String principalName(MapSession s) {
+        if (s.getAttribute(SECURITY_CONTEXT_ATTRIBUTE) instanceof SecurityContext context
+                && context.getAuthentication() != null
+                && context.getAuthentication().isAuthenticated()) {
+            return normalizePrincipal(context.getAuthentication().getName());
+        }
+        return null;
+    }
+
+    private static String normalizePrincipal(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Último acceso pendiente de escribir junto con su nueva caducidad. */
+    private record PendingAccess(long lastAccess, long expiryTime) {
+
+        static PendingAccess of(JdbcHttpSession session) {
+            return new PendingAccess(
+                    session.getLastAccessedTime().toEpochMilli(),
+                    JdbcHttpSessionRepository.expiryTime(session.delegate));
+        }
+    }
+
+    /**
+     * Sesión que envuelve un {@link MapSession} y registra qué ha cambiado desde su carga:
+     * atributos modificados, metadatos (id, inactividad) y último acceso.
+     */
+    public static final class JdbcHttpSession implements Session {
+
+        private final String primaryId;
+
+        private final MapSession delegate;
+
+        private final Set<String> changedAttributes = new HashSet<>();
+
+        private boolean isNew;
+
+        private boolean metadataChanged;
+
+        private boolean lastAccessChanged;
+
+        private String originalId;
+
+        JdbcHttpSession(String primaryId, MapSession delegate, boolean isNew) {
+            this.primaryId = primaryId;
+            this.delegate = delegate;
+            this.isNew = isNew;
+            this.originalId = delegate.getId();
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            metadataChanged = true;
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return delegate.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return delegate.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            delegate.setAttribute(attributeName, attributeValue);
+            changedAttributes.add(attributeName);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            if (delegate.getAttribute(attributeName) != null) {
+                delegate.removeAttribute(attributeName);
+                changedAttributes.add(attributeName);
+            }
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            delegate.setLastAccessedTime(lastAccessedTime);
+            lastAccessChanged = true;
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            delegate.setMaxInactiveInterval(interval);
+            metadataChanged = true;
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return delegate.isExpired();
+        }
+
+        private void clearChangeFlags() {
+            isNew = false;
+            metadataChanged = false;
+            lastAccessChanged = false;
+            changedAttributes.clear();
+            originalId = delegate.getId();
+        }
+    }
+}
@@ -19,12 +19,12 @@ public interface PasswordResetTokenRepository extends JpaRepository<PasswordRese
 
 
     /**
-     * Busca un token de recuperación por su hash (SHA-256 en hex).
+     * Busca un token de recuperación por su hash (SHA-256, 32 bytes; índice único).
      *
      * @param tokenHash hash del token recibido (nunca el token en claro).
      * @return token si existe; vacío si no se encuentra.
      */
-    Optional<PasswordResetToken> findByTokenHash(String tokenHash);
+    Optional<PasswordResetToken> findByTokenHash(byte[] tokenHash);
 
 
     /**
@@ -45,7 +45,8 @@ public interface PasswordResetTokenRepository extends JpaRepository<PasswordRese
     /**
      * Elimina tokens antiguos (caducados) o ya consumidos.
      * <p>
-     * Útil para tareas de mantenimiento (limpieza) y para reducir el crecimiento de la tabla.
+     * Borra todo en una sola sentencia; la purga periódica usa
+     * {@code PasswordResetTokenPurgeServiceImpl}, que borra por bloques.
      * </p>
      *
      * @param now fecha/hora actual para comparar caducidades.
@@ -27,4 +27,13 @@ public interface UserProfileRepository extends JpaRepository<UserProfile, Long>
     @Query("SELECT CASE WHEN COUNT(up) > 0 THEN true ELSE false END FROM UserProfile up WHERE up.user.id = :userId")
     boolean existsByUserId(@Param("userId") Long userId);
 
+    /**
+     * Recupera solo el locale guardado en el perfil del usuario con ese email.
+     *
+     * @param email email del usuario (sin distinguir mayúsculas/minúsculas)
+     * @return Optional con el código de locale (p.ej. {@code es_ES}), vacío si no hay perfil
+     */
+    @Query("SELECT up.locale FROM UserProfile up WHERE up.user.emailNormalized = lower(trim(:email))")
+    Optional<String> findLocaleByEmail(@Param("email") String email);
+
 }
@@ -1,12 +1,17 @@
 package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
 
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserProfileFormDTO;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -14,8 +19,12 @@ import java.util.Optional;
  * <p>
  * Extiende {@link JpaRepository} para proporcionar operaciones CRUD
  * estándar y consultas basadas en convenciones de Spring Data.
+ * Todas las búsquedas por email comparan la columna indexada {@code email_normalized}
+ * con {@code lower(trim(:email))}, por lo que no distinguen mayúsculas/minúsculas.
+ * Los filtros del listado de administración se expresan como {@link UserSpecifications}
+ * y se ejecutan desde el fragmento {@link UserRepositoryCustom}.
  */
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificationExecutor<User>, UserRepositoryCustom {
 
     /**
      * Localiza un usuario por email (ignorando mayúsculas/minúsculas) y asegura que sus roles
@@ -24,7 +33,8 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @param email email del usuario (usado como identificador/username del sistema).
      * @return {@link java.util.Optional} con el usuario y sus roles; {@code Optional.empty()} si no existe.
      */
-    Optional<User> findByEmailIgnoreCase(String email);
+    @Query("SELECT u FROM User u WHERE u.emailNormalized = lower(trim(:email))")
+    Optional<User> findByEmailIgnoreCase(@Param("email") String email);
 
     /**
      * Comprueba si existe un usuario con el email indicado.
@@ -32,7 +42,8 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @param email email del usuario
      * @return {@code true} si existe un usuario con ese email
      */
-    boolean existsByEmail(String email);
+    @Query("SELECT CASE WHEN COUNT(u) > 0 THEN true ELSE false END FROM User u WHERE u.emailNormalized = lower(trim(:email))")
+    boolean existsByEmail(@Param("email") String email);
 
     /**
      * Recupera un usuario por su email.
@@ -41,7 +52,8 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return un {@link Optional} con el usuario si existe
      */
     @EntityGraph(attributePaths = "roles")
-    Optional<User> findByEmail(String email);
+    @Query("SELECT u FROM User u WHERE u.emailNormalized = lower(trim(:email))")
+    Optional<User> findByEmail(@Param("email") String email);
 
     /**
      * Recupera usuarios paginados.
@@ -69,6 +81,20 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @Query("SELECT u FROM User u LEFT JOIN FETCH u.profile WHERE u.id = :id")
     Optional<User> findByIdWithProfile(@Param("id") Long id);
 
+    /**
+     * Recupera un {@link User} por su identificador junto con su perfil y sus roles
+     * en una única consulta (LEFT JOIN a {@code user_profiles}, {@code user_roles} y {@code roles}).
+     * <p>
+     * Pensado para las vistas de detalle y edición, que necesitan las tres cosas: con
+     * {@link #findByIdWithProfile(Long)} los roles se cargaban después con una segunda consulta.
+     *
+     * @param id identificador único del usuario
+     * @return un {@link Optional} con el usuario, su perfil (si lo tiene) y sus roles
+     */
+    @EntityGraph(attributePaths = {"profile", "roles"})
+    @Query("SELECT u FROM User u WHERE u.id = :id")
+    Optional<User> findDetailById(@Param("id") Long id);
+
     /**
      * Comprueba si existe algún {@link User} con el email indicado,
      * excluyendo al usuario cuyo identificador se pasa como parámetro.
@@ -82,6 +108,54 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return {@code true} si existe otro usuario con ese email,
      *         {@code false} en caso contrario
      */
-    boolean existsByEmailAndIdNot(String email, Long id);
+    @Query("SELECT CASE WHEN COUNT(u) > 0 THEN true ELSE false END FROM User u " +
+            "WHERE u.emailNormalized = lower(trim(:email)) AND u.id <> :id")
+    boolean existsByEmailAndIdNot(@Param("email") String email, @Param("id") Long id);
+
+    /**
+     * Devuelve, de entre los emails indicados, los que ya están registrados.
+     * <p>
+     * Permite comprobar duplicados de un bloque completo de filas (importación masiva)
+     * en una única consulta en lugar de un {@code existsByEmail} por fila.
+     *
+     * @param emails emails a comprobar, ya normalizados (minúsculas y sin espacios)
+     * @return emails que ya existen en la tabla {@code users}
+     */
+    @Query("SELECT u.email FROM User u WHERE u.emailNormalized IN :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    /**
+     * Devuelve los emails de los usuarios indicados (p.ej. para invalidar sus entradas
+     * en la caché de login tras un cambio masivo).
+     *
+     * @param ids identificadores de usuario
+     * @return emails de los usuarios existentes
+     */
+    @Query("SELECT u.email FROM User u WHERE u.id IN :ids")
+    List<String> findEmailsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Carga los datos del formulario de perfil del usuario indicado en una única consulta
+     * ({@code users LEFT JOIN user_profiles}), sin pasar por el grafo de roles de
+     * {@link #findByEmail(String)} ni por una segunda consulta al perfil.
+     * <p>
+     * Si el usuario aún no tiene perfil, los campos del perfil llegan a {@code null}.
+     *
+     * @param email email del usuario autenticado
+     * @return un {@link Optional} con el DTO del formulario, vacío si el usuario no existe
+     */
+    @Query("SELECT new org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserProfileFormDTO(" +
+            "u.id, u.email, p.firstName, p.lastName, p.phoneNumber, p.profileImage, p.bio, p.locale) " +
+            "FROM User u LEFT JOIN u.profile p WHERE u.emailNormalized = lower(trim(:email))")
+    Optional<UserProfileFormDTO> findProfileFormByEmail(@Param("email") String email);
+
+    /**
+     * Obtiene solo el id del usuario con el email indicado.
+     *
+     * @param email email del usuario
+     * @return un {@link Optional} con el id, vacío si el usuario no existe
+     */
+    @Query("SELECT u.id FROM User u WHERE u.emailNormalized = lower(trim(:email))")
+    Optional<Long> findIdByEmail(@Param("email") String email);
 
 }
@@ -0,0 +1,72 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserDetailDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserFilterDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Consultas de {@link User} implementadas a mano (fragmento de {@link UserRepository}).
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * Página de usuarios que cumplen el filtro, proyectada directamente a {@link UserDTO}.
+     * El total de registros se cachea unos segundos por filtro para no repetir el
+     * {@code COUNT(*)} en cada cambio de página. Solo se leen las columnas que muestra el
+     * listado (nunca {@code password_hash}) y no se crean entidades gestionadas. Los roles de
+     * toda la página se cargan con una única consulta adicional.
+     *
+     * @param filter   criterios de búsqueda (puede ser {@code null}).
+     * @param pageable paginación y ordenación.
+     * @return página de DTOs del listado.
+     */
+    Page<UserDTO> findListRowsFiltered(UserFilterDTO filter, Pageable pageable);
+
+    /**
+     * Proyección de solo lectura para la vista de detalle: usuario, perfil y nombres de rol
+     * en una sola consulta (una fila por rol), sin {@code password_hash} ni entidades gestionadas.
+     *
+     * @param id identificador del usuario.
+     * @return detalle del usuario, o vacío si no existe.
+     */
+    Optional<UserDetailDTO> findDetailRowById(Long id);
+
+    /**
+     * Ids de los usuarios que cumplen el filtro, en orden de id y a partir de {@code afterId}
+     * (paginación por clave, sin OFFSET), para procesarlos por bloques.
+     *
+     * @param filter  criterios de búsqueda (puede ser {@code null}).
+     * @param afterId último id del bloque anterior ({@code null} para empezar).
+     * @param limit   tamaño máximo del bloque.
+     * @return ids del bloque, vacío al terminar.
+     */
+    List<Long> findIdsFiltered(UserFilterDTO filter, Long afterId, int limit);
+
+    /**
+     * Asigna un rol a varios usuarios con un único {@code INSERT IGNORE ... SELECT} sobre
+     * {@code user_roles}; los que ya lo tenían se ignoran.
+     *
+     * @return filas insertadas.
+     */
+    int insertRoleForUsers(Long roleId, Collection<Long> userIds);
+
+    /**
+     * Retira un rol a varios usuarios con un único {@code DELETE} sobre {@code user_roles}.
+     *
+     * @return filas borradas.
+     */
+    int deleteRoleForUsers(Long roleId, Collection<Long> userIds);
+
+    /**
+     * Descarta los totales cacheados; se llama tras altas, bajas y modificaciones de usuarios.
+     * Si hay una transacción en curso, se descartan al confirmarla.
+     */
+    void evictCountCache();
+}
@@ -0,0 +1,254 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.*;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserDetailDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserFilterDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.Role;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.UserProfile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.springframework.data.jpa.repository.query.QueryUtils.toOrders;
+
+/**
+ * Implementación del fragmento {@link UserRepositoryCustom}.
+ * <p>
+ * Con cientos de miles de usuarios el {@code COUNT(*)} de cada página cuesta tanto como la
+ * propia página, así que el total se guarda en una caché Caffeine con TTL corto
+ * ({@code app.users.count-cache.ttl}) indexada por el filtro.
+ * </p>
+ * <p>
+ * Las rutas de solo lectura (listado y detalle) usan proyecciones {@link Tuple} con las columnas
+ * justas: no viajan por JDBC los 500 caracteres de {@code password_hash} ni se hidratan entidades
+ * en el contexto de persistencia.
+ * </p>
+ */
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final Cache<UserFilterDTO, Long> countCache;
+
+    public UserRepositoryCustomImpl(@Value("${app.users.count-cache.ttl:PT30S}") Duration ttl,
+                                    @Value("${app.users.count-cache.max-size:1000}") long maxSize) {
+        this.countCache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    @Override
+    public Page<UserDTO> findListRowsFiltered(UserFilterDTO filter, Pageable pageable) {
+        Specification<User> spec = UserSpecifications.fromFilter(filter);
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<User> root = query.from(User.class);
+        query.multiselect(
+                root.get("id").alias("id"),
+                root.get("email").alias("email"),
+                root.get("active").alias("active"),
+                root.get("accountNonLocked").alias("accountNonLocked"),
+                root.get("lastPasswordChange").alias("lastPasswordChange"),
+                root.get("passwordExpiresAt").alias("passwordExpiresAt"),
+                root.get("failedLoginAttempts").alias("failedLoginAttempts"),
+                root.get("emailVerified").alias("emailVerified"),
+                root.get("mustChangePassword").alias("mustChangePassword"));
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) query.where(predicate);
+        query.orderBy(toOrders(pageable.getSort(), root, cb));
+
+        var typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+
+        List<UserDTO> content = new ArrayList<>();
+        for (Tuple t : typedQuery.getResultList()) {
+            UserDTO dto = new UserDTO();
+            dto.setId(t.get("id", Long.class));
+            dto.setEmail(t.get("email", String.class));
+            dto.setActive(t.get("active", Boolean.class));
+            dto.setAccountNonLocked(t.get("accountNonLocked", Boolean.class));
+            dto.setLastPasswordChange(t.get("lastPasswordChange", LocalDateTime.class));
+            dto.setPasswordExpiresAt(t.get("passwordExpiresAt", LocalDateTime.class));
+            dto.setFailedLoginAttempts(t.get("failedLoginAttempts", Integer.class));
+            dto.setEmailVerified(t.get("emailVerified", Boolean.class));
+            dto.setMustChangePassword(t.get("mustChangePassword", Boolean.class));
+            dto.setRoles(new HashSet<>());
+            content.add(dto);
+        }
+        loadRoleNames(content);
+
+        // Copia inmutable del filtro como clave (el DTO del formulario es mutable)
+        UserFilterDTO key = copyOf(filter);
+        return PageableExecutionUtils.getPage(content, pageable,
+                () -> countCache.get(key, k -> count(spec)));
+    }
+
+    @Override
+    public Optional<UserDetailDTO> findDetailRowById(Long id) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<User> root = query.from(User.class);
+        Join<User, UserProfile> profile = root.join("profile", JoinType.LEFT);
+        Join<User, Role> role = root.join("roles", JoinType.LEFT);
+        query.multiselect(
+                root.get("email").alias("email"),
+                root.get("active").alias("active"),
+                root.get("accountNonLocked").alias("accountNonLocked"),
+                root.get("lastPasswordChange").alias("lastPasswordChange"),
+                root.get("passwordExpiresAt").alias("passwordExpiresAt"),
+                root.get("failedLoginAttempts").alias("failedLoginAttempts"),
+                root.get("emailVerified").alias("emailVerified"),
+                root.get("mustChangePassword").alias("mustChangePassword"),
+                profile.get("firstName").alias("firstName"),
+                profile.get("lastName").alias("lastName"),
+                profile.get("phoneNumber").alias("phoneNumber"),
+                profile.get("profileImage").alias("profileImage"),
+                profile.get("bio").alias("bio"),
+                profile.get("locale").alias("locale"),
+                role.get("name").alias("roleName"));
+        query.where(cb.equal(root.get("id"), id));
+
+        List<Tuple> rows = entityManager.createQuery(query).getResultList();
+        if (rows.isEmpty()) return Optional.empty();
+
+        // Todas las filas comparten las columnas de usuario y perfil; solo cambia el rol
+        Tuple t = rows.get(0);
+        UserDetailDTO dto = new UserDetailDTO();
+        dto.setId(id);
+        dto.setEmail(t.get("email", String.class));
+        dto.setActive(t.get("active", Boolean.class));
+        dto.setAccountNonLocked(t.get("accountNonLocked", Boolean.class));
+        dto.setLastPasswordChange(t.get("lastPasswordChange", LocalDateTime.class));
+        dto.setPasswordExpiresAt(t.get("passwordExpiresAt", LocalDateTime.class));
+        dto.setFailedLoginAttempts(t.get("failedLoginAttempts", Integer.class));
+        dto.setEmailVerified(t.get("emailVerified", Boolean.class));
+        dto.setMustChangePassword(t.get("mustChangePassword", Boolean.class));
+        dto.setFirstName(t.get("firstName", String.class));
+        dto.setLastName(t.get("lastName", String.class));
+        dto.setPhoneNumber(t.get("phoneNumber", String.class));
+        dto.setProfileImage(t.get("profileImage", String.class));
+        dto.setBio(t.get("bio", String.class));
+        dto.setLocale(t.get("locale", String.class));
+
+        Set<String> roles = new HashSet<>();
+        for (Tuple row : rows) {
+            String roleName = row.get("roleName", String.class);
+            if (roleName != null) roles.add(roleName);
+        }
+        dto.setRoles(roles);
+        return Optional.of(dto);
+    }
+
+    @Override
+    public List<Long> findIdsFiltered(UserFilterDTO filter, Long afterId, int limit) {
+        Specification<User> spec = UserSpecifications.fromFilter(filter);
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<User> root = query.from(User.class);
+        query.select(root.get("id"));
+        List<Predicate> predicates = new ArrayList<>();
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) predicates.add(predicate);
+        if (afterId != null) predicates.add(cb.greaterThan(root.get("id"), afterId));
+        query.where(predicates.toArray(Predicate[]::new));
+        query.orderBy(cb.asc(root.get("id")));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public int insertRoleForUsers(Long roleId, Collection<Long> userIds) {
+        if (userIds.isEmpty()) return 0;
+        return entityManager.createNativeQuery(
+                        "INSERT IGNORE INTO user_roles (user_id, role_id) " +
+                        "SELECT id, :roleId FROM users WHERE id IN (:ids)")
+                .setParameter("roleId", roleId)
+                .setParameter("ids", userIds)
+                .executeUpdate();
+    }
+
+    @Override
+    public int deleteRoleForUsers(Long roleId, Collection<Long> userIds) {
+        if (userIds.isEmpty()) return 0;
+        return entityManager.createNativeQuery(
+                        "DELETE FROM user_roles WHERE role_id = :roleId AND user_id IN (:ids)")
+                .setParameter("roleId", roleId)
+                .setParameter("ids", userIds)
+                .executeUpdate();
+    }
+
+    /**
+     * Dentro de una transacción se descarta al confirmarla: antes, una lectura concurrente volvería
+     * a cachear el total sin los cambios aún no confirmados.
+     */
+    @Override
+    public void evictCountCache() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            countCache.invalidateAll();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                countCache.invalidateAll();
+            }
+        });
+    }
+
+    private long count(Specification<User> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<User> root = query.from(User.class);
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) query.where(predicate);
+        query.select(cb.count(root));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    /**
+     * Rellena los roles de todos los usuarios de la página con una sola consulta {@code IN}.
+     */
+    private void loadRoleNames(List<UserDTO> users) {
+        if (users.isEmpty()) return;
+        Map<Long, UserDTO> byId = new HashMap<>();
+        for (UserDTO dto : users) byId.put(dto.getId(), dto);
+
+        List<Object[]> rows = entityManager.createQuery(
+                        "SELECT u.id, r.name FROM User u JOIN u.roles r WHERE u.id IN :ids", Object[].class)
+                .setParameter("ids", byId.keySet())
+                .getResultList();
+        for (Object[] row : rows) {
+            byId.get((Long) row[0]).getRoles().add((String) row[1]);
+        }
+    }
+
+    private static UserFilterDTO copyOf(UserFilterDTO filter) {
+        if (filter == null) return new UserFilterDTO();
+        String prefix = filter.getEmailPrefix() == null || filter.getEmailPrefix().isBlank()
+                ? null : filter.getEmailPrefix().trim();
+        return new UserFilterDTO(filter.getRoleId(), filter.getActive(), filter.getLocked(),
+                filter.getEmailVerified(), filter.getPasswordExpiresFrom(), filter.getPasswordExpiresTo(), prefix);
+    }
+}
@@ -0,0 +1,101 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
+
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserFilterDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.Role;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * {@link Specification}s reutilizables para filtrar {@link User}.
+ * <p>
+ * Cada criterio está pensado para apoyarse en un índice de {@code schema.sql}:
+ * el prefijo de email usa el índice único de {@code users.email_normalized}, la ventana de caducidad
+ * {@code idx_users_password_expires_at}, y el rol un {@code EXISTS} sobre
+ * {@code user_roles(role_id, user_id)} (sin JOIN que duplique filas al paginar).
+ * </p>
+ */
+public final class UserSpecifications {
+
+    private UserSpecifications() {
+    }
+
+    /**
+     * Combina todos los criterios informados del filtro (AND).
+     *
+     * @param filter criterios de búsqueda (puede ser {@code null}).
+     * @return especificación equivalente; sin criterios, devuelve todos los usuarios.
+     */
+    public static Specification<User> fromFilter(UserFilterDTO filter) {
+        Specification<User> spec = Specification.unrestricted();
+        if (filter == null) return spec;
+
+        if (filter.getRoleId() != null) spec = spec.and(hasRole(filter.getRoleId()));
+        if (filter.getActive() != null) spec = spec.and(isActive(filter.getActive()));
+        if (filter.getLocked() != null) spec = spec.and(isLocked(filter.getLocked()));
+        if (filter.getEmailVerified() != null) spec = spec.and(isEmailVerified(filter.getEmailVerified()));
+        if (filter.getPasswordExpiresFrom() != null || filter.getPasswordExpiresTo() != null) {
+            spec = spec.and(passwordExpiresBetween(filter.getPasswordExpiresFrom(), filter.getPasswordExpiresTo()));
+        }
+        if (filter.getEmailPrefix() != null && !filter.getEmailPrefix().isBlank()) {
+            spec = spec.and(emailStartsWith(filter.getEmailPrefix().trim()));
+        }
+        return spec;
+    }
+
+    public static Specification<User> hasRole(Long roleId) {
+        return (root, query, cb) -> {
+            Subquery<Long> sq = query.subquery(Long.class);
+            Root<User> su = sq.from(User.class);
+            Join<User, Role> role = su.join("roles");
+            sq.select(su.get("id"))
+                    .where(cb.equal(role.get("id"), roleId), cb.equal(su.get("id"), root.get("id")));
+            return cb.exists(sq);
+        };
+    }
+
+    public static Specification<User> isActive(boolean active) {
+        return (root, query, cb) -> cb.equal(root.get("active"), active);
+    }
+
+    public static Specification<User> isLocked(boolean locked) {
+        return (root, query, cb) -> cb.equal(root.get("accountNonLocked"), !locked);
+    }
+
+    public static Specification<User> isEmailVerified(boolean verified) {
+        return (root, query, cb) -> cb.equal(root.get("emailVerified"), verified);
+    }
+
+    /**
+     * Contraseñas que caducan entre dos fechas (días completos, extremos incluidos).
+     */
+    public static Specification<User> passwordExpiresBetween(LocalDate from, LocalDate to) {
+        return (root, query, cb) -> {
+            if (from != null && to != null) {
+                return cb.and(
+                        cb.greaterThanOrEqualTo(root.get("passwordExpiresAt"), from.atStartOfDay()),
+                        cb.lessThan(root.get("passwordExpiresAt"), to.plusDays(1).atStartOfDay()));
+            }
+            if (from != null) {
+                return cb.greaterThanOrEqualTo(root.get("passwordExpiresAt"), from.atStartOfDay());
+            }
+            return cb.lessThan(root.get("passwordExpiresAt"), to.plusDays(1).atStartOfDay());
+        };
+    }
+
+    /**
+     * Email que empieza por el prefijo dado, sin distinguir mayúsculas/minúsculas. Se compara
+     * contra {@code email_normalized} con el prefijo ya en minúsculas, sin aplicar funciones a la
+     * columna, para que el rango pueda resolverse con su índice único.
+     */
+    public static Specification<User> emailStartsWith(String prefix) {
+        String escaped = prefix.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return (root, query, cb) -> cb.like(root.get("emailNormalized"), escaped + "%", '\\');
+    }
+}
@@ -0,0 +1,256 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.ActiveUserSessionsDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.session.AbstractSessionEvent;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.session.SessionIdChangedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link SessionRegistry} en memoria con tamaño acotado, usado por la gestión de sesiones de
+ * {@code SecurityConfig} y por la vista de administración {@code /users/sessions}.
+ * <p>
+ * Dos mapas concurrentes: id de sesión → {@link SessionInformation} y usuario → ids de sesión,
+ * más un contador atómico; así la búsqueda por usuario y el total de sesiones son O(1).
+ * El usuario se indexa por su username (email) en minúsculas, sea cual sea el tipo de principal.
+ * </p>
+ * <p>
+ * Memoria acotada: como mucho {@code app.sessions.registry.max-size} sesiones. Una tarea
+ * periódica elimina las sesiones sin actividad durante más que el timeout de sesión (p.ej. las
+ * que caducan en un almacén JDBC sin publicar {@link SessionDestroyedEvent}); si aun así se
+ * alcanza el límite, las nuevas sesiones no se registran (siguen funcionando, pero no aparecen
+ * en la vista ni pueden cerrarse desde ella).
+ * </p>
+ * <p>
+ * El registro es local a cada nodo: con sesiones compartidas en BD y varios nodos, el cierre
+ * forzado solo afecta a las peticiones que lleguen al nodo donde se registró la sesión.
+ * </p>
+ */
+@Component
+public class BoundedSessionRegistry implements SessionRegistry, ApplicationListener<AbstractSessionEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedSessionRegistry.class);
+
+    private final Map<String, SessionInformation> sessionsById = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sessionIdsByUser = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+    private final int maxSessions;
+    private final Duration idleTimeout;
+
+    public BoundedSessionRegistry(@Value("${app.sessions.registry.max-size:10000}") int maxSessions,
+                                  @Value("${server.servlet.session.timeout:30m}") Duration idleTimeout) {
+        this.maxSessions = maxSessions;
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public List<Object> getAllPrincipals() {
+        List<Object> principals = new ArrayList<>(sessionIdsByUser.size());
+        for (String sessionId : firstSessionIds()) {
+            SessionInformation info = sessionsById.get(sessionId);
+            if (info != null) principals.add(info.getPrincipal());
+        }
+        return principals;
+    }
+
+    @Override
+    public List<SessionInformation> getAllSessions(Object principal, boolean includeExpiredSessions) {
+        Set<String> ids = sessionIdsByUser.get(keyOf(principal));
+        if (ids == null) return List.of();
+        List<SessionInformation> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            SessionInformation info = sessionsById.get(id);
+            if (info != null && (includeExpiredSessions || !info.isExpired())) result.add(info);
+        }
+        return result;
+    }
+
+    @Override
+    public SessionInformation getSessionInformation(String sessionId) {
+        return sessionsById.get(sessionId);
+    }
+
+    @Override
+    public void refreshLastRequest(String sessionId) {
+        SessionInformation info = sessionsById.get(sessionId);
+        if (info != null) info.refreshLastRequest();
+    }
+
+    @Override
+    public void registerNewSession(String sessionId, Object principal) {
+        // Re-registro de la misma sesión (p.ej. OAuth2 tras cargar el usuario local): se sustituye
+        removeSessionInformation(sessionId);
+
+        if (sessionCount.get() >= maxSessions) {
+            purgeStaleSessions();
+            if (sessionCount.get() >= maxSessions) {
+                logger.warn("Registro de sesiones lleno ({}); la sesión de {} no se registra", maxSessions, keyOf(principal));
+                return;
+            }
+        }
+
+        // Ambos mapas se actualizan dentro del compute de la clave del usuario: atómico por usuario
+        sessionIdsByUser.compute(keyOf(principal), (k, ids) -> {
+            Set<String> set = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            if (sessionsById.putIfAbsent(sessionId, new SessionInformation(principal, sessionId, new Date())) == null) {
+                set.add(sessionId);
+                sessionCount.incrementAndGet();
+            }
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    @Override
+    public void removeSessionInformation(String sessionId) {
+        SessionInformation info = sessionsById.get(sessionId);
+        if (info == null) return;
+        sessionIdsByUser.compute(keyOf(info.getPrincipal()), (k, ids) -> {
+            if (sessionsById.remove(sessionId) != null) {
+                sessionCount.decrementAndGet();
+            }
+            if (ids == null) return null;
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractSessionEvent event) {
+        if (event instanceof SessionDestroyedEvent destroyed) {
+            removeSessionInformation(destroyed.getId());
+        } else if (event instanceof SessionIdChangedEvent changed) {
+            SessionInformation info = sessionsById.get(changed.getOldSessionId());
+            if (info != null) {
+                removeSessionInformation(changed.getOldSessionId());
+                registerNewSession(changed.getNewSessionId(), info.getPrincipal());
+            }
+        }
+    }
+
+    /**
+     * Número total de sesiones registradas (O(1)).
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * Número de usuarios con al menos una sesión registrada.
+     */
+    public int getUserCount() {
+        return sessionIdsByUser.size();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Marca para cierre todas las sesiones de un usuario; el {@code ConcurrentSessionFilter}
+     * las invalida en su siguiente petición.
+     *
+     * @param username email del usuario (sin distinguir mayúsculas/minúsculas).
+     * @return número de sesiones marcadas.
+     */
+    public int expireUserSessions(String username) {
+        List<SessionInformation> sessions = getAllSessions(username, false);
+        sessions.forEach(SessionInformation::expireNow);
+        if (!sessions.isEmpty()) {
+            logger.info("Marcadas para cierre {} sesiones de {}", sessions.size(), keyOf(username));
+        }
+        return sessions.size();
+    }
+
+    /**
+     * Resumen por usuario para la vista de administración, de más a menos reciente.
+     */
+    public List<ActiveUserSessionsDTO> listActiveUsers() {
+        List<ActiveUserSessionsDTO> result = new ArrayList<>(sessionIdsByUser.size());
+        sessionIdsByUser.forEach((username, ids) -> {
+            int total = 0;
+            int expired = 0;
+            Date last = null;
+            for (String id : ids) {
+                SessionInformation info = sessionsById.get(id);
+                if (info == null) continue;
+                total++;
+                if (info.isExpired()) expired++;
+                if (last == null || info.getLastRequest().after(last)) last = info.getLastRequest();
+            }
+            if (total > 0) result.add(new ActiveUserSessionsDTO(username, total, expired, last));
+        });
+        result.sort(Comparator.comparing(ActiveUserSessionsDTO::getLastRequest).reversed());
+        return result;
+    }
+
+    /**
+     * Elimina las sesiones sin peticiones durante más que el timeout de sesión.
+     *
+     * @return número de sesiones eliminadas.
+     */
+    @Scheduled(fixedDelayString = "${app.sessions.registry.sweep-interval:PT1M}")
+    public int purgeStaleSessions() {
+        long cutoff = System.currentTimeMillis() - idleTimeout.toMillis();
+        int removed = 0;
+        for (SessionInformation info : sessionsById.values()) {
+            if (info.getLastRequest().getTime() < cutoff) {
+                removeSessionInformation(info.getSessionId());
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            logger.debug("Eliminadas {} sesiones inactivas del registro", removed);
+        }
+        return removed;
+    }
+
+    private List<String> firstSessionIds() {
+        List<String> ids = new ArrayList<>(sessionIdsByUser.size());
+        for (Set<String> set : sessionIdsByUser.values()) {
+            for (String id : set) {
+                ids.add(id);
+                break;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Clave de usuario independiente del tipo de principal (UserDetails, OAuth2User, String...).
+     */
+    static String keyOf(Object principal) {
+        String name;
+        if (principal instanceof UserDetails userDetails) {
+            name = userDetails.getUsername();
+        } else if (principal instanceof AuthenticatedPrincipal authenticated) {
+            name = authenticated.getName();
+        } else if (principal instanceof Principal p) {
+            name = p.getName();
+        } else {
+            name = String.valueOf(principal);
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
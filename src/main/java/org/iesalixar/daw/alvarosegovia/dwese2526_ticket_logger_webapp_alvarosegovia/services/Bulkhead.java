@@ -0,0 +1,45 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Límite de llamadas simultáneas a un servicio externo: si está degradado, como mucho
+ * {@code maxConcurrent} hilos quedan esperándolo y el resto falla tras {@code maxWait} en lugar
+ * de acumularse (y dejar sin hilos al resto de la aplicación).
+ */
+public class Bulkhead {
+
+    private final int maxConcurrent;
+    private final long maxWaitMs;
+    private final Semaphore permits;
+
+    public Bulkhead(int maxConcurrent, Duration maxWait) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMs = maxWait.toMillis();
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Reserva un hueco, esperando como mucho {@code maxWait}. Si devuelve {@code true},
+     * hay que liberarlo con {@link #release()}.
+     */
+    public boolean tryAcquire() {
+        try {
+            return permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /** Llamadas en curso */
+    public int getInFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+}
@@ -0,0 +1,68 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Caché de {@link UserDetails} para el {@code DaoAuthenticationProvider}: evita consultar
+ * usuario y roles en BD en cada login de un mismo usuario.
+ * <p>
+ * Se guardan y devuelven <b>copias</b>: Spring Security borra la contraseña del
+ * {@code UserDetails} autenticado ({@code eraseCredentials}) y, sin copia, borraría la de la caché.
+ * </p>
+ * <p>
+ * Cualquier cambio en usuarios (reset de contraseña, edición, roles, barrido de caducidad)
+ * debe invalidar la entrada con {@link #removeUserFromCache(String)} o {@link #clear()}.
+ * </p>
+ */
+@Component
+public class CaffeineUserCache implements UserCache {
+
+    private final Cache<String, UserDetails> cache;
+
+    public CaffeineUserCache(@Value("${app.security.user-cache.ttl:PT5M}") Duration ttl,
+                             @Value("${app.security.user-cache.max-size:10000}") long maxSize) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        UserDetails cached = cache.getIfPresent(key(username));
+        return cached == null ? null : copyOf(cached);
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        cache.put(key(user.getUsername()), copyOf(user));
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        if (username != null) cache.invalidate(key(username));
+    }
+
+    /**
+     * Vacía la caché completa (cambios masivos de usuarios).
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase();
+    }
+
+    private static UserDetails copyOf(UserDetails user) {
+        return User.withUserDetails(user).build();
+    }
+}
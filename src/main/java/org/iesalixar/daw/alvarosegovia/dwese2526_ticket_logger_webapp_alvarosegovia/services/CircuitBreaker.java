@@ -0,0 +1,169 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker por número de llamadas para un servicio externo.
+ * <ul>
+ *     <li><b>CLOSED</b>: las llamadas pasan y su resultado se anota en una ventana de las últimas
+ *     {@code windowSize}. Con al menos {@code minimumCalls} anotadas y un porcentaje de fallos
+ *     {@code >= failureRateThreshold}, se abre.</li>
+ *     <li><b>OPEN</b>: se rechaza todo sin llamar ({@link #tryAcquirePermission()} devuelve
+ *     {@link #NO_PERMISSION}) durante {@code openDuration}.</li>
+ *     <li><b>HALF_OPEN</b>: pasado ese tiempo se dejan pasar {@code halfOpenProbes} llamadas de
+ *     prueba; si todas van bien se cierra con la ventana vacía y si alguna falla se vuelve a abrir.</li>
+ * </ul>
+ * <p>
+ * Cada llamada autorizada debe terminar con {@link #onSuccess(long)}, {@link #onFailure(long)} o
+ * {@link #onIgnored(long)} (resultado que no dice nada de la salud del servicio, p.ej. un error del
+ * propio llamante), pasando el permiso que recibió. El permiso identifica el estado que lo
+ * concedió: el resultado de una llamada que termina después de un cambio de estado se descarta,
+ * para que una llamada lenta admitida en CLOSED no cuente como prueba de HALF_OPEN. El estado
+ * cambia poco y los métodos son cortos, así que basta con {@code synchronized}.
+ * </p>
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Valor de {@link #tryAcquirePermission()} cuando no se puede hacer la llamada */
+    public static final long NO_PERMISSION = -1;
+
+    private final String name;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationMs;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
+
+    /** Ventana circular de resultados ({@code true} = fallo) */
+    private final boolean[] window;
+    private int windowNext;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    /** Se incrementa con cada cambio de estado; es el permiso que se entrega a las llamadas */
+    private long generation;
+    private long openedAt;
+    private int probesAvailable;
+    private int probesSucceeded;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          Duration openDuration, int halfOpenProbes) {
+        this(name, windowSize, minimumCalls, failureRateThreshold, openDuration, halfOpenProbes,
+                System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                   Duration openDuration, int halfOpenProbes, LongSupplier clock) {
+        if (windowSize < 1 || minimumCalls < 1 || halfOpenProbes < 1) {
+            throw new IllegalArgumentException("Configuración de circuit breaker no válida: " + name);
+        }
+        this.name = name;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationMs = openDuration.toMillis();
+        this.halfOpenProbes = halfOpenProbes;
+        this.clock = clock;
+    }
+
+    /**
+     * Pide permiso para hacer la llamada. En HALF_OPEN, cada permiso concedido consume una de las
+     * llamadas de prueba.
+     *
+     * @return permiso que hay que pasar al anotar el resultado, o {@link #NO_PERMISSION}.
+     */
+    public synchronized long tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openDurationMs) return NO_PERMISSION;
+            transitionTo(State.HALF_OPEN);
+            probesAvailable = halfOpenProbes;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesAvailable == 0) return NO_PERMISSION;
+            probesAvailable--;
+        }
+        return generation;
+    }
+
+    public synchronized void onSuccess(long permission) {
+        if (permission != generation) return;
+        if (state == State.HALF_OPEN) {
+            if (++probesSucceeded >= halfOpenProbes) {
+                resetWindow();
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure(long permission) {
+        if (permission != generation) return;
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && windowFailures * 100.0 / windowCount >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Cierra una llamada autorizada sin contar su resultado (devuelve la prueba si estaba en HALF_OPEN).
+     */
+    public synchronized void onIgnored(long permission) {
+        if (permission != generation) return;
+        if (state == State.HALF_OPEN && probesAvailable + probesSucceeded < halfOpenProbes) {
+            probesAvailable++;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowNext]) windowFailures--;
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = failure;
+        if (failure) windowFailures++;
+        windowNext = (windowNext + 1) % window.length;
+    }
+
+    private void open() {
+        openedAt = clock.getAsLong();
+        transitionTo(State.OPEN);
+    }
+
+    private void resetWindow() {
+        windowNext = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    private void transitionTo(State newState) {
+        if (state == newState) return;
+        if (newState == State.OPEN) {
+            logger.warn("Circuit breaker '{}' abierto ({} -> OPEN): se rechazan las llamadas durante {} ms",
+                    name, state, openDurationMs);
+        } else {
+            logger.info("Circuit breaker '{}': {} -> {}", name, state, newState);
+        }
+        state = newState;
+        generation++;
+    }
+}
@@ -23,7 +23,8 @@ import java.util.stream.Collectors;
  * <ul>
  *   <li>Obtiene el usuario por email</li>
  *   <li>Devuelve un {@link org.springframework.security.core.userdetails.User} con sus roles</li>
- *   <li>Aplica únicamente el flag de cuenta activa ({@code active}) como "disabled"</li>
+ *   <li>Aplica el flag de cuenta activa ({@code active}) como "disabled"</li>
+ *   <li>Aplica {@code must_change_password} como "credentials expired"</li>
  * </ul>
  * </p>
  *
@@ -53,6 +54,7 @@ public class CustomUserDetailsService implements UserDetailsService {
      *   <li>{@code password}: hash BCrypt almacenado en {@code password_hash}</li>
      *   <li>{@code authorities}: roles tipo {@code ROLE_USER}, {@code ROLE_ADMIN}, etc.</li>
      *   <li>{@code disabled}: basado en {@code active}</li>
+     *   <li>{@code credentialsExpired}: basado en {@code mustChangePassword}</li>
      * </ul>
      * </p>
      *
@@ -89,10 +91,11 @@ public class CustomUserDetailsService implements UserDetailsService {
                                 .collect(Collectors.toList())
                                 .toArray(new String[0])
                 )
-                // Versión mínima: sin reglas extra aún.
                 .accountExpired(false)
                 .accountLocked(false)
-                .credentialsExpired(false)
+                // El barrido de caducidad (PasswordExpiryServiceImpl) ya marca must_change_password:
+                // aquí solo se lee el flag, sin comparar fechas en cada login.
+                .credentialsExpired(user.isMustChangePassword())
                 .disabled(!user.isActive())
                 .build();
 
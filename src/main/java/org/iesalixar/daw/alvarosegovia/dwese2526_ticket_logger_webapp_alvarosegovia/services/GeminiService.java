@@ -1,5 +1,7 @@
 package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
 
+import java.util.function.Consumer;
+
 /**
  * Servicio encargado de la generación de biografías mediante un proveedor externo de IA.
  * <p>
@@ -24,5 +26,39 @@ public interface GeminiService {
      * @throws ExternalServiceException
      *         si ocurre algún error al comunicarse con el servicio externo.
      */
-    String generateBiography(String nombre, String intereses);
+    default String generateBiography(String nombre, String intereses) {
+        return generateBiography(nombre, intereses, false);
+    }
+
+    /**
+     * Genera la biografía reutilizando, si existe, la ya generada para el mismo prompt.
+     *
+     * @param nombre      Nombre completo de la persona.
+     * @param intereses   Intereses, habilidades o áreas profesionales relevantes.
+     * @param regenerate  {@code true} para ignorar la biografía cacheada y pedir una nueva
+     *                    (que sustituye a la anterior en la caché).
+     * @return Texto generado con la biografía profesional.
+     * @throws ExternalServiceException
+     *         si ocurre algún error al comunicarse con el servicio externo.
+     */
+    String generateBiography(String nombre, String intereses, boolean regenerate);
+
+    /**
+     * Igual que {@link #generateBiography(String, String, boolean)}, pero entrega el texto a medida que el
+     * modelo lo genera, fragmento a fragmento, en lugar de esperar a la respuesta completa.
+     * <p>
+     * Bloquea al hilo llamante hasta que termina la generación: está pensado para ejecutarse en
+     * un executor y reenviar los fragmentos al navegador (SSE). Si {@code onChunk} lanza una
+     * excepción (p.ej. el cliente se desconectó), se aborta la llamada y la excepción se propaga.
+     * </p>
+     *
+     * @param nombre     Nombre completo de la persona.
+     * @param intereses  Intereses, habilidades o áreas profesionales relevantes.
+     * @param regenerate {@code true} para ignorar la biografía cacheada y pedir una nueva.
+     * @param onChunk    Receptor de cada fragmento de texto, en orden (una biografía cacheada
+     *                   se entrega en un único fragmento).
+     * @throws ExternalServiceException
+     *         si ocurre algún error al comunicarse con el servicio externo.
+     */
+    void streamBiography(String nombre, String intereses, boolean regenerate, Consumer<String> onChunk);
 }
@@ -1,17 +1,45 @@
 package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
 
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.hc.core5.http.io.EofSensorInputStream;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.exeptions.ExternalServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
-import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Implementación del servicio {@link GeminiService} que utiliza la API externa
@@ -30,10 +58,11 @@ import java.util.Optional;
  *     <li>{@code gemini.api.key}</li>
  *     <li>{@code gemini.api.baseUrl}</li>
  *     <li>{@code gemini.api.model}</li>
+ *     <li>{@code gemini.biography-cache.*} (caché de biografías generadas)</li>
  * </ul>
  *
- * Se apoya en {@link org.springframework.web.client.RestTemplate}
- * para realizar las llamadas HTTP.
+ * Se apoya en el {@link org.springframework.web.client.RestTemplate} {@code geminiRestTemplate}
+ * (pool de conexiones y timeouts, ver {@code GeminiClientConfig}) para realizar las llamadas HTTP.
  */
 @Service
 public class GeminiServiceImpl implements GeminiService {
@@ -46,13 +75,81 @@ public class GeminiServiceImpl implements GeminiService {
     @Value("${gemini.api.model}")
     private String model;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Autowired
+    @Qualifier("geminiRestTemplate")
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Biografías ya generadas, por prompt normalizado: la misma entrada se repite a menudo y cada
+     * llamada a Gemini es lenta y de pago. Es asíncrona para que la llamada a Gemini no se haga
+     * dentro del cómputo de Caffeine, que bloquearía otras claves del mismo segmento del mapa.
+     */
+    private final AsyncCache<String, String> biographyCache;
+
+    /** Coste estimado de una llamada a Gemini, para la métrica de ahorro de la caché */
+    private final double costPerCall;
+
+    private final Counter savedCallsCounter;
+    private final Counter savedCostCounter;
+
+    /** Abre el circuito si Gemini falla de forma continuada (ver {@code GeminiClientConfig}) */
+    @Autowired
+    @Qualifier("geminiCircuitBreaker")
+    private CircuitBreaker circuitBreaker;
+
+    /** Limita las llamadas simultáneas a Gemini */
+    @Autowired
+    @Qualifier("geminiBulkhead")
+    private Bulkhead bulkhead;
+
+    private final Counter circuitOpenCounter;
+    private final Counter bulkheadFullCounter;
+
+    public GeminiServiceImpl(MeterRegistry meterRegistry,
+                             @Value("${gemini.biography-cache.ttl:PT24H}") Duration cacheTtl,
+                             @Value("${gemini.biography-cache.max-size:1000}") long cacheMaxSize,
+                             @Value("${gemini.biography-cache.cost-per-call:0}") double costPerCall) {
+        this.costPerCall = costPerCall;
+        this.biographyCache = Caffeine.newBuilder()
+                .expireAfterWrite(cacheTtl)
+                .maximumSize(cacheMaxSize)
+                .recordStats()
+                .buildAsync();
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size...
+        CaffeineCacheMetrics.monitor(meterRegistry, biographyCache, "gemini.biographies");
+        Gauge.builder("gemini.biography.cache.hit_ratio", biographyCache, c -> c.synchronous().stats().hitRate())
+                .description("Proporción de biografías servidas desde la caché")
+                .register(meterRegistry);
+        this.savedCallsCounter = Counter.builder("gemini.biography.cache.saved_calls")
+                .description("Llamadas a Gemini evitadas por la caché de biografías")
+                .register(meterRegistry);
+        this.savedCostCounter = Counter.builder("gemini.biography.cache.saved_cost")
+                .description("Coste estimado ahorrado (saved_calls x gemini.biography-cache.cost-per-call)")
+                .register(meterRegistry);
+        this.circuitOpenCounter = Counter.builder("gemini.calls.rejected")
+                .tag("reason", "circuit_open")
+                .description("Llamadas a Gemini rechazadas sin intentarse")
+                .register(meterRegistry);
+        this.bulkheadFullCounter = Counter.builder("gemini.calls.rejected")
+                .tag("reason", "bulkhead_full")
+                .description("Llamadas a Gemini rechazadas sin intentarse")
+                .register(meterRegistry);
+    }
 
     /**
      * Genera una biografía profesional utilizando la API de Gemini.
+     * <p>
+     * El resultado se cachea por prompt normalizado ({@link #cacheKey(String)}); con
+     * {@code regenerate} se pide siempre una nueva, que reemplaza a la cacheada. Peticiones
+     * simultáneas del mismo prompt esperan a una única llamada a Gemini.
+     * </p>
      *
      * @param nombre     Nombre completo de la persona.
      * @param intereses  Intereses o habilidades profesionales.
+     * @param regenerate {@code true} para no usar la biografía cacheada.
      * @return Biografía generada en texto plano.
      *
      * @throws ExternalServiceException
@@ -65,55 +162,251 @@ public class GeminiServiceImpl implements GeminiService {
      *         </ul>
      */
     @Override
-    public String generateBiography(String nombre, String intereses) {
-        String prompt = buildPrompt(nombre, intereses);
-        Map<String, Object> body = buildCopy(prompt);
+    public String generateBiography(String nombre, String intereses, boolean regenerate) {
+        String prompt = buildPrompt(normalize(nombre), normalize(intereses));
+        String key = cacheKey(prompt);
+
+        if (regenerate) {
+            String bio = callGenerateContent(prompt);
+            biographyCache.synchronous().put(key, bio);
+            return bio;
+        }
 
+        // Se registra un futuro pendiente y la llamada se hace fuera de la caché; quien llegue
+        // mientras tanto espera a ese futuro. Si falla, Caffeine lo quita y no queda cacheado
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> bio = biographyCache.get(key, (k, executor) -> pending);
+        if (bio != pending) {
+            recordSavedCall();
+            return join(bio);
+        }
         try {
-            Map<String, Object> resp = postGenerateContent(body);
+            String generated = callGenerateContent(prompt);
+            pending.complete(generated);
+            return generated;
+        } catch (Throwable e) {
+            // También con un Error: un futuro sin completar dejaría esperando a todos hasta que caduque
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
 
-            return extractText(resp).orElseThrow(() ->
-                    new ExternalServiceException(
+    /**
+     * Espera a la biografía que está generando otra petición y relanza su error tal cual.
+     */
+    private static String join(CompletableFuture<String> bio) {
+        try {
+            return bio.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Genera la biografía con {@code streamGenerateContent} ({@code alt=sse}): Gemini devuelve una
+     * línea {@code data: {...}} por fragmento, con la misma estructura que la respuesta completa.
+     * Cada fragmento se pasa a {@code onChunk} en cuanto llega y, si la generación se completa,
+     * el texto entero se guarda en la misma caché que {@link #generateBiography}.
+     */
+    @Override
+    public void streamBiography(String nombre, String intereses, boolean regenerate, Consumer<String> onChunk) {
+        String prompt = buildPrompt(normalize(nombre), normalize(intereses));
+        String key = cacheKey(prompt);
+
+        if (!regenerate) {
+            // Una generación aún en curso no se espera: el stream empieza a entregar texto antes
+            CompletableFuture<String> inCache = biographyCache.getIfPresent(key);
+            String cached = inCache != null && inCache.isDone() && !inCache.isCompletedExceptionally()
+                    ? inCache.join() : null;
+            if (cached != null) {
+                recordSavedCall();
+                onChunk.accept(cached);
+                return;
+            }
+        }
+
+        StringBuilder full = new StringBuilder();
+        guarded("streamGenerateContent", () -> {
+            try {
+                boolean anyText = postStreamGenerateContent(buildCopy(prompt), chunk -> {
+                    onChunk.accept(chunk);
+                    full.append(chunk);
+                });
+                if (!anyText) {
+                    throw new ExternalServiceException(
                             "gemini",
-                            "generateContent",
+                            "streamGenerateContent",
                             502,
                             "Gemini no devolvió texto utilizable."
-                    )
-            );
+                    );
+                }
+                return null;
+            } catch (RestClientException e) {
+                throw toExternalServiceException("streamGenerateContent", e);
+            }
+        });
+        biographyCache.synchronous().put(key, full.toString().trim());
+    }
+
+    /**
+     * Llama a {@code generateContent} y devuelve el texto generado.
+     */
+    private String callGenerateContent(String prompt) {
+        return guarded("generateContent", () -> {
+            try {
+                Map<String, Object> resp = postGenerateContent(buildCopy(prompt));
+
+                return extractText(resp).map(String::trim).orElseThrow(() ->
+                        new ExternalServiceException(
+                                "gemini",
+                                "generateContent",
+                                502,
+                                "Gemini no devolvió texto utilizable."
+                        )
+                );
+
+            } catch (ExternalServiceException e) {
+                throw e;
+            } catch (Exception e) {
+                throw toExternalServiceException("generateContent", e);
+            }
+        });
+    }
+
+    /**
+     * Ejecuta una llamada a Gemini tras el circuit breaker y el bulkhead.
+     * <p>
+     * Con el circuito abierto, o sin hueco en el bulkhead tras {@code gemini.bulkhead.max-wait},
+     * falla al momento con una {@link ExternalServiceException} 503 sin llamar a Gemini. Cuentan
+     * como fallo para el circuito los 5xx (incluidos red y timeouts, que se traducen a 503) y los
+     * 429; un 4xx dice que Gemini responde, y un error del propio llamante (p.ej. el navegador
+     * cerró el stream) no cuenta.
+     * </p>
+     */
+    private <T> T guarded(String operation, Supplier<T> call) {
+        long permission = circuitBreaker.tryAcquirePermission();
+        if (permission == CircuitBreaker.NO_PERMISSION) {
+            circuitOpenCounter.increment();
+            throw new ExternalServiceException("gemini", operation, 503,
+                    "Gemini no está disponible ahora mismo (circuito abierto).");
+        }
+        if (!bulkhead.tryAcquire()) {
+            circuitBreaker.onIgnored(permission);
+            bulkheadFullCounter.increment();
+            throw new ExternalServiceException("gemini", operation, 503,
+                    "Demasiadas llamadas simultáneas a Gemini.");
+        }
+        try {
+            T result = call.get();
+            circuitBreaker.onSuccess(permission);
+            return result;
+        } catch (ExternalServiceException e) {
+            int status = e.getStatus() == null ? 502 : e.getStatus();
+            if (status >= 500 || status == 429) {
+                circuitBreaker.onFailure(permission);
+            } else {
+                circuitBreaker.onSuccess(permission);
+            }
+            throw e;
+        } catch (RuntimeException | Error e) {
+            circuitBreaker.onIgnored(permission);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private void recordSavedCall() {
+        savedCallsCounter.increment();
+        savedCostCounter.increment(costPerCall);
+    }
+
+    /**
+     * Clave de caché del prompt: sin distinguir mayúsculas/minúsculas, en forma Unicode NFC (una
+     * tilde escrita de dos formas da la misma clave) y como hash SHA-256, para no guardar el
+     * texto del prompt en memoria dos veces.
+     */
+    static String cacheKey(String prompt) {
+        String normalized = Normalizer.normalize(prompt, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
 
-        } catch (HttpClientErrorException e) {
-            throw new ExternalServiceException(
+    /**
+     * Recorta y colapsa los espacios de los datos del usuario ("Ana  García " = "Ana García").
+     */
+    private static String normalize(String value) {
+        return value == null ? "" : value.strip().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Traduce los errores de {@code RestTemplate} a {@link ExternalServiceException} con el código
+     * HTTP que se mostrará: el de Gemini en los 4xx/5xx, 503 si falló la red o un timeout y 502 si
+     * la respuesta no se pudo procesar.
+     */
+    private ExternalServiceException toExternalServiceException(String operation, Exception e) {
+        if (e instanceof HttpClientErrorException ex) {
+            return new ExternalServiceException(
                     "gemini",
-                    "generateContent",
-                    e.getStatusCode().value(),
-                    "Error del cliente al llamar a Gemini: " + e.getStatusCode(),
+                    operation,
+                    ex.getStatusCode().value(),
+                    "Error del cliente al llamar a Gemini: " + ex.getStatusCode(),
                     e
             );
-        } catch (HttpServerErrorException e) {
-            throw new ExternalServiceException(
+        }
+        if (e instanceof HttpServerErrorException ex) {
+            return new ExternalServiceException(
                     "gemini",
-                    "generateContent",
-                    e.getStatusCode().value(),
-                    "Error del servidor de Gemini: " + e.getStatusCode(),
+                    operation,
+                    ex.getStatusCode().value(),
+                    "Error del servidor de Gemini: " + ex.getStatusCode(),
                     e
             );
-        } catch (ResourceAccessException e) {
-            throw new ExternalServiceException(
+        }
+        // JSON no válido: RestTemplate envuelve en ResourceAccessException cualquier IOException
+        // del extractor, también la de Jackson al leer un evento SSE, así que se mira antes que la red
+        if (hasCause(e, JacksonException.class)) {
+            return new ExternalServiceException(
                     "gemini",
-                    "generateContent",
-                    503,
-                    "No se pudo conectar con Gemini (timeout/red).",
+                    operation,
+                    502,
+                    "Gemini devolvió una respuesta que no se pudo interpretar.",
                     e
             );
-        } catch (Exception e) {
-            throw new ExternalServiceException(
+        }
+        // ResourceAccessException, o la conexión se cortó leyendo el cuerpo (p.ej. timeout total)
+        if (e instanceof RestClientException && hasCause(e, IOException.class)) {
+            return new ExternalServiceException(
                     "gemini",
-                    "generateContent",
-                    502,
-                    "Error inesperado procesando la respuesta de Gemini.",
+                    operation,
+                    503,
+                    "No se pudo conectar con Gemini (timeout/red).",
                     e
             );
         }
+        return new ExternalServiceException(
+                "gemini",
+                operation,
+                502,
+                "Error inesperado procesando la respuesta de Gemini.",
+                e
+        );
+    }
+
+    /**
+     * Indica si {@code e} o alguna de sus causas es del tipo indicado.
+     */
+    private static boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) return true;
+        }
+        return false;
     }
 
     /**
@@ -149,7 +442,7 @@ public class GeminiServiceImpl implements GeminiService {
         Object textObj = firstPart.get("text");
         if (!(textObj instanceof String text)) return Optional.empty();
 
-        return Optional.of(text.trim());
+        return Optional.of(text);
     }
 
     /**
@@ -164,11 +457,13 @@ public class GeminiServiceImpl implements GeminiService {
      * @throws org.springframework.web.client.ResourceAccessException   si ocurre problema de conexión.
      */
     private Map<String, Object> postGenerateContent(Map<String, Object> body) {
+        // Se pasa la plantilla sin expandir: es la que etiqueta la métrica http.client.requests,
+        // así que la API key no acaba en las métricas
         String url = UriComponentsBuilder
-                .fromHttpUrl(baseUrl)
+                .fromUriString(baseUrl)
                 .path("/models/{model}:generateContent")
-                .queryParam("key", apiKey)
-                .buildAndExpand(model)
+                .query("key={key}")
+                .build()
                 .toUriString();
 
         HttpHeaders headers = new HttpHeaders();
@@ -178,12 +473,67 @@ public class GeminiServiceImpl implements GeminiService {
                 url,
                 HttpMethod.POST,
                 new HttpEntity<>(body, headers),
-                Map.class
+                Map.class,
+                model,
+                apiKey
         );
 
         return response.getBody();
     }
 
+    /**
+     * Realiza la petición HTTP POST al endpoint {@code streamGenerateContent} en formato SSE y
+     * entrega el texto de cada evento según se va leyendo la respuesta.
+     *
+     * @param body    Cuerpo de la petición en formato JSON serializable.
+     * @param onChunk Receptor de cada fragmento de texto.
+     * @return {@code true} si se recibió algún fragmento con texto.
+     */
+    private boolean postStreamGenerateContent(Map<String, Object> body, Consumer<String> onChunk) {
+        String url = UriComponentsBuilder
+                .fromUriString(baseUrl)
+                .path("/models/{model}:streamGenerateContent")
+                .query("alt=sse&key={key}")
+                .build()
+                .toUriString();
+
+        Boolean anyText = restTemplate.execute(
+                url,
+                HttpMethod.POST,
+                request -> {
+                    request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    request.getHeaders().setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+                    objectMapper.writeValue(request.getBody(), body);
+                },
+                response -> {
+                    boolean received = false;
+                    InputStream stream = response.getBody();
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.startsWith("data:")) continue;
+                        Map<String, Object> event = objectMapper.readValue(
+                                line.substring(5).trim(), new TypeReference<Map<String, Object>>() {});
+                        Optional<String> text = extractText(event);
+                        if (text.isEmpty() || text.get().isEmpty()) continue;
+                        try {
+                            onChunk.accept(received ? text.get() : text.get().stripLeading());
+                        } catch (RuntimeException e) {
+                            // El receptor ya no quiere más texto (p.ej. el navegador se desconectó): se corta
+                            // la conexión, porque al cerrar la respuesta se leería el resto de la generación
+                            if (stream instanceof EofSensorInputStream eofSensor) eofSensor.abort();
+                            throw e;
+                        }
+                        received = true;
+                    }
+                    return received;
+                },
+                model,
+                apiKey
+        );
+        return Boolean.TRUE.equals(anyText);
+    }
+
     /**
      * Construye el cuerpo de la petición en el formato requerido por la API de Gemini.
      *
@@ -0,0 +1,68 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Cubetas de tokens en memoria del nodo.
+ * <p>
+ * Cada cubeta es un estado inmutable (tokens, instante del último relleno) tras un
+ * {@link AtomicReference}: consumir es un bucle de compare-and-set, sin bloqueos. Las cubetas
+ * viven en una caché Caffeine acotada ({@code app.rate-limit.memory.max-keys}) que expulsa las
+ * que no se usan durante {@code app.rate-limit.memory.idle-expiry}; una cubeta olvidada tras
+ * rellenarse entera equivale a una nueva, así que basta con que ese plazo supere el mayor
+ * periodo de relleno configurado.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.backend", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRateLimitBackend implements RateLimitBackend {
+
+    private final Cache<String, AtomicReference<BucketState>> buckets;
+    private final LongSupplier clock;
+
+    @Autowired
+    public InMemoryRateLimitBackend(@Value("${app.rate-limit.memory.max-keys:100000}") long maxKeys,
+                                    @Value("${app.rate-limit.memory.idle-expiry:PT30M}") Duration idleExpiry) {
+        this(maxKeys, idleExpiry, System::currentTimeMillis);
+    }
+
+    InMemoryRateLimitBackend(long maxKeys, Duration idleExpiry, LongSupplier clock) {
+        this.clock = clock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleExpiry)
+                .build();
+    }
+
+    @Override
+    public long tryConsume(String key, BucketSpec spec) {
+        AtomicReference<BucketState> bucket = buckets.get(key,
+                k -> new AtomicReference<>(new BucketState(spec.capacity(), clock.getAsLong())));
+        double rate = spec.tokensPerMilli();
+        while (true) {
+            BucketState current = bucket.get();
+            long now = clock.getAsLong();
+            double tokens = Math.min(spec.capacity(),
+                    current.tokens() + Math.max(0, now - current.refilledAt()) * rate);
+            if (tokens < 1) {
+                return Math.max(1, (long) Math.ceil((1 - tokens) / rate));
+            }
+            if (bucket.compareAndSet(current, new BucketState(tokens - 1, now))) {
+                return 0;
+            }
+            // Otro hilo ha consumido a la vez: se reintenta con el estado nuevo
+        }
+    }
+
+    private record BucketState(double tokens, long refilledAt) {
+    }
+}
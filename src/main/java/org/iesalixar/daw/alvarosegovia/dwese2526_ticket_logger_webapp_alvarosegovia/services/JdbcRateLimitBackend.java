@@ -0,0 +1,90 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Cubetas de tokens compartidas entre nodos en la tabla {@code rate_limit_buckets}
+ * ({@code app.rate-limit.backend=jdbc}).
+ * <p>
+ * Cada consumo es una transacción corta que bloquea solo la fila de la cubeta
+ * ({@code SELECT ... FOR UPDATE}). Añade una escritura en BD por petición limitada, así que
+ * solo compensa con varios nodos sin sticky sessions; las filas caducadas se purgan por bloques.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.backend", havingValue = "jdbc")
+public class JdbcRateLimitBackend implements RateLimitBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcRateLimitBackend.class);
+
+    // ON DUPLICATE KEY UPDATE bloquea en exclusiva la fila existente desde el principio. Con INSERT IGNORE
+    // quedaría un bloqueo compartido que el FOR UPDATE tiene que ampliar: con consumos concurrentes, deadlock.
+    private static final String ENSURE_SQL =
+            "INSERT INTO rate_limit_buckets (bucket_key, tokens, refilled_at, expires_at) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE bucket_key = bucket_key";
+
+    private static final String LOCK_SQL =
+            "SELECT tokens, refilled_at FROM rate_limit_buckets WHERE bucket_key = ? FOR UPDATE";
+
+    private static final String UPDATE_SQL =
+            "UPDATE rate_limit_buckets SET tokens = ?, refilled_at = ?, expires_at = ? WHERE bucket_key = ?";
+
+    private static final String PURGE_SQL =
+            "DELETE FROM rate_limit_buckets WHERE expires_at < ? ORDER BY expires_at LIMIT 1000";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    public long tryConsume(String key, BucketSpec spec) {
+        Long wait = new TransactionTemplate(transactionManager).execute(status -> {
+            long now = System.currentTimeMillis();
+            // Cuando la cubeta está llena otra vez la fila ya no aporta nada y puede borrarse
+            Timestamp expiresAt = Timestamp.valueOf(LocalDateTime.now().plus(spec.refillPeriod()));
+            jdbcTemplate.update(ENSURE_SQL, key, (double) spec.capacity(), now, expiresAt);
+
+            List<double[]> rows = jdbcTemplate.query(LOCK_SQL,
+                    (rs, rowNum) -> new double[]{rs.getDouble("tokens"), rs.getLong("refilled_at")}, key);
+            double rate = spec.tokensPerMilli();
+            double[] row = rows.get(0);
+            double tokens = Math.min(spec.capacity(), row[0] + Math.max(0, now - (long) row[1]) * rate);
+            if (tokens < 1) {
+                return Math.max(1, (long) Math.ceil((1 - tokens) / rate));
+            }
+            jdbcTemplate.update(UPDATE_SQL, tokens - 1, now, expiresAt, key);
+            return 0L;
+        });
+        return wait == null ? 0 : wait;
+    }
+
+    /**
+     * Borra las cubetas que ya se habrían rellenado por completo.
+     */
+    @Scheduled(fixedDelayString = "${app.rate-limit.jdbc.purge-interval:PT5M}")
+    public void purgeExpired() {
+        try {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(PURGE_SQL, now);
+            } while (deleted == 1000);
+        } catch (Exception e) {
+            logger.warn("Error al purgar rate_limit_buckets: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+public interface LoginAuditService {
+
+    boolean record(String username, boolean success, String method, String ip, String userAgent, String failureReason);
+
+    int flush();
+}
@@ -0,0 +1,125 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro de auditoría de logins (tabla {@code login_audit}) fuera del camino del login.
+ * <p>
+ * Los eventos se encolan en un {@link MpscRingBuffer} acotado y sin bloqueos desde el hilo de la
+ * petición; una tarea programada los vuelca por lotes JDBC. Si la cola se llena (BD lenta o
+ * caída), el evento se descarta y se cuenta en {@code login.audit.dropped}: el login nunca espera
+ * a la auditoría.
+ * </p>
+ */
+@Service
+public class LoginAuditServiceImpl implements LoginAuditService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginAuditServiceImpl.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO login_audit (event_time, username, success, method, ip_address, user_agent, failure_reason) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.login-audit.batch-size:500}")
+    private int batchSize;
+
+    private final MpscRingBuffer<LoginAuditEntry> buffer;
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+
+    public LoginAuditServiceImpl(@Value("${app.login-audit.buffer-capacity:8192}") int capacity,
+                                 MeterRegistry meterRegistry) {
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.droppedCounter = Counter.builder("login.audit.dropped")
+                .description("Eventos de login descartados por cola de auditoría llena")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("login.audit.written")
+                .description("Eventos de login escritos en login_audit")
+                .register(meterRegistry);
+        Gauge.builder("login.audit.pending", buffer, MpscRingBuffer::size)
+                .description("Eventos de login pendientes de escribir")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encola un evento de autenticación sin bloquear.
+     *
+     * @return {@code false} si se ha descartado por cola llena.
+     */
+    @Override
+    public boolean record(String username, boolean success, String method, String ip, String userAgent,
+                          String failureReason) {
+        LoginAuditEntry entry = new LoginAuditEntry(LocalDateTime.now(), truncate(username, 100), success,
+                method, truncate(ip, 45), truncate(userAgent, 255), truncate(failureReason, 100));
+        if (!buffer.offer(entry)) {
+            droppedCounter.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Vuelca la cola a BD en lotes de {@code app.login-audit.batch-size}.
+     * Sincronizado: la cola admite un único consumidor (tarea programada o cierre).
+     *
+     * @return número de eventos escritos.
+     */
+    @Override
+    @Scheduled(fixedDelayString = "${app.login-audit.flush-interval:PT1S}")
+    public synchronized int flush() {
+        int written = 0;
+        List<LoginAuditEntry> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, e) -> {
+                    ps.setTimestamp(1, Timestamp.valueOf(e.eventTime()));
+                    ps.setString(2, e.username());
+                    ps.setBoolean(3, e.success());
+                    ps.setString(4, e.method());
+                    ps.setString(5, e.ip());
+                    ps.setString(6, e.userAgent());
+                    ps.setString(7, e.failureReason());
+                });
+                written += batch.size();
+                writtenCounter.increment(batch.size());
+            } catch (Exception ex) {
+                // Se pierde el lote antes que bloquear la cola indefinidamente
+                logger.error("No se pudo escribir un lote de {} eventos de login: {}", batch.size(), ex.getMessage());
+                droppedCounter.increment(batch.size());
+            }
+            batch.clear();
+        }
+        return written;
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    private static String truncate(String value, int max) {
+        return value == null || value.length() <= max ? value : value.substring(0, max);
+    }
+
+    private record LoginAuditEntry(LocalDateTime eventTime, String username, boolean success, String method,
+                                   String ip, String userAgent, String failureReason) {
+    }
+}
@@ -0,0 +1,17 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import java.util.Locale;
+import java.util.Map;
+
+public interface MailOutboxService {
+
+    long enqueueTemplate(String to,
+                         String subjectKey,
+                         String templateName,
+                         Map<String, Object> variables,
+                         Locale locale);
+
+    int dispatchPending();
+
+    int purgeFinished();
+}
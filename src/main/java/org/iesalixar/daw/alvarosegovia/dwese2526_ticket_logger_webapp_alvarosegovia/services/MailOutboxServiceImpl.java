@@ -0,0 +1,460 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.MailMessageDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bandeja de salida de correo (patrón <i>transactional outbox</i>, tabla {@code mail_outbox}).
+ * <p>
+ * Quien necesita enviar un correo solo inserta una fila en la misma transacción que sus
+ * cambios: si la transacción se revierte, el correo no sale, y la petición no espera al SMTP
+ * ni retiene la conexión a BD mientras tanto. La plantilla se renderiza al entregar.
+ * </p>
+ * <p>
+ * El despachador (tarea programada) reclama lotes con {@code SELECT ... FOR UPDATE SKIP LOCKED}
+ * y los marca {@code SENDING} con un plazo de concesión; así varios hilos o nodos no entregan el
+ * mismo correo y, si uno cae a mitad, sus filas se vuelven a reclamar al vencer el plazo. Tras
+ * cada commit que encola se intenta además entregar solo esa fila, sin recorrer la cola. Los
+ * fallos se reintentan con espera exponencial hasta {@code app.mail.outbox.max-attempts};
+ * después quedan en {@code FAILED}. Cada lote se entrega con {@link MailService#sendTemplates(List)},
+ * por una sola conexión SMTP.
+ * </p>
+ * <p>
+ * Las variables pueden llevar secretos (el enlace de recuperación contiene el token en claro), así
+ * que se vacían en cuanto la fila termina ({@code SENT} o {@code FAILED}), y las filas terminadas
+ * se purgan por bloques pasado {@code app.mail.outbox.retention}. La profundidad de la cola se
+ * muestrea con su propia tarea programada, no en cada entrega.
+ * </p>
+ */
+@Service
+public class MailOutboxServiceImpl implements MailOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailOutboxServiceImpl.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO mail_outbox (recipient, subject_key, template_name, variables_json, locale, " +
+            "status, attempts, created_at, next_attempt_at) VALUES (?, ?, ?, ?, ?, 'PENDING', 0, ?, ?)";
+
+    private static final String CLAIM_COLUMNS =
+            "SELECT id, recipient, subject_key, template_name, variables_json, locale, attempts, created_at " +
+            "FROM mail_outbox ";
+
+    private static final String CLAIM_SQL = CLAIM_COLUMNS +
+            "WHERE status IN ('PENDING', 'SENDING') AND next_attempt_at <= ? " +
+            "ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String CLAIM_BY_ID_SQL = CLAIM_COLUMNS +
+            "WHERE id = ? AND status = 'PENDING' AND next_attempt_at <= ? FOR UPDATE SKIP LOCKED";
+
+    private static final String LEASE_SQL =
+            "UPDATE mail_outbox SET status = 'SENDING', next_attempt_at = ? WHERE id = ?";
+
+    // Al terminar se vacían las variables: ya no hacen falta y pueden contener secretos
+    private static final String SENT_SQL =
+            "UPDATE mail_outbox SET status = 'SENT', attempts = attempts + 1, sent_at = ?, next_attempt_at = ?, " +
+            "last_error = NULL, variables_json = '{}' WHERE id = ?";
+
+    private static final String FAILED_SQL =
+            "UPDATE mail_outbox SET status = 'FAILED', attempts = ?, next_attempt_at = ?, last_error = ?, " +
+            "variables_json = '{}' WHERE id = ?";
+
+    private static final String RETRY_SQL =
+            "UPDATE mail_outbox SET status = 'PENDING', attempts = ?, next_attempt_at = ?, last_error = ? WHERE id = ?";
+
+    // En filas terminadas next_attempt_at es el instante del último intento: rango sobre idx_mail_outbox_status_next
+    private static final String PURGE_SQL =
+            "DELETE FROM mail_outbox WHERE status = ? AND next_attempt_at < ? ORDER BY next_attempt_at LIMIT ?";
+
+    private static final String PURGE_LOCK_NAME = "mail-outbox-purge";
+
+    private static final String DEPTH_SQL =
+            "SELECT COUNT(*) FROM mail_outbox WHERE status IN ('PENDING', 'SENDING')";
+
+    private static final TypeReference<Map<String, Object>> VARIABLES_TYPE = new TypeReference<>() {
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MailService mailService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor taskExecutor;
+
+    @Value("${app.mail.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.backoff-initial:PT30S}")
+    private Duration backoffInitial;
+
+    @Value("${app.mail.outbox.backoff-max:PT1H}")
+    private Duration backoffMax;
+
+    @Value("${app.mail.outbox.lease:PT5M}")
+    private Duration lease;
+
+    @Value("${app.mail.outbox.retention:P7D}")
+    private Duration retention;
+
+    @Value("${app.mail.outbox.purge.chunk-size:500}")
+    private int purgeChunkSize;
+
+    @Value("${app.mail.outbox.purge.lock-at-most:PT30M}")
+    private Duration purgeLockAtMost;
+
+    @Autowired
+    private SchedulerLock schedulerLock;
+
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final Counter sentCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+    private final Counter purgedCounter;
+    private final Timer sendTimer;
+    private final Timer latencyTimer;
+
+    public MailOutboxServiceImpl(MeterRegistry meterRegistry) {
+        Gauge.builder("mail.outbox.depth", queueDepth, AtomicLong::get)
+                .description("Correos pendientes de entregar (último muestreo)")
+                .register(meterRegistry);
+        this.sentCounter = Counter.builder("mail.outbox.sent")
+                .description("Correos entregados al servidor SMTP")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("mail.outbox.retried")
+                .description("Entregas fallidas reprogramadas")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("mail.outbox.failed")
+                .description("Correos descartados tras agotar los reintentos")
+                .register(meterRegistry);
+        this.purgedCounter = Counter.builder("mail.outbox.purged")
+                .description("Filas terminadas (SENT o FAILED) borradas por la purga")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("mail.outbox.send")
+                .description("Tiempo de renderizado y envío SMTP de cada lote")
+                .register(meterRegistry);
+        this.latencyTimer = Timer.builder("mail.outbox.latency")
+                .description("Tiempo desde que se encola un correo hasta que se entrega")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encola un correo basado en plantilla. Participa en la transacción en curso, si la hay.
+     *
+     * @param to           destinatario
+     * @param subjectKey   clave i18n del asunto
+     * @param templateName plantilla Thymeleaf (p.ej. {@code "mail/password-reset"})
+     * @param variables    variables de la plantilla (se guardan como JSON)
+     * @param locale       idioma del destinatario
+     * @return id de la fila creada en {@code mail_outbox}.
+     */
+    @Override
+    public long enqueueTemplate(String to,
+                                String subjectKey,
+                                String templateName,
+                                Map<String, Object> variables,
+                                Locale locale) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(variables == null ? Map.of() : variables);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Variables de correo no serializables", e);
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, to);
+            ps.setString(2, subjectKey);
+            ps.setString(3, templateName);
+            ps.setString(4, json);
+            ps.setString(5, locale.toLanguageTag());
+            ps.setTimestamp(6, now);
+            ps.setTimestamp(7, now);
+            return ps;
+        }, keyHolder);
+        long id = keyHolder.getKey().longValue();
+
+        // Entrega inmediata de esta fila tras el commit; si no llega a ejecutarse, la recoge la tarea programada
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatchInBackground(id);
+                }
+            });
+        } else {
+            dispatchInBackground(id);
+        }
+        return id;
+    }
+
+    /**
+     * Tarea programada ({@code app.mail.outbox.poll-interval}).
+     */
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-interval:PT5S}")
+    public void poll() {
+        try {
+            dispatchPending();
+        } catch (Exception e) {
+            logger.error("Error en el despachador de correo: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Entrega por lotes todos los correos vencidos.
+     *
+     * @return número de correos entregados.
+     */
+    @Override
+    public int dispatchPending() {
+        int delivered = 0;
+        List<OutboxMessage> batch;
+        do {
+            batch = claimBatch();
+            if (!batch.isEmpty()) delivered += deliver(batch);
+        } while (batch.size() == batchSize);
+        return delivered;
+    }
+
+    /**
+     * Entrega un único correo recién encolado, si sigue pendiente y nadie lo ha reclamado ya.
+     *
+     * @param id fila de {@code mail_outbox}.
+     * @return {@code true} si se ha entregado.
+     */
+    boolean dispatchMessage(long id) {
+        List<OutboxMessage> claimed = claim(CLAIM_BY_ID_SQL, id);
+        return !claimed.isEmpty() && deliver(claimed) == 1;
+    }
+
+    /**
+     * Muestrea el número de correos pendientes para el gauge {@code mail.outbox.depth}
+     * ({@code app.mail.outbox.depth-sample-interval}).
+     */
+    @Scheduled(fixedDelayString = "${app.mail.outbox.depth-sample-interval:PT30S}")
+    public void sampleQueueDepth() {
+        try {
+            queueDepth.set(jdbcTemplate.queryForObject(DEPTH_SQL, Long.class));
+        } catch (Exception e) {
+            logger.warn("No se pudo leer la profundidad de la bandeja de correo: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tarea programada ({@code app.mail.outbox.purge.cron}); con varios nodos la ejecuta solo uno.
+     */
+    @Scheduled(cron = "${app.mail.outbox.purge.cron:0 45 * * * *}")
+    public void scheduledPurge() {
+        try {
+            schedulerLock.runExclusively(PURGE_LOCK_NAME, purgeLockAtMost, this::purgeFinished);
+        } catch (Exception e) {
+            logger.error("Error en la purga de la bandeja de correo: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Borra por bloques las filas {@code SENT} y {@code FAILED} cuyo último intento es anterior a
+     * {@code app.mail.outbox.retention}.
+     *
+     * @return número de filas borradas.
+     */
+    @Override
+    public int purgeFinished() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(retention));
+        int total = 0;
+        for (String status : List.of("SENT", "FAILED")) {
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(PURGE_SQL, status, cutoff, purgeChunkSize);
+                total += deleted;
+            } while (deleted == purgeChunkSize);
+        }
+        if (total > 0) {
+            purgedCounter.increment(total);
+            logger.info("Purga de la bandeja de correo: {} filas terminadas borradas", total);
+        }
+        return total;
+    }
+
+    /**
+     * Reclama un lote en una transacción corta: lo bloquea (saltando lo que ya tienen otros
+     * despachadores) y lo marca {@code SENDING} hasta que venza la concesión.
+     */
+    private List<OutboxMessage> claimBatch() {
+        return claim(CLAIM_SQL, null);
+    }
+
+    /**
+     * Reclama las filas de {@code sql}: por vencimiento ({@code id == null}, hasta {@code batchSize})
+     * o una fila concreta.
+     */
+    private List<OutboxMessage> claim(String sql, Long id) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            Object[] args = id == null
+                    ? new Object[]{Timestamp.valueOf(now), batchSize}
+                    : new Object[]{id, Timestamp.valueOf(now)};
+            List<OutboxMessage> claimed = jdbcTemplate.query(sql, (rs, rowNum) -> new OutboxMessage(
+                    rs.getLong("id"),
+                    rs.getString("recipient"),
+                    rs.getString("subject_key"),
+                    rs.getString("template_name"),
+                    rs.getString("variables_json"),
+                    rs.getString("locale"),
+                    rs.getInt("attempts"),
+                    rs.getTimestamp("created_at").toLocalDateTime()
+            ), args);
+
+            if (!claimed.isEmpty()) {
+                Timestamp leaseUntil = Timestamp.valueOf(now.plus(lease));
+                jdbcTemplate.batchUpdate(LEASE_SQL, claimed, claimed.size(), (ps, m) -> {
+                    ps.setTimestamp(1, leaseUntil);
+                    ps.setLong(2, m.id());
+                });
+            }
+            return claimed;
+        });
+    }
+
+    /**
+     * Entrega un lote fuera de cualquier transacción y registra el resultado de cada correo.
+     *
+     * @return número de correos entregados.
+     */
+    private int deliver(List<OutboxMessage> batch) {
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        List<MailMessageDTO> mails = new ArrayList<>(batch.size());
+        List<Integer> positions = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxMessage message = batch.get(i);
+            try {
+                Map<String, Object> variables = objectMapper.readValue(message.variablesJson(), VARIABLES_TYPE);
+                mails.add(new MailMessageDTO(message.recipient(), message.subjectKey(), message.templateName(),
+                        variables, Locale.forLanguageTag(message.locale())));
+                positions.add(i);
+            } catch (Exception e) {
+                failures.put(i, e);
+            }
+        }
+
+        try {
+            sendTimer.record(() -> mailService.sendTemplates(mails))
+                    .forEach((index, e) -> failures.put(positions.get(index), e));
+        } catch (Exception e) {
+            positions.forEach(i -> failures.put(i, e));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int delivered = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxMessage message = batch.get(i);
+            Exception failure = failures.get(i);
+            if (failure == null) {
+                jdbcTemplate.update(SENT_SQL, Timestamp.valueOf(now), Timestamp.valueOf(now), message.id());
+                sentCounter.increment();
+                latencyTimer.record(Duration.between(message.createdAt(), now).toMillis(), TimeUnit.MILLISECONDS);
+                delivered++;
+            } else {
+                recordFailure(message, failure);
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Reprograma el correo con espera exponencial, o lo da por fallido si agotó los intentos.
+     */
+    private void recordFailure(OutboxMessage message, Exception e) {
+        int attempts = message.attempts() + 1;
+        String error = truncate(e.getClass().getSimpleName() + ": " + e.getMessage(), 500);
+        if (attempts >= maxAttempts) {
+            jdbcTemplate.update(FAILED_SQL, attempts, Timestamp.valueOf(LocalDateTime.now()), error, message.id());
+            failedCounter.increment();
+            logger.error("Correo {} a {} descartado tras {} intentos: {}", message.id(), message.recipient(), attempts, error);
+        } else {
+            Duration delay = backoff(attempts, backoffInitial, backoffMax);
+            jdbcTemplate.update(RETRY_SQL, attempts,
+                    Timestamp.valueOf(LocalDateTime.now().plus(delay)), error, message.id());
+            retryCounter.increment();
+            logger.warn("Fallo al entregar el correo {} (intento {}), reintento en {}: {}", message.id(), attempts, delay, error);
+        }
+    }
+
+    private void dispatchInBackground(long id) {
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    dispatchMessage(id);
+                } catch (Exception e) {
+                    logger.warn("Error al entregar el correo {}; lo reintentará el despachador: {}", id, e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            logger.debug("No se pudo lanzar la entrega del correo {}: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Espera antes del reintento {@code attempt} (1, 2, 3...): {@code initial * 2^(attempt-1)},
+     * con {@code max} como tope.
+     */
+    static Duration backoff(int attempt, Duration initial, Duration max) {
+        int exponent = Math.min(Math.max(attempt - 1, 0), 30);
+        Duration delay = initial.multipliedBy(1L << exponent);
+        return delay.compareTo(max) > 0 ? max : delay;
+    }
+
+    private static String truncate(String value, int max) {
+        return value == null || value.length() <= max ? value : value.substring(0, max);
+    }
+
+    private record OutboxMessage(long id, String recipient, String subjectKey, String templateName,
+                                 String variablesJson, String locale, int attempts, LocalDateTime createdAt) {
+    }
+}
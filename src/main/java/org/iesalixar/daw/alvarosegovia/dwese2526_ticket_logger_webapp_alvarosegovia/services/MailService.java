@@ -1,5 +1,8 @@
 package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
 
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.MailMessageDTO;
+
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -11,5 +14,6 @@ public interface MailService {
                       String templateName,
                       Map<String, Object> variables,
                       Locale locale);
+    Map<Integer, Exception> sendTemplates(List<MailMessageDTO> mails);
 }
 
@@ -2,16 +2,17 @@ package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvaroseg
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.MailMessageDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.MessageSource;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
-import org.thymeleaf.context.Context;
-import org.thymeleaf.spring6.SpringTemplateEngine;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -19,8 +20,13 @@ import java.util.Map;
  * Servicio genérico de envío de correos de la aplicación.
  * <p>
  * Permite enviar emails en texto plano, HTML o basados en plantillas Thymeleaf.
- * Soporta internacionalización (i18n) mediante {@link MessageSource} para el asunto
- * y usa SMTP a través de {@link JavaMailSender}.
+ * Soporta internacionalización (i18n) del asunto y del cuerpo; el renderizado de plantillas
+ * lo hace {@link MailTemplateRenderer}, que cachea las partes fijas por idioma.
+ * Usa SMTP a través de {@link JavaMailSender}.
+ * </p>
+ * <p>
+ * Los mensajes se entregan por {@link SmtpTransportPool}: las conexiones SMTP autenticadas se
+ * reutilizan entre envíos y los lotes ({@link #sendTemplates(List)}) van por una sola conexión.
  * </p>
  */
 @Service
@@ -35,17 +41,17 @@ public class MailServiceImpl implements MailService {
 
 
     /**
-     * Fuente de mensajes para i18n (asuntos y textos por claves).
+     * Pool de conexiones SMTP abiertas por el que salen todos los mensajes.
      */
     @Autowired
-    private MessageSource messageSource;
+    private SmtpTransportPool transportPool;
 
 
     /**
-     * Motor de plantillas Thymeleaf para renderizar HTML desde templates.
+     * Renderizado de plantillas Thymeleaf con caché por plantilla e idioma.
      */
     @Autowired
-    private SpringTemplateEngine templateEngine;
+    private MailTemplateRenderer templateRenderer;
 
 
     /**
@@ -104,17 +110,49 @@ public class MailServiceImpl implements MailService {
                              Locale locale) {
 
 
-        String subject = messageSource.getMessage(subjectKey, null, locale);
+        MimeMessage msg = buildTemplateMessage(new MailMessageDTO(to, subjectKey, templateName, variables, locale));
+        deliver(msg);
+    }
+
 
+    /**
+     * Envía varios emails de plantilla por una única conexión SMTP.
+     * <p>
+     * Un fallo en un mensaje (renderizado, destinatario rechazado...) no impide enviar el resto.
+     * </p>
+     *
+     * @param mails correos a enviar
+     * @return fallos por posición en {@code mails}; vacío si se enviaron todos
+     */
+    @Override
+    public Map<Integer, Exception> sendTemplates(List<MailMessageDTO> mails) {
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        List<MimeMessage> messages = new ArrayList<>(mails.size());
+        List<Integer> positions = new ArrayList<>(mails.size());
+
+        for (int i = 0; i < mails.size(); i++) {
+            try {
+                messages.add(buildTemplateMessage(mails.get(i)));
+                positions.add(i);
+            } catch (Exception e) {
+                failures.put(i, e);
+            }
+        }
 
-        Context ctx = new Context(locale);
-        ctx.setVariables(variables);
-        ctx.setVariable("subject", subject);
-        ctx.setVariable("lang", locale.getLanguage());
+        transportPool.sendAll(messages).forEach((index, e) -> failures.put(positions.get(index), e));
+        return failures;
+    }
 
 
-        String html = templateEngine.process(templateName, ctx);
-        send(to, subject, html, true);
+    /**
+     * Renderiza la plantilla y construye el mensaje (asunto por i18n y variables base
+     * {@code subject} y {@code lang}).
+     */
+    private MimeMessage buildTemplateMessage(MailMessageDTO mail) {
+        Locale locale = mail.getLocale();
+        String subject = templateRenderer.renderSubject(mail.getSubjectKey(), locale);
+        String html = templateRenderer.renderBody(mail.getTemplateName(), subject, mail.getVariables(), locale);
+        return buildMessage(mail.getTo(), subject, html, true);
     }
 
 
@@ -128,6 +166,16 @@ public class MailServiceImpl implements MailService {
      * @throws IllegalStateException si falla la construcción o el envío por SMTP
      */
     private void send(String to, String subject, String body, boolean isHtml) {
+        deliver(buildMessage(to, subject, body, isHtml));
+    }
+
+
+    /**
+     * Construye un {@link MimeMessage} con el remitente por defecto.
+     *
+     * @throws IllegalStateException si falla la construcción del mensaje
+     */
+    private MimeMessage buildMessage(String to, String subject, String body, boolean isHtml) {
         try {
             MimeMessage msg = mailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(msg, StandardCharsets.UTF_8.name());
@@ -141,14 +189,25 @@ public class MailServiceImpl implements MailService {
             helper.setTo(to);
             helper.setSubject(subject);
             helper.setText(body, isHtml);
-
-
-            mailSender.send(msg);
+            return msg;
 
 
         } catch (MessagingException e) {
             throw new IllegalStateException("Email could not be sent.", e);
         }
     }
+
+
+    /**
+     * Envía un único mensaje por el pool de conexiones.
+     *
+     * @throws IllegalStateException si falla el envío por SMTP
+     */
+    private void deliver(MimeMessage msg) {
+        Exception failure = transportPool.sendAll(List.of(msg)).get(0);
+        if (failure != null) {
+            throw new IllegalStateException("Email could not be sent.", failure);
+        }
+    }
 }
 
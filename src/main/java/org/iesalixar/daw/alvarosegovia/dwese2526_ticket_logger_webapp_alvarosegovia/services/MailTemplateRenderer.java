@@ -0,0 +1,195 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renderizado de los correos de plantilla con caché por plantilla e idioma.
+ * <p>
+ * Thymeleaf ya cachea las plantillas parseadas, pero cada envío vuelve a evaluar todas las
+ * expresiones y a resolver los mensajes i18n (asunto, título, textos fijos...). Aquí la
+ * plantilla se renderiza una sola vez por (plantilla, locale, nombres de variables) con
+ * marcadores en lugar de las variables del destinatario; el HTML resultante se guarda troceado
+ * y cada envío solo concatena los trozos fijos con los valores escapados. El asunto también se
+ * cachea por (clave, locale).
+ * </p>
+ * <p>
+ * Contrato para las plantillas de correo: las variables del destinatario solo se pintan como
+ * texto ({@code th:text}, {@code th:href}, {@code th:utext} o argumentos de mensajes); no pueden
+ * usarse en condiciones ni bucles. Los valores se sustituyen con {@code String.valueOf}, con el
+ * mismo escape HTML que habría aplicado Thymeleaf en esa posición. Si al compilar la plantilla
+ * no se cumple (dos renderizados con marcadores distintos no coinciden), se renderiza completa
+ * en cada envío.
+ * </p>
+ */
+@Component
+public class MailTemplateRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailTemplateRenderer.class);
+
+    // Sufijo que Thymeleaf escapa en los contextos con escape (th:text, atributos)
+    private static final String PROBE = "<&>";
+    private static final String ESCAPED_PROBE = "&lt;&amp;&gt;";
+
+    private final SpringTemplateEngine templateEngine;
+    private final MessageSource messageSource;
+    private final boolean enabled;
+
+    private final Cache<String, String> subjects;
+    private final Cache<String, CompiledTemplate> templates;
+
+    @Autowired
+    public MailTemplateRenderer(SpringTemplateEngine templateEngine,
+                                MessageSource messageSource,
+                                @Value("${app.mail.template-cache.enabled:true}") boolean enabled,
+                                @Value("${app.mail.template-cache.max-size:200}") long maxSize) {
+        this.templateEngine = templateEngine;
+        this.messageSource = messageSource;
+        this.enabled = enabled;
+        this.subjects = Caffeine.newBuilder().maximumSize(maxSize).build();
+        this.templates = Caffeine.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Asunto traducido (cacheado por clave e idioma).
+     */
+    public String renderSubject(String subjectKey, Locale locale) {
+        if (!enabled) return messageSource.getMessage(subjectKey, null, locale);
+        return subjects.get(subjectKey + '|' + locale.toLanguageTag(),
+                k -> messageSource.getMessage(subjectKey, null, locale));
+    }
+
+    /**
+     * Cuerpo HTML de la plantilla para un destinatario. Añade las variables base
+     * {@code subject} y {@code lang}.
+     */
+    public String renderBody(String templateName, String subject, Map<String, Object> variables, Locale locale) {
+        Map<String, Object> vars = variables == null ? Map.of() : variables;
+        if (!enabled) return renderFull(templateName, subject, vars, locale);
+
+        String key = templateName + '|' + locale.toLanguageTag() + '|' + subject + '|' + new TreeSet<>(vars.keySet());
+        CompiledTemplate compiled = templates.get(key, k -> compile(templateName, subject, vars, locale));
+        return compiled == null || compiled.literals().isEmpty()
+                ? renderFull(templateName, subject, vars, locale)
+                : compiled.render(vars);
+    }
+
+    /**
+     * Vacía las cachés (p.ej. si cambian los ficheros de mensajes o las plantillas).
+     */
+    public void clear() {
+        subjects.invalidateAll();
+        templates.invalidateAll();
+    }
+
+    private String renderFull(String templateName, String subject, Map<String, Object> vars, Locale locale) {
+        Context ctx = new Context(locale);
+        ctx.setVariables(vars);
+        ctx.setVariable("subject", subject);
+        ctx.setVariable("lang", locale.getLanguage());
+        return templateEngine.process(templateName, ctx);
+    }
+
+    /**
+     * Renderiza con marcadores y trocea el resultado. Devuelve una plantilla vacía (se
+     * renderiza completa en cada envío) si la salida depende de los valores.
+     */
+    private CompiledTemplate compile(String templateName, String subject, Map<String, Object> vars, Locale locale) {
+        String nonce = UUID.randomUUID().toString().replace("-", "");
+        Map<String, Object> markers = new HashMap<>();
+        vars.keySet().forEach(name -> markers.put(name, marker(nonce, name)));
+        String html = renderFull(templateName, subject, markers, locale);
+
+        // Comprobación: con otros marcadores debe salir exactamente lo mismo
+        String otherNonce = UUID.randomUUID().toString().replace("-", "");
+        Map<String, Object> otherMarkers = new HashMap<>();
+        vars.keySet().forEach(name -> otherMarkers.put(name, marker(otherNonce, name)));
+        String other = renderFull(templateName, subject, otherMarkers, locale);
+        if (!html.replace(nonce, otherNonce).equals(other)) {
+            logger.warn("La plantilla {} usa las variables fuera de texto; se renderizará completa en cada envío", templateName);
+            return new CompiledTemplate(List.of(), List.of(), new boolean[0]);
+        }
+
+        Pattern pattern = Pattern.compile("@@" + nonce + ":([A-Za-z0-9_]+)(" + Pattern.quote(PROBE) + "|"
+                + Pattern.quote(ESCAPED_PROBE) + ")@@");
+        Matcher matcher = pattern.matcher(html);
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Boolean> escapes = new ArrayList<>();
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(html.substring(last, matcher.start()));
+            names.add(matcher.group(1));
+            escapes.add(ESCAPED_PROBE.equals(matcher.group(2)));
+            last = matcher.end();
+        }
+        literals.add(html.substring(last));
+
+        if (html.indexOf(nonce, last) >= 0) {
+            // Marcador transformado (p.ej. recortado o codificado): no se puede sustituir con seguridad
+            logger.warn("La plantilla {} transforma las variables; se renderizará completa en cada envío", templateName);
+            return new CompiledTemplate(List.of(), List.of(), new boolean[0]);
+        }
+
+        boolean[] escape = new boolean[escapes.size()];
+        for (int i = 0; i < escape.length; i++) escape[i] = escapes.get(i);
+        logger.debug("Plantilla de correo {} ({}) compilada en {} trozos", templateName, locale, literals.size());
+        return new CompiledTemplate(literals, names, escape);
+    }
+
+    private static String marker(String nonce, String name) {
+        return "@@" + nonce + ":" + name + PROBE + "@@";
+    }
+
+    /**
+     * HTML troceado: {@code literals[0] + var[0] + literals[1] + ... + literals[n]}.
+     */
+    private record CompiledTemplate(List<String> literals, List<String> names, boolean[] escape) {
+
+        String render(Map<String, Object> vars) {
+            StringBuilder sb = new StringBuilder(literals.stream().mapToInt(String::length).sum() + 64 * names.size());
+            for (int i = 0; i < names.size(); i++) {
+                sb.append(literals.get(i));
+                Object raw = vars.get(names.get(i));
+                String value = raw == null ? "" : String.valueOf(raw);
+                if (escape[i]) appendEscaped(sb, value);
+                else sb.append(value);
+            }
+            sb.append(literals.get(literals.size() - 1));
+            return sb.toString();
+        }
+
+        // Mismo escape que Thymeleaf en modo HTML para texto y atributos
+        private static void appendEscaped(StringBuilder sb, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '&' -> sb.append("&amp;");
+                    case '<' -> sb.append("&lt;");
+                    case '>' -> sb.append("&gt;");
+                    case '"' -> sb.append("&quot;");
+                    case '\'' -> sb.append("&#39;");
+                    default -> sb.append(c);
+                }
+            }
+        }
+    }
+}
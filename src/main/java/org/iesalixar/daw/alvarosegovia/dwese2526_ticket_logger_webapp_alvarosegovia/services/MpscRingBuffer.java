@@ -0,0 +1,113 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola circular acotada sin bloqueos para varios productores y un único consumidor (MPSC).
+ * <p>
+ * Cada celda lleva un número de secuencia (esquema de D. Vyukov): un productor reserva su
+ * posición con un CAS sobre {@code tail}, escribe el elemento y publica la celda actualizando
+ * su secuencia. Si la cola está llena {@link #offer(Object)} devuelve {@code false} de
+ * inmediato en lugar de esperar: quien produce decide si descarta el elemento.
+ * </p>
+ * <p>
+ * Los métodos de consumo ({@link #poll()} y {@link #drainTo(List, int)}) solo pueden
+ * llamarse desde un hilo a la vez.
+ * </p>
+ */
+final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    // Solo lo escribe el consumidor; volatile para que size() sea legible desde otros hilos
+    private volatile long head;
+
+    /**
+     * @param requestedCapacity capacidad mínima; se redondea a la siguiente potencia de dos.
+     */
+    MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("La capacidad debe ser positiva");
+        }
+        int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        if (requestedCapacity == 1) capacity = 1;
+        this.mask = capacity - 1;
+        this.elements = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Inserta un elemento sin bloquear.
+     *
+     * @return {@code false} si la cola está llena.
+     */
+    boolean offer(E element) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+            } else if (diff < 0) {
+                return false; // la celda aún no la ha liberado el consumidor: llena
+            }
+            // diff > 0: otro productor se adelantó, reintentar con el nuevo tail
+        }
+        elements.lazySet(index, element);
+        sequences.set(index, position + 1); // publica la celda al consumidor
+        return true;
+    }
+
+    /**
+     * Extrae el siguiente elemento publicado, o {@code null} si no hay ninguno.
+     */
+    E poll() {
+        long position = head;
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null; // vacía (o el productor aún no ha terminado de publicar)
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, position + mask + 1); // libera la celda para la siguiente vuelta
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Extrae hasta {@code max} elementos y los añade a {@code target}.
+     *
+     * @return número de elementos extraídos.
+     */
+    int drainTo(List<? super E> target, int max) {
+        int drained = 0;
+        E element;
+        while (drained < max && (element = poll()) != null) {
+            target.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Número aproximado de elementos pendientes.
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head, mask + 1L));
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,227 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.MailMessageDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Campaña de recordatorios de caducidad de contraseña.
+ * <p>
+ * Recorre las cuentas activas cuyo {@code password_expires_at} cae en los próximos
+ * {@code app.password-expiry.reminders.days-ahead} días con un cursor keyset
+ * ({@code (password_expires_at, id) > último}) sobre {@code idx_users_password_expires_at}, sin
+ * {@code OFFSET} ni cargar todos los usuarios en memoria. Cada página se envía con
+ * {@link MailService#sendTemplates} (una conexión SMTP por lote) y se espacia para no superar
+ * {@code app.password-expiry.reminders.rate-per-second}.
+ * </p>
+ * <p>
+ * Cada envío correcto se registra en {@code password_expiry_reminders} (usuario + fecha de caducidad),
+ * y la consulta excluye esas filas: si el proceso se interrumpe, la siguiente ejecución continúa con
+ * los pendientes y como mucho repite el lote que estaba en curso. Un usuario que cambia la contraseña
+ * tiene una caducidad nueva y recibirá el recordatorio del siguiente ciclo. Con varios nodos, cada
+ * ejecución la hace solo uno ({@link SchedulerLock}).
+ * </p>
+ */
+@Service
+public class PasswordExpiryReminderServiceImpl implements PasswordExpiryReminderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordExpiryReminderServiceImpl.class);
+
+    private static final String LOCK_NAME = "password-expiry-reminders";
+
+    private static final int CLEANUP_CHUNK = 1000;
+
+    private static final String NEXT_PAGE_SQL =
+            "SELECT u.id, u.email, u.password_expires_at, p.locale " +
+            "FROM users u LEFT JOIN user_profiles p ON p.user_id = u.id " +
+            "WHERE u.active = TRUE AND u.must_change_password = FALSE " +
+            "AND u.password_expires_at < ? " +
+            "AND (u.password_expires_at > ? OR (u.password_expires_at = ? AND u.id > ?)) " +
+            "AND NOT EXISTS (SELECT 1 FROM password_expiry_reminders r " +
+            "                WHERE r.user_id = u.id AND r.password_expires_at = u.password_expires_at) " +
+            "ORDER BY u.password_expires_at, u.id LIMIT ?";
+
+    private static final String RECORD_SENT_SQL =
+            "INSERT IGNORE INTO password_expiry_reminders (user_id, password_expires_at, sent_at) VALUES (?, ?, ?)";
+
+    // Recordatorios de ciclos ya vencidos: no vuelven a consultarse
+    private static final String DELETE_PAST_SQL =
+            "DELETE FROM password_expiry_reminders WHERE password_expires_at < ? LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MailService mailService;
+
+    @Autowired
+    private AppUrlService appUrlService;
+
+    @Autowired
+    private SchedulerLock schedulerLock;
+
+    @Value("${app.password-expiry.reminders.days-ahead:7}")
+    private int daysAhead;
+
+    @Value("${app.password-expiry.reminders.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.password-expiry.reminders.rate-per-second:20}")
+    private double ratePerSecond;
+
+    @Value("${app.password-expiry.reminders.lock-at-most:PT2H}")
+    private Duration lockAtMost;
+
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter skippedCounter;
+    private final Timer campaignTimer;
+
+    public PasswordExpiryReminderServiceImpl(MeterRegistry meterRegistry) {
+        this.sentCounter = Counter.builder("users.password_expiry.reminders.sent")
+                .description("Recordatorios de caducidad de contraseña enviados")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("users.password_expiry.reminders.failed")
+                .description("Recordatorios que el SMTP rechazó (se reintentan en la siguiente ejecución)")
+                .register(meterRegistry);
+        this.skippedCounter = Counter.builder("users.password_expiry.reminders.skipped")
+                .description("Ejecuciones omitidas porque la campaña estaba en curso en otro nodo")
+                .register(meterRegistry);
+        this.campaignTimer = Timer.builder("users.password_expiry.reminders.campaign")
+                .description("Duración de cada campaña de recordatorios")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tarea programada ({@code app.password-expiry.reminders.cron}).
+     */
+    @Scheduled(cron = "${app.password-expiry.reminders.cron:0 0 9 * * *}")
+    public void scheduledCampaign() {
+        try {
+            if (!schedulerLock.runExclusively(LOCK_NAME, lockAtMost, this::sendReminders)) {
+                skippedCounter.increment();
+            }
+        } catch (Exception e) {
+            logger.error("Error en la campaña de recordatorios de caducidad: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Envía el recordatorio a las cuentas que caducan en los próximos días y aún no lo han recibido.
+     *
+     * @return número de recordatorios enviados.
+     */
+    @Override
+    public int sendReminders() {
+        LocalDateTime now = LocalDateTime.now();
+        int sent = sendReminders(now, now.plusDays(daysAhead));
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(DELETE_PAST_SQL, Timestamp.valueOf(now), CLEANUP_CHUNK);
+        } while (deleted == CLEANUP_CHUNK);
+        return sent;
+    }
+
+    /**
+     * Recorre por páginas las caducidades de {@code [from, until)}.
+     */
+    int sendReminders(LocalDateTime from, LocalDateTime until) {
+        return campaignTimer.record(() -> {
+            Timestamp untilTs = Timestamp.valueOf(until);
+            Timestamp cursorExpiresAt = Timestamp.valueOf(from);
+            long cursorId = 0;
+            int total = 0;
+            List<Reminder> page;
+            do {
+                long pageStart = System.nanoTime();
+                page = jdbcTemplate.query(NEXT_PAGE_SQL,
+                        (rs, i) -> new Reminder(rs.getLong("id"), rs.getString("email"),
+                                rs.getTimestamp("password_expires_at"), rs.getString("locale")),
+                        untilTs, cursorExpiresAt, cursorExpiresAt, cursorId, batchSize);
+                if (page.isEmpty()) break;
+
+                total += sendPage(page);
+
+                Reminder last = page.get(page.size() - 1);
+                cursorExpiresAt = last.expiresAt();
+                cursorId = last.userId();
+                throttle(pageStart, page.size());
+            } while (page.size() == batchSize && !Thread.currentThread().isInterrupted());
+
+            if (total > 0) {
+                logger.info("Campaña de caducidad: {} recordatorios enviados", total);
+            }
+            return total;
+        });
+    }
+
+    /**
+     * Envía una página y registra los envíos correctos; los fallidos quedan pendientes.
+     */
+    private int sendPage(List<Reminder> page) {
+        String changeUrl = appUrlService.buildUrl("/auth/forgot-password", Map.of());
+        List<MailMessageDTO> mails = new ArrayList<>(page.size());
+        for (Reminder r : page) {
+            Locale locale = UserLocaleServiceImpl.parseLocale(r.locale()).orElse(UserLocaleServiceImpl.DEFAULT_LOCALE);
+            String expiresAt = DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG).withLocale(locale)
+                    .format(r.expiresAt().toLocalDateTime());
+            mails.add(new MailMessageDTO(r.email(), "mail.passwordexpiry.subject", "mail/password-expiry-reminder",
+                    Map.of("expiresAt", expiresAt, "changeUrl", changeUrl), locale));
+        }
+
+        Map<Integer, Exception> failures = mailService.sendTemplates(mails);
+
+        Timestamp sentAt = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> delivered = new ArrayList<>(page.size());
+        for (int i = 0; i < page.size(); i++) {
+            if (failures.containsKey(i)) {
+                logger.warn("No se pudo enviar el recordatorio de caducidad a {}: {}",
+                        page.get(i).email(), failures.get(i).getMessage());
+                continue;
+            }
+            delivered.add(new Object[]{page.get(i).userId(), page.get(i).expiresAt(), sentAt});
+        }
+        if (!delivered.isEmpty()) {
+            jdbcTemplate.batchUpdate(RECORD_SENT_SQL, delivered);
+        }
+        sentCounter.increment(delivered.size());
+        failedCounter.increment(failures.size());
+        return delivered.size();
+    }
+
+    /**
+     * Espera lo necesario para que la página no supere {@code rate-per-second}.
+     */
+    private void throttle(long pageStartNanos, int sentInPage) {
+        if (ratePerSecond <= 0) return;
+        long minNanos = (long) (sentInPage / ratePerSecond * 1_000_000_000L);
+        long remaining = minNanos - (System.nanoTime() - pageStartNanos);
+        if (remaining <= 0) return;
+        try {
+            Thread.sleep(Duration.ofNanos(remaining));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Reminder(long userId, String email, Timestamp expiresAt, String locale) {
+    }
+}
@@ -0,0 +1,117 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Barrido periódico de contraseñas caducadas.
+ * <p>
+ * Marca {@code must_change_password = TRUE} en las cuentas cuyo {@code password_expires_at}
+ * ya ha pasado. El {@code UPDATE} se lanza por bloques ({@code ORDER BY ... LIMIT n}) sobre el
+ * índice {@code idx_users_must_change_expires}, cada bloque en su propia transacción
+ * (autocommit), para no mantener bloqueos largos sobre {@code users}.
+ * </p>
+ * <p>
+ * El login no vuelve a comprobar la fecha: {@link CustomUserDetailsService} traduce el flag a
+ * {@code credentialsExpired}, que llega también a través de {@link CaffeineUserCache}.
+ * </p>
+ */
+@Service
+public class PasswordExpiryServiceImpl implements PasswordExpiryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordExpiryServiceImpl.class);
+
+    private static final String FLAG_EXPIRED_SQL =
+            "UPDATE users SET must_change_password = TRUE " +
+            "WHERE must_change_password = FALSE AND password_expires_at < ? " +
+            "ORDER BY password_expires_at LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CaffeineUserCache userCache;
+
+    @Value("${app.password-expiry.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.password-expiry.pause:PT0.1S}")
+    private Duration pause;
+
+    private final Counter flaggedCounter;
+    private final Counter chunkCounter;
+    private final Timer sweepTimer;
+
+    public PasswordExpiryServiceImpl(MeterRegistry meterRegistry) {
+        this.flaggedCounter = Counter.builder("users.password_expiry.flagged")
+                .description("Cuentas marcadas para cambio de contraseña por caducidad")
+                .register(meterRegistry);
+        this.chunkCounter = Counter.builder("users.password_expiry.chunks")
+                .description("Bloques UPDATE ejecutados por el barrido de caducidad")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder("users.password_expiry.sweep")
+                .description("Duración de cada barrido de contraseñas caducadas")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tarea programada ({@code app.password-expiry.cron}).
+     */
+    @Scheduled(cron = "${app.password-expiry.cron:0 */5 * * * *}")
+    public void sweep() {
+        try {
+            flagExpiredPasswords();
+        } catch (Exception e) {
+            logger.error("Error en el barrido de contraseñas caducadas: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Marca por bloques todas las cuentas con la contraseña caducada.
+     *
+     * @return número total de cuentas marcadas.
+     */
+    @Override
+    public int flagExpiredPasswords() {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return sweepTimer.record(() -> {
+            int total = 0;
+            int updated;
+            do {
+                updated = jdbcTemplate.update(FLAG_EXPIRED_SQL, now, chunkSize);
+                chunkCounter.increment();
+                total += updated;
+                if (updated == chunkSize) pauseBetweenChunks();
+            } while (updated == chunkSize);
+
+            if (total > 0) {
+                flaggedCounter.increment(total);
+                // Los UserDetails cacheados llevarían credentialsExpired=false
+                userCache.clear();
+                logger.info("Barrido de caducidad: {} cuentas marcadas para cambio de contraseña", total);
+            }
+            return total;
+        });
+    }
+
+    private void pauseBetweenChunks() {
+        if (pause.isZero()) return;
+        try {
+            Thread.sleep(pause.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,15 +1,19 @@
 package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
 
 
-import jakarta.transaction.Transactional;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.PasswordResetToken;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.JdbcHttpSessionRepository;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.PasswordResetTokenRepository;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -45,6 +49,23 @@ public class PasswordResetServiceImpl implements PasswordResetService {
     private static final int PASSWORD_EXPIRY_DAYS = 90;
 
 
+    /** Generador compartido: es thread-safe y se siembra una sola vez. */
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+
+    private static final Base64.Encoder TOKEN_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+
+    /** {@link MessageDigest} no es thread-safe: uno por hilo en lugar de uno por llamada. */
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+
     @Autowired
     private UserRepository userRepository;
 
@@ -58,7 +79,22 @@ public class PasswordResetServiceImpl implements PasswordResetService {
 
 
     @Autowired
-    private MailService mailService;
+    private CaffeineUserCache userCache;
+
+    @Autowired
+    private BoundedSessionRegistry sessionRegistry;
+
+
+    /** Solo existe con {@code app.session.jdbc.enabled=true}. */
+    @Autowired(required = false)
+    private JdbcHttpSessionRepository sessionRepository;
+
+    @Autowired
+    private UserLocaleService userLocaleService;
+
+
+    @Autowired
+    private MailOutboxService mailOutboxService;
 
 
     @Autowired
@@ -76,12 +112,13 @@ public class PasswordResetServiceImpl implements PasswordResetService {
      * @param requestIp IP del solicitante (auditoría)
      * @param userAgent User-Agent del solicitante (auditoría)
      */
-    @Transactional
+    // READ COMMITTED: en REPEATABLE READ el UPDATE de invalidación bloquea el hueco del índice por
+    // user_id y los INSERT concurrentes de otros usuarios acaban en deadlock (visto en PasswordResetLoadTest)
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     @Override
     public void requestPasswordReset(String email, String requestIp, String userAgent) {
 
 
-        Locale locale = LocaleContextHolder.getLocale();
         LocalDateTime now = LocalDateTime.now();
 
 
@@ -98,7 +135,7 @@ public class PasswordResetServiceImpl implements PasswordResetService {
 
             // Genera token aleatorio y guarda solo su hash.
             String rawToken = generateSecureToken();
-            String tokenHash = sha256Hex(rawToken);
+            byte[] tokenHash = sha256(rawToken);
 
 
             PasswordResetToken prt = new PasswordResetToken();
@@ -111,6 +148,11 @@ public class PasswordResetServiceImpl implements PasswordResetService {
             tokenRepository.save(prt);
 
 
+            // El correo va en el idioma del destinatario (perfil); si no tiene, en el de la petición
+            Locale locale = userLocaleService.findPreferredLocale(user.getEmail())
+                    .orElseGet(LocaleContextHolder::getLocale);
+
+
             // Construye URL pública y envía mail vía plantilla (genérico).
             String resetUrl = appUrlService.buildResetUrl(rawToken);
 
@@ -121,8 +163,9 @@ public class PasswordResetServiceImpl implements PasswordResetService {
             );
 
 
-            // subjectKey i18n + template Thymeleaf (ejemplo)
-            mailService.sendTemplate(
+            // subjectKey i18n + template Thymeleaf; se encola en esta misma transacción y
+            // lo entrega el despachador de mail_outbox (sin esperar al SMTP en la petición)
+            mailOutboxService.enqueueTemplate(
                     user.getEmail(),
                     "mail.passwordreset.subject",
                     "mail/password-reset", // resources/templates/mail/password-reset.html
@@ -147,7 +190,7 @@ public class PasswordResetServiceImpl implements PasswordResetService {
 
 
         LocalDateTime now = LocalDateTime.now();
-        String tokenHash = sha256Hex(rawToken);
+        byte[] tokenHash = sha256(rawToken);
 
 
         PasswordResetToken token = tokenRepository.findByTokenHash(tokenHash)
@@ -175,28 +218,53 @@ public class PasswordResetServiceImpl implements PasswordResetService {
 
         userRepository.save(user);
         tokenRepository.save(token);
+        closeSessionsAfterCommit(user.getEmail());
+    }
+
+
+    /**
+     * Cierra las sesiones abiertas con la contraseña anterior (cuenta posiblemente comprometida) y
+     * descarta el usuario cacheado para el login, solo cuando el cambio se ha confirmado.
+     * El registro de sesiones es local a cada nodo; con sesiones en BD se borran además sus filas
+     * para que ningún otro nodo las siga aceptando.
+     */
+    private void closeSessionsAfterCommit(String email) {
+        Runnable close = () -> {
+            userCache.removeUserFromCache(email);
+            sessionRegistry.expireUserSessions(email);
+            if (sessionRepository != null) {
+                sessionRepository.deleteByPrincipalName(email);
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            close.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                close.run();
+            }
+        });
     }
 
 
     /** Genera un token aleatorio seguro apto para URL (Base64 URL-safe sin padding). */
-    private String generateSecureToken() {
+    static String generateSecureToken() {
         byte[] bytes = new byte[TOKEN_BYTES];
-        new SecureRandom().nextBytes(bytes);
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        SECURE_RANDOM.nextBytes(bytes);
+        return TOKEN_ENCODER.encodeToString(bytes);
     }
 
 
-    /** Calcula el hash SHA-256 (hex) del token para almacenarlo/consultarlo en BD. */
-    private String sha256Hex(String raw) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(raw.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
+    /**
+     * Calcula el hash SHA-256 del token para almacenarlo/consultarlo en BD (columna
+     * {@code BINARY(32)}: la mitad que el hex y sin conversión a texto).
+     */
+    static byte[] sha256(String raw) {
+        MessageDigest md = SHA_256.get();
+        md.reset();
+        return md.digest(raw.getBytes(StandardCharsets.UTF_8));
     }
 
 
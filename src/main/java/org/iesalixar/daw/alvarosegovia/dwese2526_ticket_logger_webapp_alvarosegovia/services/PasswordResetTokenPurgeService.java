@@ -0,0 +1,6 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+public interface PasswordResetTokenPurgeService {
+
+    int purgeExpiredTokens();
+}
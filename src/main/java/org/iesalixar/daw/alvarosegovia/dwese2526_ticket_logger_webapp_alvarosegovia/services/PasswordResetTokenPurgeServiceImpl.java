@@ -0,0 +1,128 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Purga periódica de {@code password_reset_tokens}.
+ * <p>
+ * Borra por bloques ({@code ORDER BY expires_at LIMIT n}) sobre {@code idx_prt_expires_at},
+ * cada bloque en su propia transacción (autocommit) y con una pausa entre bloques, para no
+ * mantener bloqueos largos ni generar picos de retraso en las réplicas.
+ * </p>
+ * <p>
+ * Solo se filtra por {@code expires_at} (rango sobre el índice): los tokens ya usados se borran
+ * cuando caducan, como mucho unos minutos después (TTL del token), en lugar de recorrer la tabla
+ * buscando {@code used_at IS NOT NULL}. Con varios nodos, cada ejecución la hace solo uno
+ * ({@link SchedulerLock}).
+ * </p>
+ */
+@Service
+public class PasswordResetTokenPurgeServiceImpl implements PasswordResetTokenPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordResetTokenPurgeServiceImpl.class);
+
+    private static final String LOCK_NAME = "password-reset-token-purge";
+
+    private static final String DELETE_EXPIRED_SQL =
+            "DELETE FROM password_reset_tokens WHERE expires_at < ? ORDER BY expires_at LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SchedulerLock schedulerLock;
+
+    @Value("${app.password-reset.purge.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.password-reset.purge.pause:PT0.2S}")
+    private Duration pause;
+
+    @Value("${app.password-reset.purge.retention:P1D}")
+    private Duration retention;
+
+    @Value("${app.password-reset.purge.lock-at-most:PT30M}")
+    private Duration lockAtMost;
+
+    private final Counter purgedCounter;
+    private final Counter chunkCounter;
+    private final Counter skippedCounter;
+    private final Timer purgeTimer;
+
+    public PasswordResetTokenPurgeServiceImpl(MeterRegistry meterRegistry) {
+        this.purgedCounter = Counter.builder("password_reset_tokens.purged")
+                .description("Tokens de recuperación de contraseña borrados por la purga")
+                .register(meterRegistry);
+        this.chunkCounter = Counter.builder("password_reset_tokens.purge.chunks")
+                .description("Bloques DELETE ejecutados por la purga de tokens")
+                .register(meterRegistry);
+        this.skippedCounter = Counter.builder("password_reset_tokens.purge.skipped")
+                .description("Ejecuciones omitidas porque la purga estaba en curso en otro nodo")
+                .register(meterRegistry);
+        this.purgeTimer = Timer.builder("password_reset_tokens.purge")
+                .description("Duración de cada purga de tokens")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tarea programada ({@code app.password-reset.purge.cron}).
+     */
+    @Scheduled(cron = "${app.password-reset.purge.cron:0 15 * * * *}")
+    public void scheduledPurge() {
+        try {
+            if (!schedulerLock.runExclusively(LOCK_NAME, lockAtMost, this::purgeExpiredTokens)) {
+                skippedCounter.increment();
+            }
+        } catch (Exception e) {
+            logger.error("Error en la purga de tokens de recuperación: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Borra por bloques los tokens caducados hace más de {@code app.password-reset.purge.retention}.
+     *
+     * @return número total de tokens borrados.
+     */
+    @Override
+    public int purgeExpiredTokens() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(retention));
+        return purgeTimer.record(() -> {
+            int total = 0;
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(DELETE_EXPIRED_SQL, cutoff, chunkSize);
+                chunkCounter.increment();
+                total += deleted;
+                if (deleted == chunkSize) pauseBetweenChunks();
+            } while (deleted == chunkSize);
+
+            if (total > 0) {
+                purgedCounter.increment(total);
+                logger.info("Purga de tokens de recuperación: {} tokens borrados", total);
+            }
+            return total;
+        });
+    }
+
+    private void pauseBetweenChunks() {
+        if (pause.isZero()) return;
+        try {
+            Thread.sleep(pause.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
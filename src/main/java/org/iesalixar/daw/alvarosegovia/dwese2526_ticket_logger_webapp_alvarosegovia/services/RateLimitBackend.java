@@ -0,0 +1,40 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import java.time.Duration;
+
+/**
+ * Almacén de cubetas de tokens (token buckets) para la limitación de peticiones.
+ * <p>
+ * Implementaciones: {@link InMemoryRateLimitBackend} (por defecto, local a cada nodo) y
+ * {@link JdbcRateLimitBackend} (compartida entre nodos), según {@code app.rate-limit.backend}.
+ * </p>
+ */
+public interface RateLimitBackend {
+
+    /**
+     * Intenta consumir un token de la cubeta {@code key}.
+     *
+     * @return 0 si se ha consumido; si no, milisegundos hasta que haya un token disponible.
+     */
+    long tryConsume(String key, BucketSpec spec);
+
+    /**
+     * Capacidad de la cubeta y tiempo en rellenarla entera (p.ej. {@code 5/PT1M}: 5 peticiones
+     * seguidas y luego una cada 12 segundos).
+     */
+    record BucketSpec(int capacity, Duration refillPeriod) {
+
+        public static BucketSpec parse(String value) {
+            String[] parts = value.trim().split("/", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Límite no válido (se esperaba capacidad/periodo ISO-8601): " + value);
+            }
+            return new BucketSpec(Integer.parseInt(parts[0].trim()), Duration.parse(parts[1].trim()));
+        }
+
+        /** Tokens que se recuperan por milisegundo. */
+        public double tokensPerMilli() {
+            return (double) capacity / refillPeriod.toMillis();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Bloqueo con concesión (lease) en BD para que una tarea programada se ejecute en un solo
+ * nodo a la vez (tabla {@code scheduler_locks}).
+ * <p>
+ * Adquirir es un {@code UPDATE} condicional sobre la fila de la tarea: solo lo consigue quien la
+ * encuentra libre o con la concesión vencida. La concesión ({@code lockAtMost}) acota cuánto
+ * queda bloqueada la tarea si el nodo cae sin liberarla.
+ * </p>
+ */
+@Component
+public class SchedulerLock {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchedulerLock.class);
+
+    private static final String ENSURE_SQL =
+            "INSERT IGNORE INTO scheduler_locks (name, locked_until, locked_at, locked_by) VALUES (?, ?, ?, '')";
+
+    private static final String ACQUIRE_SQL =
+            "UPDATE scheduler_locks SET locked_until = ?, locked_at = ?, locked_by = ? " +
+            "WHERE name = ? AND locked_until <= ?";
+
+    private static final String RELEASE_SQL =
+            "UPDATE scheduler_locks SET locked_until = ? WHERE name = ? AND locked_by = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Identifica a este nodo (y a esta ejecución) como dueño del bloqueo
+    private final String owner = hostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * Ejecuta la tarea si este nodo consigue el bloqueo; si lo tiene otro, no hace nada.
+     *
+     * @param name       nombre único de la tarea.
+     * @param lockAtMost duración máxima de la concesión (debe superar la duración de la tarea).
+     * @param task       tarea a ejecutar.
+     * @return {@code true} si se ha ejecutado.
+     */
+    public boolean runExclusively(String name, Duration lockAtMost, Runnable task) {
+        if (!tryAcquire(name, lockAtMost)) {
+            logger.debug("Tarea {} en curso en otro nodo; se omite", name);
+            return false;
+        }
+        try {
+            task.run();
+            return true;
+        } finally {
+            release(name);
+        }
+    }
+
+    private boolean tryAcquire(String name, Duration lockAtMost) {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+        jdbcTemplate.update(ENSURE_SQL, name, nowTs, nowTs);
+        return jdbcTemplate.update(ACQUIRE_SQL, Timestamp.valueOf(now.plus(lockAtMost)), nowTs, owner, name, nowTs) == 1;
+    }
+
+    private void release(String name) {
+        try {
+            jdbcTemplate.update(RELEASE_SQL, Timestamp.valueOf(LocalDateTime.now()), name, owner);
+        } catch (Exception e) {
+            // La concesión vencerá sola
+            logger.warn("No se pudo liberar el bloqueo de la tarea {}: {}", name, e.getMessage());
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
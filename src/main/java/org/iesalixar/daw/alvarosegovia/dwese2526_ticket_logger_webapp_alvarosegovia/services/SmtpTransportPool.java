@@ -0,0 +1,217 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool de conexiones SMTP ya abiertas (TCP + STARTTLS + AUTH) reutilizadas entre envíos.
+ * <p>
+ * {@link JavaMailSenderImpl#send(MimeMessage)} abre y cierra una conexión por llamada; aquí cada
+ * lote toma una conexión del pool, envía todos sus mensajes por ella y la devuelve abierta.
+ * Como mucho hay {@code app.mail.pool.max-size} conexiones (una por lote en curso); las que
+ * llevan más de {@code app.mail.pool.max-idle} sin usarse se cierran, porque los servidores
+ * SMTP cortan las conexiones inactivas, y las que llevan un rato paradas se validan
+ * ({@code NOOP}) antes de reutilizarse. Un lote espera como mucho {@code app.mail.pool.acquire-timeout}
+ * a que quede una conexión libre; si no, falla entero y la bandeja de salida lo reintenta.
+ * </p>
+ */
+@Component
+public class SmtpTransportPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    // Sin uso durante menos de esto, se reutiliza la conexión sin validarla
+    private static final long VALIDATE_AFTER_MS = 5_000;
+
+    private final JavaMailSenderImpl mailSender;
+    private final Semaphore permits;
+    private final long maxIdleMs;
+    private final long acquireTimeoutMs;
+
+    // LIFO: se reutiliza la conexión más reciente y las frías quedan al final para cerrarse
+    private final Deque<PooledTransport> idle = new ConcurrentLinkedDeque<>();
+    private final Counter openedCounter;
+    private final Counter acquireTimeoutCounter;
+
+    @Autowired
+    public SmtpTransportPool(JavaMailSenderImpl mailSender,
+                             @Value("${app.mail.pool.max-size:4}") int maxSize,
+                             @Value("${app.mail.pool.max-idle:PT1M}") Duration maxIdle,
+                             @Value("${app.mail.pool.acquire-timeout:PT30S}") Duration acquireTimeout,
+                             MeterRegistry meterRegistry) {
+        this.mailSender = mailSender;
+        this.permits = new Semaphore(maxSize, true);
+        this.maxIdleMs = maxIdle.toMillis();
+        this.acquireTimeoutMs = acquireTimeout.toMillis();
+        this.openedCounter = Counter.builder("mail.smtp.connections.opened")
+                .description("Conexiones SMTP abiertas (connect + STARTTLS + AUTH)")
+                .register(meterRegistry);
+        this.acquireTimeoutCounter = Counter.builder("mail.smtp.pool.acquire_timeouts")
+                .description("Lotes fallidos por no quedar conexiones SMTP libres a tiempo")
+                .register(meterRegistry);
+        Gauge.builder("mail.smtp.connections.idle", idle, Deque::size)
+                .description("Conexiones SMTP abiertas a la espera en el pool")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Envía los mensajes por una única conexión del pool. Si la conexión se rompe a mitad, el
+     * mensaje en curso falla y los siguientes se envían por una conexión nueva. Si lo que falla es
+     * el primer envío por una conexión reutilizada (el servidor la cerró sin que se detectara), el
+     * mensaje se reintenta una vez por una conexión nueva en lugar de darlo por fallido. Si no queda
+     * una conexión libre en {@code app.mail.pool.acquire-timeout}, fallan todos los mensajes.
+     *
+     * @param messages mensajes a enviar (con remitente y destinatarios ya informados).
+     * @return fallos por posición en {@code messages}; vacío si se enviaron todos.
+     */
+    public Map<Integer, Exception> sendAll(List<MimeMessage> messages) {
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        if (messages.isEmpty()) return failures;
+
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                acquireTimeoutCounter.increment();
+                MessagingException e = new MessagingException(
+                        "Sin conexiones SMTP libres en el pool tras " + acquireTimeoutMs + " ms");
+                for (int i = 0; i < messages.size(); i++) failures.put(i, e);
+                return failures;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < messages.size(); i++) failures.put(i, e);
+            return failures;
+        }
+
+        PooledTransport pooled = null;
+        // La conexión actual se acaba de abrir o ya ha enviado algún mensaje en este lote
+        boolean proven = false;
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                MimeMessage message = messages.get(i);
+                try {
+                    if (pooled == null) {
+                        pooled = borrow();
+                        proven = pooled.fresh();
+                    }
+                    if (message.getSentDate() == null) message.setSentDate(new Date());
+                    message.saveChanges();
+                    try {
+                        pooled.transport().sendMessage(message, message.getAllRecipients());
+                    } catch (MessagingException e) {
+                        if (proven || !connectionLost(pooled, e)) throw e;
+                        logger.debug("Conexión SMTP reutilizada cerrada por el servidor, se abre otra: {}", e.getMessage());
+                        close(pooled);
+                        pooled = null;
+                        pooled = open();
+                        pooled.transport().sendMessage(message, message.getAllRecipients());
+                    }
+                    proven = true;
+                } catch (Exception e) {
+                    failures.put(i, e);
+                    if (connectionLost(pooled, e)) {
+                        close(pooled);
+                        pooled = null;
+                    }
+                }
+            }
+        } finally {
+            if (pooled != null) {
+                idle.offerFirst(new PooledTransport(pooled.transport(), System.currentTimeMillis(), false));
+            }
+            permits.release();
+        }
+        return failures;
+    }
+
+    /**
+     * Cierra las conexiones inactivas más de {@code app.mail.pool.max-idle}.
+     */
+    @Scheduled(fixedDelayString = "${app.mail.pool.evict-interval:PT30S}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - maxIdleMs;
+        List<PooledTransport> stale = new ArrayList<>();
+        idle.removeIf(p -> p.lastUsed() < cutoff && stale.add(p));
+        stale.forEach(this::close);
+        if (!stale.isEmpty()) {
+            logger.debug("Cerradas {} conexiones SMTP inactivas", stale.size());
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            close(pooled);
+        }
+    }
+
+    /**
+     * Indica si el error ha dejado inservible la conexión. Un rechazo de destinatarios o del mensaje
+     * ({@link SendFailedException}) no la invalida, salvo que venga de que el servidor la cerró
+     * (Angus Mail informa el EOF como {@code SMTPSendFailedException}).
+     */
+    private static boolean connectionLost(PooledTransport pooled, Exception e) {
+        return pooled != null && (!(e instanceof SendFailedException) || !pooled.transport().isConnected());
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+        long now = System.currentTimeMillis();
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            long idleMs = now - pooled.lastUsed();
+            if (idleMs < maxIdleMs && (idleMs < VALIDATE_AFTER_MS || pooled.transport().isConnected())) {
+                return pooled;
+            }
+            close(pooled);
+        }
+        return open();
+    }
+
+    private PooledTransport open() throws MessagingException {
+        String protocol = mailSender.getProtocol() != null ? mailSender.getProtocol() : "smtp";
+        Transport transport = mailSender.getSession().getTransport(protocol);
+        String username = mailSender.getUsername();
+        String password = mailSender.getPassword();
+        transport.connect(mailSender.getHost(), mailSender.getPort(),
+                username == null || username.isEmpty() ? null : username,
+                password == null || password.isEmpty() ? null : password);
+        openedCounter.increment();
+        return new PooledTransport(transport, System.currentTimeMillis(), true);
+    }
+
+    private void close(PooledTransport pooled) {
+        if (pooled == null) return;
+        try {
+            pooled.transport().close();
+        } catch (MessagingException e) {
+            logger.debug("Error al cerrar una conexión SMTP: {}", e.getMessage());
+        }
+    }
+
+    private record PooledTransport(Transport transport, long lastUsed, boolean fresh) {
+    }
+}
@@ -0,0 +1,11 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserImportStatusDTO;
+import org.springframework.web.multipart.MultipartFile;
+
+public interface UserImportService {
+
+    String startImport(MultipartFile csvFile);
+
+    UserImportStatusDTO getStatus(String jobId);
+}
@@ -0,0 +1,391 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PreDestroy;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserImportRowErrorDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserImportStatusDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.Role;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.RoleRepository;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Importación masiva de usuarios desde CSV.
+ * <p>
+ * Formato esperado (UTF-8, cabecera opcional): {@code email,password,roles}, con los roles
+ * separados por {@code |} (p.ej. {@code ROLE_USER|ROLE_MANAGER}).
+ * </p>
+ * <p>
+ * El fichero se procesa en streaming por bloques de {@code app.user-import.batch-size} filas:
+ * los emails existentes se comprueban con una sola consulta por bloque, las contraseñas se
+ * cifran en paralelo en un {@link ForkJoinPool} acotado (BCrypt es caro a propósito) y los
+ * inserts en {@code users} y {@code user_roles} se envían en lote por JDBC dentro de una
+ * transacción por bloque. Los roles se resuelven una sola vez por importación.
+ * </p>
+ * <p>
+ * Los usuarios importados entran con la contraseña del CSV ({@code must_change_password=FALSE}):
+ * ese flag marca las credenciales como caducadas y les impediría iniciar sesión.
+ * </p>
+ * <p>
+ * El estado de cada importación se guarda en memoria del nodo mientras está en curso y durante
+ * {@code app.user-import.job-retention} desde que termina; después se descarta con su informe de errores.
+ * </p>
+ */
+@Service
+public class UserImportServiceImpl implements UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportServiceImpl.class);
+
+    private static final long PASSWORD_EXPIRY_DAYS = 90;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int MIN_PASSWORD_LENGTH = 8;
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    private static final String INSERT_USER_SQL =
+            "INSERT INTO users (email, password_hash, active, account_non_locked, last_password_change, " +
+            "password_expires_at, failed_login_attempts, email_verified, must_change_password) " +
+            "VALUES (?, ?, TRUE, TRUE, ?, ?, 0, FALSE, FALSE)";
+
+    // INSERT ... VALUES: el envío en lote (bulk) de MariaDB no admite INSERT ... SELECT
+    private static final String INSERT_USER_ROLE_SQL =
+            "INSERT INTO user_roles (user_id, role_id) VALUES (?, ?)";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor taskExecutor;
+
+    @Value("${app.user-import.batch-size:500}")
+    private int batchSize;
+
+    // Pool propio y acotado para el cifrado: no compite con el common pool ni con las peticiones web
+    private final ForkJoinPool hashingPool;
+
+    // Importaciones en curso (sin caducidad) o terminadas (caducan tras la retención), en memoria del nodo
+    private final Cache<String, ImportJob> jobs;
+
+    public UserImportServiceImpl(@Value("${app.user-import.hash-parallelism:4}") int hashParallelism,
+                                 @Value("${app.user-import.job-retention:PT1H}") Duration jobRetention) {
+        this.hashingPool = new ForkJoinPool(Math.max(1, hashParallelism));
+        long retentionNanos = jobRetention.toNanos();
+        this.jobs = Caffeine.newBuilder()
+                .expireAfter(new Expiry<String, ImportJob>() {
+                    @Override
+                    public long expireAfterCreate(String key, ImportJob job, long currentTime) {
+                        return job.finishedAt == null ? Long.MAX_VALUE : retentionNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, ImportJob job, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, job, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, ImportJob job, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        hashingPool.shutdownNow();
+    }
+
+    /**
+     * Copia el CSV a un fichero temporal y lanza su importación en segundo plano.
+     *
+     * @param csvFile fichero subido.
+     * @return identificador de la importación para consultar su progreso.
+     */
+    @Override
+    public String startImport(MultipartFile csvFile) {
+        Path tempFile;
+        long totalRows;
+        try {
+            tempFile = Files.createTempFile("user-import-", ".csv");
+            try (InputStream in = csvFile.getInputStream()) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (Stream<String> lines = Files.lines(tempFile, StandardCharsets.UTF_8)) {
+                totalRows = lines.filter(l -> !l.isBlank()).count();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo leer el fichero de importación", e);
+        }
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), csvFile.getOriginalFilename(), totalRows);
+        jobs.put(job.id, job);
+        taskExecutor.execute(() -> runImport(job, tempFile));
+        logger.info("Importación de usuarios {} lanzada ({} filas)", job.id, totalRows);
+        return job.id;
+    }
+
+    /**
+     * Devuelve el estado de una importación o {@code null} si no existe.
+     */
+    @Override
+    public UserImportStatusDTO getStatus(String jobId) {
+        ImportJob job = jobId == null ? null : jobs.getIfPresent(jobId);
+        return job == null ? null : job.toDTO();
+    }
+
+    private void runImport(ImportJob job, Path csv) {
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            Map<String, Role> rolesByName = new HashMap<>();
+            for (Role role : roleRepository.findAll()) {
+                rolesByName.put(role.getName().toUpperCase(Locale.ROOT), role);
+            }
+
+            Set<String> seenEmails = new HashSet<>();
+            List<ImportRow> chunk = new ArrayList<>(batchSize);
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                if (lineNumber == 1 && line.toLowerCase(Locale.ROOT).startsWith("email,")) {
+                    job.totalRows.decrementAndGet(); // cabecera
+                    continue;
+                }
+                ImportRow row = parseRow(job, lineNumber, line, rolesByName, seenEmails);
+                if (row == null) continue;
+                chunk.add(row);
+                if (chunk.size() >= batchSize) {
+                    importChunk(job, chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(job, chunk);
+            }
+            finish(job, "COMPLETED");
+            logger.info("Importación {} terminada: {} importados, {} con error",
+                    job.id, job.importedRows.get(), job.failedRows.get());
+        } catch (Exception e) {
+            logger.error("Error en la importación de usuarios {}: {}", job.id, e.getMessage(), e);
+            finish(job, "FAILED");
+        } finally {
+            try {
+                Files.deleteIfExists(csv);
+            } catch (IOException e) {
+                logger.warn("No se pudo borrar el fichero temporal {}", csv);
+            }
+        }
+    }
+
+    /**
+     * Marca la importación como terminada y la vuelve a guardar para que empiece a contar su retención.
+     */
+    private void finish(ImportJob job, String finalStatus) {
+        job.finish(finalStatus);
+        jobs.put(job.id, job);
+    }
+
+    /**
+     * Valida una línea del CSV. Devuelve {@code null} (y registra el error) si no es válida.
+     */
+    private ImportRow parseRow(ImportJob job, long lineNumber, String line,
+                               Map<String, Role> rolesByName, Set<String> seenEmails) {
+        // email es el primer campo y roles el último: la contraseña puede contener comas
+        int first = line.indexOf(',');
+        int last = line.lastIndexOf(',');
+        if (first < 0 || last == first) {
+            job.rowFailed(lineNumber, null, "msg.user-import.error.format");
+            return null;
+        }
+        String email = line.substring(0, first).trim();
+        String password = line.substring(first + 1, last);
+        String rolesField = line.substring(last + 1).trim();
+
+        if (!EMAIL_PATTERN.matcher(email).matches() || email.length() > 100) {
+            job.rowFailed(lineNumber, email, "msg.user-import.error.email");
+            return null;
+        }
+        if (password.length() < MIN_PASSWORD_LENGTH) {
+            job.rowFailed(lineNumber, email, "msg.user-import.error.password");
+            return null;
+        }
+        Set<Long> roleIds = new HashSet<>();
+        for (String roleName : rolesField.split("\\|")) {
+            String key = roleName.trim().toUpperCase(Locale.ROOT);
+            if (key.isEmpty()) continue;
+            Role role = rolesByName.get(key.startsWith("ROLE_") ? key : "ROLE_" + key);
+            if (role == null) {
+                job.rowFailed(lineNumber, email, "msg.user-import.error.role");
+                return null;
+            }
+            roleIds.add(role.getId());
+        }
+        if (roleIds.isEmpty()) {
+            job.rowFailed(lineNumber, email, "msg.user-import.error.role");
+            return null;
+        }
+        if (!seenEmails.add(email.toLowerCase(Locale.ROOT))) {
+            job.rowFailed(lineNumber, email, "msg.user-import.error.duplicateInFile");
+            return null;
+        }
+        return new ImportRow(lineNumber, email, password, roleIds);
+    }
+
+    /**
+     * Importa un bloque de filas válidas: descarta emails existentes, cifra en paralelo
+     * y hace los inserts en lote dentro de una única transacción.
+     */
+    private void importChunk(ImportJob job, List<ImportRow> chunk) throws Exception {
+        Set<String> existing = new HashSet<>();
+        for (String email : userRepository.findExistingEmails(
+                chunk.stream().map(r -> r.email().toLowerCase(Locale.ROOT)).toList())) {
+            existing.add(email.toLowerCase(Locale.ROOT));
+        }
+
+        List<ImportRow> toInsert = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            if (existing.contains(row.email().toLowerCase(Locale.ROOT))) {
+                job.rowFailed(row.lineNumber(), row.email(), "msg.user-import.error.emailExists");
+            } else {
+                toInsert.add(row);
+            }
+        }
+        if (toInsert.isEmpty()) return;
+
+        List<String> hashes = hashingPool.submit(() ->
+                toInsert.parallelStream().map(r -> passwordEncoder.encode(r.password())).toList()
+        ).get();
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Timestamp expiresAt = Timestamp.valueOf(LocalDateTime.now().plusDays(PASSWORD_EXPIRY_DAYS));
+        List<Object[]> userArgs = new ArrayList<>(toInsert.size());
+        for (int i = 0; i < toInsert.size(); i++) {
+            ImportRow row = toInsert.get(i);
+            userArgs.add(new Object[]{row.email(), hashes.get(i), now, expiresAt});
+        }
+
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_USER_SQL, userArgs);
+                Map<String, Long> idsByEmail = findUserIds(toInsert);
+                List<Object[]> roleArgs = new ArrayList<>();
+                for (ImportRow row : toInsert) {
+                    Long userId = idsByEmail.get(row.email().toLowerCase(Locale.ROOT));
+                    for (Long roleId : row.roleIds()) {
+                        roleArgs.add(new Object[]{userId, roleId});
+                    }
+                }
+                jdbcTemplate.batchUpdate(INSERT_USER_ROLE_SQL, roleArgs);
+            });
+            userRepository.evictCountCache();
+            job.importedRows.addAndGet(toInsert.size());
+            job.processedRows.addAndGet(toInsert.size());
+        } catch (RuntimeException e) {
+            // p.ej. un email dado de alta entre la comprobación y el insert: se marca el bloque entero
+            logger.warn("Bloque de importación {} revertido: {}", job.id, e.getMessage());
+            for (ImportRow row : toInsert) {
+                job.rowFailed(row.lineNumber(), row.email(), "msg.user-import.error.batch");
+            }
+        }
+    }
+
+    /**
+     * Ids de los usuarios recién insertados del bloque, por email en minúsculas (una consulta).
+     */
+    private Map<String, Long> findUserIds(List<ImportRow> rows) {
+        String placeholders = String.join(",", Collections.nCopies(rows.size(), "?"));
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query("SELECT id, email FROM users WHERE email IN (" + placeholders + ")",
+                rs -> {
+                    ids.put(rs.getString("email").toLowerCase(Locale.ROOT), rs.getLong("id"));
+                },
+                rows.stream().map(ImportRow::email).toArray());
+        return ids;
+    }
+
+    private record ImportRow(long lineNumber, String email, String password, Set<Long> roleIds) {
+    }
+
+    /**
+     * Estado mutable de una importación; los contadores se actualizan desde el hilo de la
+     * importación y se leen desde las peticiones de progreso.
+     */
+    private static final class ImportJob {
+        final String id;
+        final String fileName;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final AtomicLong totalRows;
+        final AtomicLong processedRows = new AtomicLong();
+        final AtomicLong importedRows = new AtomicLong();
+        final AtomicLong failedRows = new AtomicLong();
+        final List<UserImportRowErrorDTO> errors = new CopyOnWriteArrayList<>();
+        volatile String status = "RUNNING";
+        volatile LocalDateTime finishedAt;
+
+        ImportJob(String id, String fileName, long totalRows) {
+            this.id = id;
+            this.fileName = fileName;
+            this.totalRows = new AtomicLong(totalRows);
+        }
+
+        void rowFailed(long lineNumber, String email, String messageKey) {
+            failedRows.incrementAndGet();
+            processedRows.incrementAndGet();
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new UserImportRowErrorDTO(lineNumber, email, messageKey));
+            }
+        }
+
+        void finish(String finalStatus) {
+            finishedAt = LocalDateTime.now();
+            status = finalStatus;
+        }
+
+        UserImportStatusDTO toDTO() {
+            return new UserImportStatusDTO(id, fileName, status, totalRows.get(), processedRows.get(),
+                    importedRows.get(), failedRows.get(), startedAt, finishedAt, List.copyOf(errors));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import java.util.Locale;
+import java.util.Optional;
+
+public interface UserLocaleService {
+
+    Optional<Locale> findPreferredLocale(String email);
+
+    Locale resolveLocale(String email);
+}
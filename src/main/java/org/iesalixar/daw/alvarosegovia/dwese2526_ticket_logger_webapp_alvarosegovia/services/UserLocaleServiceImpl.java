@@ -0,0 +1,65 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.UserProfileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Resuelve el idioma preferido de un usuario a partir de {@code user_profiles.locale}.
+ * <p>
+ * En la web solo se consulta una vez, al iniciar sesión (el resultado queda en la cookie
+ * del {@code LocaleResolver}); en los envíos de correo en segundo plano se usa para escribir
+ * en el idioma del destinatario y no en el de quien provoca el envío.
+ * </p>
+ */
+@Service
+public class UserLocaleServiceImpl implements UserLocaleService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserLocaleServiceImpl.class);
+
+    /** Idioma por defecto de la aplicación (mismo que en {@code LocaleConfig}). */
+    public static final Locale DEFAULT_LOCALE = Locale.of("es");
+
+    @Autowired
+    private UserProfileRepository userProfileRepository;
+
+    /**
+     * Locale guardado en el perfil del usuario.
+     *
+     * @param email email del usuario.
+     * @return locale del perfil, o vacío si no tiene perfil o no lo ha indicado.
+     */
+    @Override
+    public Optional<Locale> findPreferredLocale(String email) {
+        if (email == null || email.isBlank()) return Optional.empty();
+        return userProfileRepository.findLocaleByEmail(email)
+                .flatMap(UserLocaleServiceImpl::parseLocale);
+    }
+
+    /**
+     * Locale del usuario o, si no tiene, el de la aplicación. Pensado para procesos sin
+     * petición HTTP (no usa {@code LocaleContextHolder}).
+     */
+    @Override
+    public Locale resolveLocale(String email) {
+        return findPreferredLocale(email).orElse(DEFAULT_LOCALE);
+    }
+
+    /**
+     * Convierte el código guardado ({@code es}, {@code es_ES}, {@code en-GB}...) en {@link Locale}.
+     */
+    static Optional<Locale> parseLocale(String code) {
+        if (code == null || code.isBlank()) return Optional.empty();
+        Locale locale = Locale.forLanguageTag(code.trim().replace('_', '-'));
+        if (locale.getLanguage().isEmpty()) {
+            logger.debug("Locale de perfil no válido: {}", code);
+            return Optional.empty();
+        }
+        return Optional.of(locale);
+    }
+}
@@ -1,6 +1,5 @@
 package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
 
-import jakarta.transaction.Transactional;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserProfileFormDTO;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.UserProfile;
@@ -12,13 +11,14 @@ import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosego
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.Optional;
-
 @Service
-@Transactional
 public class UserProfileServiceImpl implements UserProfileService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserProfileServiceImpl.class);
@@ -35,41 +35,43 @@ public class UserProfileServiceImpl implements UserProfileService {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Borrado de imágenes antiguas en segundo plano, una vez confirmada la transacción
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor taskExecutor;
+
     @Override
     public UserProfileFormDTO getFormByEmail(String email) {
-        User user = userRepository.findByEmail(email)
+        // Una sola consulta users LEFT JOIN user_profiles proyectada al DTO del formulario
+        return userRepository.findProfileFormByEmail(email)
                 .orElseThrow(() -> new ResourceNotFoundException("user", "email", email));
-
-        Optional<UserProfile> profileOpt = userProfileRepository.findByUserId(user.getId());
-        UserProfile profile = profileOpt.orElse(null);
-        return UserProfileMapper.toFormDto(user, profile);
     }
 
+    /**
+     * Actualiza (o crea) el perfil del usuario.
+     * <p>
+     * La E/S de ficheros queda fuera de la transacción para no retener una conexión del pool
+     * mientras se escribe en disco:
+     * <ol>
+     *   <li>La imagen nueva se guarda (staging) antes de abrir la transacción.</li>
+     *   <li>La transacción solo hace las lecturas/escrituras de BD.</li>
+     *   <li>Tras el commit, la imagen anterior se borra en segundo plano.</li>
+     *   <li>Si la transacción falla (incluido el commit), se borra la imagen recién guardada.</li>
+     * </ol>
+     */
     @Override
     public void updateProfile(String email, UserProfileFormDTO profileDTO, MultipartFile profileImageFile) {
 
         logger.info("Actualizando perfil para email={}", email);
 
-        // 1) Comprobar que existe el usuario
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new ResourceNotFoundException("user", "email", email));
-
-        Long userId = user.getId();
-        // 2) Cargar perfil (puede no existir)
-        UserProfile profile = userProfileRepository.findByUserId(userId).orElse(null);
-        boolean isNew = (profile == null);
-
-        // 3) Gestión de imagen (solo si viene una nueva)
+        // 1) Staging de la imagen nueva (fuera de la transacción)
+        String newImageWebPath = null;
         if (profileImageFile != null && !profileImageFile.isEmpty()) {
-
-            // 3.1 Validaciones
             validateProfileImage(profileImageFile);
-
-            // Imagen anterior (fuente de verdad: la entidad)
-            String oldImagePath = profileDTO.getProfileImage();
-
-            // Guardar nueva imagen
-            String newImageWebPath = fileStorageService.saveFile(profileImageFile);
+            newImageWebPath = fileStorageService.saveFile(profileImageFile);
             if (newImageWebPath == null || newImageWebPath.isBlank()) {
                 // Se lanza la excepción (resource, field, value, detail)
                 throw new InvalidFileException(
@@ -79,24 +81,56 @@ public class UserProfileServiceImpl implements UserProfileService {
                         "No se pudo guardar la imagen de perfil."
                 );
             }
+        }
 
-            profileDTO.setProfileImage(newImageWebPath);
-
-            // Borrar imagen anterior si existía
-            if (oldImagePath != null && !oldImagePath.isBlank()) {
-                fileStorageService.deleteFile(oldImagePath);
+        // 2) Transacción corta: solo BD
+        final String stagedImage = newImageWebPath;
+        String oldImagePath;
+        try {
+            oldImagePath = new TransactionTemplate(transactionManager)
+                    .execute(status -> saveProfile(email, profileDTO, stagedImage));
+        } catch (RuntimeException e) {
+            // Compensación: la imagen subida no ha llegado a referenciarse en BD
+            if (stagedImage != null) {
+                logger.warn("Transacción de perfil fallida para email={}, se descarta la imagen {}", email, stagedImage);
+                fileStorageService.deleteFile(stagedImage);
             }
+            throw e;
+        }
+
+        // 3) Tras el commit: borrar la imagen sustituida sin bloquear la petición
+        if (stagedImage != null && oldImagePath != null && !oldImagePath.isBlank()) {
+            taskExecutor.execute(() -> fileStorageService.deleteFile(oldImagePath));
         }
+    }
+
+    /**
+     * Parte transaccional de {@link #updateProfile}: crea o actualiza la entidad.
+     *
+     * @return ruta de la imagen que tenía el perfil antes del cambio (o {@code null}).
+     */
+    private String saveProfile(String email, UserProfileFormDTO profileDTO, String newImageWebPath) {
+        // Comprobar que existe el usuario (solo el id: no hace falta la entidad ni sus roles)
+        Long userId = userRepository.findIdByEmail(email)
+                .orElseThrow(() -> new ResourceNotFoundException("user", "email", email));
+
+        // Cargar perfil por su PK (= user_id, puede no existir)
+        UserProfile profile = userProfileRepository.findById(userId).orElse(null);
+
+        // Imagen anterior: fuente de verdad la entidad, no el campo oculto del formulario
+        String oldImagePath = profile != null ? profile.getProfileImage() : null;
+        profileDTO.setProfileImage(newImageWebPath != null ? newImageWebPath : oldImagePath);
 
-        // 4) Crear o actualizar entidad
-        if (isNew) {
+        if (profile == null) {
+            // Referencia sin consulta: @MapsId solo necesita el id del usuario
+            User user = userRepository.getReferenceById(userId);
             profile = UserProfileMapper.toNewEntity(profileDTO, user);
         } else {
             UserProfileMapper.copyToExistingEntity(profileDTO, profile);
         }
 
-        // 5) Persistir
         userProfileRepository.save(profile);
+        return oldImagePath;
     }
 
 
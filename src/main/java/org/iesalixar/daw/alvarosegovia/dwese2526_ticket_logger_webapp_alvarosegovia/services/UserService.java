@@ -5,11 +5,14 @@ import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosego
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface UserService {
     Page<UserDTO> list(Pageable pageable);
 
+    Page<UserDTO> list(UserFilterDTO filter, Pageable pageable);
+
     UserUpdateDTO getForEdit(Long id);
 
     void create(UserCreateDTO dto);
@@ -22,4 +25,12 @@ public interface UserService {
 
     List<Role> listRoles();
 
+    int grantRole(Long roleId, Collection<Long> userIds);
+
+    int revokeRole(Long roleId, Collection<Long> userIds, String actingEmail);
+
+    int grantRole(Long roleId, UserFilterDTO filter);
+
+    int revokeRole(Long roleId, UserFilterDTO filter, String actingEmail);
+
 }
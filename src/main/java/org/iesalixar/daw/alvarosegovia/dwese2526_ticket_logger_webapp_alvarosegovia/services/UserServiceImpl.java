@@ -3,6 +3,7 @@ package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvaroseg
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserCreateDTO;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserDTO;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserDetailDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserFilterDTO;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserUpdateDTO;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.Role;
 import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
@@ -15,31 +16,52 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 @Service
 @Transactional
 public class UserServiceImpl implements UserService {
 
+    // Usuarios por sentencia en las asignaciones masivas de roles
+    private static final int BULK_ROLE_CHUNK_SIZE = 1000;
+
+    private static final String ADMIN_ROLE = "ROLE_ADMIN";
+
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private CaffeineUserCache userCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Override
+    @Transactional(readOnly = true)
     public Page<UserDTO> list(Pageable pageable) {
-        return userRepository.findAll(pageable)
-                .map(UserMapper::toDTO);
+        return userRepository.findListRowsFiltered(null, pageable);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public Page<UserDTO> list(UserFilterDTO filter, Pageable pageable) {
+        return userRepository.findListRowsFiltered(filter, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public UserUpdateDTO getForEdit(Long id) {
-        User user = userRepository.findById(id)
+        User user = userRepository.findDetailById(id)
                 .orElseThrow(() ->
                         new ResourceNotFoundException("user", "id", id)
                 );
@@ -64,6 +86,7 @@ public class UserServiceImpl implements UserService {
         }
 
         userRepository.save(user);
+        userRepository.evictCountCache();
     }
 
 
@@ -83,6 +106,9 @@ public class UserServiceImpl implements UserService {
                         )
                 );
 
+        // El login cachea UserDetails por email (roles, activo, flags): invalidar el antiguo y el nuevo
+        evictUsersAfterCommit(List.of(user.getEmail(), dto.getEmail()));
+
         UserMapper.copyToExistingEntity(dto, user);
 
         if (dto.getRoleIds() != null) {
@@ -93,28 +119,31 @@ public class UserServiceImpl implements UserService {
         }
 
         userRepository.save(user);
+        userRepository.evictCountCache();
     }
 
 
     @Override
     public void delete(Long id) {
 
-        if (!userRepository.existsById(id)) {
-            throw new ResourceNotFoundException("user", "id", id);
-        }
+        User user = userRepository.findById(id)
+                .orElseThrow(() ->
+                        new ResourceNotFoundException("user", "id", id)
+                );
 
-        userRepository.deleteById(id);
+        userRepository.delete(user);
+        evictUsersAfterCommit(List.of(user.getEmail()));
+        userRepository.evictCountCache();
     }
 
     @Override
+    @Transactional(readOnly = true)
     public UserDetailDTO getDetail(Long id) {
 
-        User user = userRepository.findByIdWithProfile(id)
+        return userRepository.findDetailRowById(id)
                 .orElseThrow(() ->
                         new ResourceNotFoundException("user", "id", id)
                 );
-
-        return UserMapper.toDetailDTO(user);
     }
 
     @Override
@@ -122,4 +151,138 @@ public class UserServiceImpl implements UserService {
         return roleRepository.findAll();
     }
 
+    // ─────────────────────────────────────────
+    // Asignación masiva de roles
+    // ─────────────────────────────────────────
+
+    /**
+     * Asigna un rol a los usuarios indicados con sentencias {@code INSERT IGNORE} por bloques.
+     *
+     * @return número de asignaciones nuevas (los que ya tenían el rol no cuentan).
+     */
+    @Override
+    public int grantRole(Long roleId, Collection<Long> userIds) {
+        requireRole(roleId);
+        return applyInChunks(new ArrayList<>(new LinkedHashSet<>(userIds)), roleId, true);
+    }
+
+    /**
+     * Retira un rol a los usuarios indicados con sentencias {@code DELETE} por bloques.
+     * Quien ejecuta el cambio nunca pierde su propio rol de administrador.
+     *
+     * @return número de asignaciones eliminadas.
+     */
+    @Override
+    public int revokeRole(Long roleId, Collection<Long> userIds, String actingEmail) {
+        Role role = requireRole(roleId);
+        Set<Long> ids = new LinkedHashSet<>(userIds);
+        protectedUserId(role, actingEmail).ifPresent(ids::remove);
+        return applyInChunks(new ArrayList<>(ids), roleId, false);
+    }
+
+    /**
+     * Asigna un rol a todos los usuarios que cumplen el filtro del listado. Cada bloque se
+     * confirma en su propia transacción para no mantener bloqueadas miles de filas de
+     * {@code user_roles} hasta el final.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int grantRole(Long roleId, UserFilterDTO filter) {
+        requireFilter(filter);
+        requireRole(roleId);
+        return applyToFilter(filter, roleId, true, null);
+    }
+
+    /**
+     * Retira un rol a todos los usuarios que cumplen el filtro del listado, un bloque por
+     * transacción. Quien ejecuta el cambio nunca pierde su propio rol de administrador.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int revokeRole(Long roleId, UserFilterDTO filter, String actingEmail) {
+        requireFilter(filter);
+        Role role = requireRole(roleId);
+        return applyToFilter(filter, roleId, false, protectedUserId(role, actingEmail).orElse(null));
+    }
+
+    private Role requireRole(Long roleId) {
+        if (roleId == null) {
+            throw new ResourceNotFoundException("role", "id", roleId);
+        }
+        return roleRepository.findById(roleId)
+                .orElseThrow(() -> new ResourceNotFoundException("role", "id", roleId));
+    }
+
+    // Un filtro vacío abarcaría a todos los usuarios: el cambio masivo exige algún criterio
+    private void requireFilter(UserFilterDTO filter) {
+        if (filter == null || filter.isEmpty()) {
+            throw new IllegalArgumentException("El cambio masivo de rol por filtro necesita al menos un criterio");
+        }
+    }
+
+    /**
+     * Id del usuario que no puede perder el rol: el propio administrador que lanza el cambio.
+     */
+    private Optional<Long> protectedUserId(Role role, String actingEmail) {
+        if (actingEmail == null || !ADMIN_ROLE.equals(role.getName())) {
+            return Optional.empty();
+        }
+        return userRepository.findIdByEmail(actingEmail);
+    }
+
+    /**
+     * Recorre los usuarios del filtro por clave (id) y aplica el cambio a cada bloque en una
+     * transacción independiente.
+     */
+    private int applyToFilter(UserFilterDTO filter, Long roleId, boolean grant, Long excludedUserId) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        int changed = 0;
+        Long afterId = null;
+        List<Long> ids;
+        while (!(ids = userRepository.findIdsFiltered(filter, afterId, BULK_ROLE_CHUNK_SIZE)).isEmpty()) {
+            afterId = ids.get(ids.size() - 1);
+            List<Long> chunk = new ArrayList<>(ids);
+            if (excludedUserId != null) chunk.remove(excludedUserId);
+            changed += tx.execute(status -> applyChunk(chunk, roleId, grant));
+        }
+        if (changed > 0) userRepository.evictCountCache();
+        return changed;
+    }
+
+    private int applyInChunks(List<Long> userIds, Long roleId, boolean grant) {
+        int changed = 0;
+        for (int from = 0; from < userIds.size(); from += BULK_ROLE_CHUNK_SIZE) {
+            changed += applyChunk(userIds.subList(from, Math.min(from + BULK_ROLE_CHUNK_SIZE, userIds.size())),
+                    roleId, grant);
+        }
+        if (changed > 0) userRepository.evictCountCache();
+        return changed;
+    }
+
+    private int applyChunk(List<Long> chunk, Long roleId, boolean grant) {
+        if (chunk.isEmpty()) return 0;
+        int changed = grant
+                ? userRepository.insertRoleForUsers(roleId, chunk)
+                : userRepository.deleteRoleForUsers(roleId, chunk);
+        evictUsersAfterCommit(userRepository.findEmailsByIdIn(chunk));
+        return changed;
+    }
+
+    /**
+     * Las authorities cacheadas para el login de estos usuarios dejan de ser válidas; se invalidan
+     * al confirmar la transacción para que un login concurrente no vuelva a cachear los roles antiguos.
+     */
+    private void evictUsersAfterCommit(List<String> emails) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            emails.forEach(userCache::removeUserFromCache);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                emails.forEach(userCache::removeUserFromCache);
+            }
+        });
+    }
+
 }
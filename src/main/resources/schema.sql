@@ -96,9 +96,9 @@ CREATE TABLE IF NOT EXISTS password_reset_tokens (
     -- Relación N:1 (un usuario puede generar varios tokens a lo largo del tiempo).
                                                      user_id BIGINT NOT NULL,
     -- Hash del token (NO el token en claro).
-    -- Recomendación profesional: guardar SHA-256 en hexadecimal (64 chars) o similar.
+    -- SHA-256 en binario (32 bytes): la mitad que en hexadecimal, igual en el índice.
     -- Así, aunque alguien lea la BD, no puede usar directamente el token para resetear.
-                                                     token_hash VARCHAR(64) NOT NULL,
+                                                     token_hash BINARY(32) NOT NULL,
     -- Momento exacto de caducidad del token (TTL).
     -- Buenas prácticas: 30–60 minutos. Tokens con caducidad corta reducen impacto ante robo del enlace.
     expires_at DATETIME NOT NULL,
@@ -120,10 +120,178 @@ CREATE TABLE IF NOT EXISTS password_reset_tokens (
     -- Índice por user_id:
     -- Acelera operaciones típicas como invalidar tokens activos de un usuario o listar tokens por usuario.
     INDEX idx_prt_user_id (user_id),
-    -- Índice por token_hash:
-    -- Acelera la validación del token cuando el usuario llega con ?token=... (se busca por hash).
-    INDEX idx_prt_token_hash (token_hash),
+    -- Índice único por token_hash:
+    -- Acelera la validación del token cuando el usuario llega con ?token=... (se busca por hash)
+    -- y garantiza que un hash identifica un solo token.
+    UNIQUE KEY uk_prt_token_hash (token_hash),
     -- Índice por expires_at:
     -- Acelera tareas de limpieza (borrar tokens caducados) y consultas por expiración.
     INDEX idx_prt_expires_at (expires_at)
     );
+
+-- Migración de token_hash de VARCHAR(64) en hexadecimal a BINARY(32) en BD existentes.
+-- Solo se altera la tabla si la columna sigue siendo VARCHAR: en BD nuevas o ya migradas
+-- los ALTER se sustituyen por DO 0 y el UPDATE no encuentra filas.
+SET @prt_hex_hash = (SELECT COUNT(*) FROM information_schema.COLUMNS
+                     WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'password_reset_tokens'
+                       AND COLUMN_NAME = 'token_hash' AND DATA_TYPE = 'varchar');
+-- 1) VARBINARY conserva los 64 caracteres hex como bytes
+SET @prt_sql = IF(@prt_hex_hash > 0,
+    'ALTER TABLE password_reset_tokens MODIFY token_hash VARBINARY(64) NOT NULL', 'DO 0');
+PREPARE prt_stmt FROM @prt_sql;
+EXECUTE prt_stmt;
+DEALLOCATE PREPARE prt_stmt;
+-- 2) hex -> 32 bytes
+UPDATE password_reset_tokens SET token_hash = UNHEX(token_hash) WHERE LENGTH(token_hash) = 64;
+-- 3) tipo definitivo
+SET @prt_sql = IF(@prt_hex_hash > 0,
+    'ALTER TABLE password_reset_tokens MODIFY token_hash BINARY(32) NOT NULL', 'DO 0');
+PREPARE prt_stmt FROM @prt_sql;
+EXECUTE prt_stmt;
+DEALLOCATE PREPARE prt_stmt;
+-- 4) el índice no único anterior se sustituye por uno único
+DROP INDEX IF EXISTS idx_prt_token_hash ON password_reset_tokens;
+CREATE UNIQUE INDEX IF NOT EXISTS uk_prt_token_hash ON password_reset_tokens (token_hash);
+
+-- Tabla de sesiones HTTP compartidas entre nodos (alternativa a las sticky sessions).
+-- Solo se usa si app.session.jdbc.enabled=true (ver JdbcHttpSessionRepository).
+CREATE TABLE IF NOT EXISTS http_sessions (
+    -- Identificador interno estable: no cambia aunque se regenere el id público (session fixation).
+    primary_id CHAR(36) NOT NULL,
+    -- Id público de la sesión (el que viaja en la cookie SESSION).
+    session_id CHAR(36) NOT NULL,
+    -- Marcas temporales en milisegundos epoch.
+    creation_time BIGINT NOT NULL,
+    last_access_time BIGINT NOT NULL,
+    -- Tiempo máximo de inactividad en segundos.
+    max_inactive_interval INT NOT NULL,
+    -- last_access_time + max_inactive_interval: permite purgar por rango de índice.
+    expiry_time BIGINT NOT NULL,
+    CONSTRAINT pk_http_sessions PRIMARY KEY (primary_id),
+    CONSTRAINT uk_http_sessions_session_id UNIQUE (session_id),
+    -- Índice para la limpieza en segundo plano de sesiones caducadas.
+    INDEX idx_http_sessions_expiry_time (expiry_time)
+    );
+
+-- Atributos de sesión: una fila por atributo para poder escribir solo los que cambian.
+CREATE TABLE IF NOT EXISTS http_session_attributes (
+    session_primary_id CHAR(36) NOT NULL,
+    attribute_name VARCHAR(200) NOT NULL,
+    -- Valor serializado con la serialización estándar de Java.
+    attribute_bytes BLOB NOT NULL,
+    CONSTRAINT pk_http_session_attributes PRIMARY KEY (session_primary_id, attribute_name),
+    CONSTRAINT fk_http_session_attributes_session
+    FOREIGN KEY (session_primary_id)
+    REFERENCES http_sessions(primary_id)
+    ON DELETE CASCADE
+    );
+
+-- Usuario autenticado de cada sesión (email en minúsculas; NULL en sesiones anónimas) para cerrar
+-- todas sus sesiones en todos los nodos, por ejemplo tras restablecer la contraseña.
+ALTER TABLE http_sessions
+    ADD COLUMN IF NOT EXISTS principal_name VARCHAR(100) NULL;
+CREATE INDEX IF NOT EXISTS idx_http_sessions_principal_name ON http_sessions (principal_name);
+
+-- Índices para el listado filtrado de administración de usuarios (UserSpecifications).
+-- El filtro por prefijo de email (LIKE 'abc%') ya usa el índice UNIQUE de users.email.
+-- Ventana de caducidad de contraseña: rango sobre password_expires_at.
+CREATE INDEX IF NOT EXISTS idx_users_password_expires_at ON users (password_expires_at);
+-- Estado de la cuenta: los filtros de booleanos suelen combinarse (p.ej. activos y bloqueados).
+CREATE INDEX IF NOT EXISTS idx_users_status_flags ON users (active, account_non_locked, email_verified);
+-- Filtro por rol: EXISTS (... WHERE role_id = ? AND user_id = u.id).
+-- La PK (user_id, role_id) no sirve para buscar por rol, este índice sí.
+CREATE INDEX IF NOT EXISTS idx_user_roles_role_user ON user_roles (role_id, user_id);
+
+-- Barrido de contraseñas caducadas (PasswordExpiryServiceImpl):
+-- UPDATE ... WHERE must_change_password = FALSE AND password_expires_at < ? ORDER BY password_expires_at LIMIT n
+-- Con este índice cada bloque recorre solo las filas pendientes en orden de caducidad.
+CREATE INDEX IF NOT EXISTS idx_users_must_change_expires ON users (must_change_password, password_expires_at);
+
+-- Email normalizado para búsquedas sin distinguir mayúsculas/minúsculas.
+-- lower(email) = ? no puede usar el índice UNIQUE de email; en su lugar se mantiene una columna
+-- calculada (PERSISTENT = almacenada) con su propio índice único y las consultas comparan
+-- email_normalized = LOWER(TRIM(?)) (la función se aplica al parámetro, no a la columna).
+-- Idempotente: se ejecuta en cada arranque sobre BD nuevas y existentes.
+ALTER TABLE users
+    ADD COLUMN IF NOT EXISTS email_normalized VARCHAR(100)
+        AS (LOWER(TRIM(email))) PERSISTENT;
+CREATE UNIQUE INDEX IF NOT EXISTS uk_users_email_normalized ON users (email_normalized);
+
+-- Auditoría de inicios de sesión (formulario y OAuth2), escrita por lotes en segundo plano
+-- por LoginAuditServiceImpl. Solo inserciones: sin FK a users para no bloquear ni fallar
+-- cuando el usuario no existe (intentos fallidos con emails inventados).
+CREATE TABLE IF NOT EXISTS login_audit (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    event_time DATETIME(3) NOT NULL,
+    -- Email (formulario) o nombre del principal OAuth2
+    username VARCHAR(100) NULL,
+    success BOOLEAN NOT NULL,
+    -- FORM, OAUTH2_GITHUB...
+    method VARCHAR(30) NOT NULL,
+    ip_address VARCHAR(45) NULL,
+    user_agent VARCHAR(255) NULL,
+    -- Tipo de excepción en los fallos (BadCredentialsException, CredentialsExpiredException...)
+    failure_reason VARCHAR(100) NULL,
+    INDEX idx_login_audit_username_time (username, event_time),
+    INDEX idx_login_audit_time (event_time)
+);
+
+-- Bandeja de salida de correo (transactional outbox): se inserta en la misma transacción que
+-- los cambios que provocan el correo y la entrega la hace MailOutboxServiceImpl en segundo plano.
+CREATE TABLE IF NOT EXISTS mail_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    recipient VARCHAR(100) NOT NULL,
+    subject_key VARCHAR(100) NOT NULL,
+    template_name VARCHAR(100) NOT NULL,
+    -- Variables de la plantilla serializadas en JSON
+    variables_json TEXT NOT NULL,
+    -- Idioma del destinatario (etiqueta BCP 47: es, en-GB...)
+    locale VARCHAR(20) NOT NULL,
+    -- PENDING, SENDING (reclamado hasta next_attempt_at), SENT o FAILED
+    status VARCHAR(10) NOT NULL DEFAULT 'PENDING',
+    attempts INT NOT NULL DEFAULT 0,
+    created_at DATETIME(3) NOT NULL,
+    next_attempt_at DATETIME(3) NOT NULL,
+    sent_at DATETIME(3) NULL,
+    last_error VARCHAR(500) NULL,
+    -- El despachador busca por estado y vencimiento, en orden de vencimiento
+    INDEX idx_mail_outbox_status_next (status, next_attempt_at)
+);
+
+-- Bloqueos con concesión para tareas programadas que deben ejecutarse en un solo nodo
+-- (ver SchedulerLock). Una fila por tarea; se adquiere con un UPDATE condicional.
+CREATE TABLE IF NOT EXISTS scheduler_locks (
+    name VARCHAR(64) PRIMARY KEY,
+    -- La tarea está bloqueada hasta este instante (o hasta que su dueño la libere)
+    locked_until DATETIME(3) NOT NULL,
+    locked_at DATETIME(3) NOT NULL,
+    -- Nodo que la tiene (host:id)
+    locked_by VARCHAR(255) NOT NULL
+);
+
+-- Cubetas de tokens compartidas entre nodos para la limitación de peticiones
+-- (solo con app.rate-limit.backend=jdbc; ver JdbcRateLimitBackend).
+CREATE TABLE IF NOT EXISTS rate_limit_buckets (
+    -- ip:<endpoint>:<ip> o email:<endpoint>:<hash del email>
+    bucket_key VARCHAR(128) PRIMARY KEY,
+    tokens DOUBLE NOT NULL,
+    -- Último relleno, en milisegundos epoch
+    refilled_at BIGINT NOT NULL,
+    -- A partir de aquí la cubeta estaría llena: la fila se puede purgar
+    expires_at DATETIME(3) NOT NULL,
+    INDEX idx_rate_limit_buckets_expires (expires_at)
+);
+
+-- Recordatorios de caducidad de contraseña ya enviados (PasswordExpiryReminderServiceImpl).
+-- Una fila por usuario y fecha de caducidad: la campaña excluye estas filas, así que al reanudarse
+-- tras una interrupción no vuelve a escribir a quien ya lo recibió, y con la contraseña cambiada
+-- (caducidad nueva) el siguiente ciclo tiene su propio recordatorio.
+CREATE TABLE IF NOT EXISTS password_expiry_reminders (
+    user_id BIGINT NOT NULL,
+    password_expires_at DATETIME NOT NULL,
+    sent_at DATETIME(3) NOT NULL,
+    PRIMARY KEY (user_id, password_expires_at),
+    -- Limpieza de los ciclos ya vencidos
+    INDEX idx_per_expires_at (password_expires_at),
+    CONSTRAINT fk_per_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
@@ -0,0 +1,91 @@
+/**
+ * Generación de la biografía por IA en streaming (formulario de perfil).
+ *
+ * El botón "Generar con IA" envía por defecto el formulario a /profile/generate-bio y espera la
+ * página completa. Si el navegador soporta fetch con lectura del cuerpo por partes, se usa en su
+ * lugar /profile/generate-bio/stream (SSE) y el texto se va escribiendo en el textarea según llega.
+ * Tras la primera generación se envía regenerate=true, para que volver a pulsar no devuelva la
+ * biografía cacheada.
+ */
+document.addEventListener('DOMContentLoaded', () => {
+    const button = document.querySelector('[data-bio-stream-url]');
+    const bio = document.getElementById('bio');
+    const errorBox = document.getElementById('bio-stream-error');
+    if (!button || !bio || !window.fetch || !window.TextDecoder || !window.ReadableStream) return;
+
+    button.addEventListener('click', async (event) => {
+        event.preventDefault();
+
+        const form = button.form;
+        const params = new URLSearchParams();
+        params.set('firstName', form.elements['firstName'].value);
+        params.set('lastName', form.elements['lastName'].value);
+        if (form.elements['_csrf']) params.set('_csrf', form.elements['_csrf'].value);
+        if (form.elements['regenerate']) params.set('regenerate', 'true');
+
+        const previousBio = bio.value;
+        let received = false;
+        let failed = false;
+        button.disabled = true;
+        errorBox.classList.add('d-none');
+
+        // Cada evento SSE: líneas "event:<nombre>" y "data:<json>" terminadas en una línea vacía
+        const handleEvent = (raw) => {
+            let name = 'message';
+            let data = '';
+            raw.split('\n').forEach((line) => {
+                if (line.startsWith('event:')) name = line.slice(6).trim();
+                else if (line.startsWith('data:')) data += line.slice(5);
+            });
+            if (!data) return;
+            const payload = JSON.parse(data);
+            if (name === 'chunk') {
+                if (!received) bio.value = '';
+                received = true;
+                bio.value += payload.text;
+            } else if (name === 'error') {
+                failed = true;
+                errorBox.textContent = payload.text;
+            }
+        };
+
+        try {
+            const response = await fetch(button.dataset.bioStreamUrl, {
+                method: 'POST',
+                body: params,
+                headers: { 'Accept': 'text/event-stream' }
+            });
+            if (!response.ok || !response.body) throw new Error('HTTP ' + response.status);
+
+            const reader = response.body.getReader();
+            const decoder = new TextDecoder();
+            let buffer = '';
+            for (;;) {
+                const { done, value } = await reader.read();
+                if (done) break;
+                buffer += decoder.decode(value, { stream: true }).replace(/\r\n/g, '\n');
+                let end;
+                while ((end = buffer.indexOf('\n\n')) >= 0) {
+                    handleEvent(buffer.slice(0, end));
+                    buffer = buffer.slice(end + 2);
+                }
+            }
+        } catch (e) {
+            failed = true;
+            errorBox.textContent = button.dataset.bioErrorMessage;
+        } finally {
+            button.disabled = false;
+        }
+
+        if (failed) {
+            if (!received) bio.value = previousBio;
+            errorBox.classList.remove('d-none');
+        } else if (!form.elements['regenerate']) {
+            const regenerate = document.createElement('input');
+            regenerate.type = 'hidden';
+            regenerate.name = 'regenerate';
+            regenerate.value = 'true';
+            form.appendChild(regenerate);
+        }
+    });
+});
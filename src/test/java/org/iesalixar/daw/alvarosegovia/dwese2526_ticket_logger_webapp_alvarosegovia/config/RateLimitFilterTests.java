@@ -0,0 +1,119 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.InMemoryRateLimitBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * El filtro solo limita los POST de login, recuperación y cambio de contraseña: por IP y, donde
+ * hay email, por email (sin distinguir mayúsculas). Al superar el límite responde 429 con
+ * {@code Retry-After} y no continúa la cadena.
+ */
+class RateLimitFilterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RateLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = filter(true);
+    }
+
+    @Test
+    void rejectsLoginPostsPastTheIpLimit() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertPassed(post("/login", "10.0.0.1", "username", "user" + i + "@test.local"));
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(post("/login", "10.0.0.1", "username", "otro@test.local"), response, chain);
+
+        assertEquals(429, response.getStatus());
+        assertEquals("20", response.getHeader("Retry-After"));
+        assertNull(chain.getRequest(), "la petición rechazada no debe seguir la cadena");
+        assertEquals(1.0, meterRegistry.get("rate_limit.rejected")
+                .tag("endpoint", "login").tag("key", "ip").counter().count());
+
+        // Otra IP tiene su propia cubeta
+        assertPassed(post("/login", "10.0.0.2", "username", "otro@test.local"));
+    }
+
+    @Test
+    void rejectsForgotPostsPastTheEmailLimitFromAnyIp() throws Exception {
+        assertPassed(post("/auth/forgot", "10.0.0.1", "email", "victima@test.local"));
+        assertPassed(post("/auth/forgot", "10.0.0.2", "email", " VICTIMA@test.local "));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(post("/auth/forgot", "10.0.0.3", "email", "Victima@Test.Local"), response, new MockFilterChain());
+
+        assertEquals(429, response.getStatus());
+        assertEquals("600", response.getHeader("Retry-After"));
+        assertEquals(1.0, meterRegistry.get("rate_limit.rejected")
+                .tag("endpoint", "forgot").tag("key", "email").counter().count());
+    }
+
+    @Test
+    void limitsResetPostsByIpUnderContextPath() throws Exception {
+        MockHttpServletRequest request = post("/app/auth/reset-password", "10.0.0.1", "token", "x");
+        request.setContextPath("/app");
+        assertPassed(request);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest second = post("/app/auth/reset-password", "10.0.0.1", "token", "y");
+        second.setContextPath("/app");
+        filter.doFilter(second, response, new MockFilterChain());
+
+        assertEquals(429, response.getStatus());
+    }
+
+    @Test
+    void passesOtherMethodsPathsAndDisabledFilter() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletRequest get = post("/login", "10.0.0.1", "username", "a@test.local");
+            get.setMethod("GET");
+            assertPassed(get);
+            assertPassed(post("/users/create", "10.0.0.1", "email", "a@test.local"));
+        }
+
+        RateLimitFilter disabled = filter(false);
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+            disabled.doFilter(post("/login", "10.0.0.1", "username", "a@test.local"), response, chain);
+            assertNotNull(chain.getRequest());
+        }
+        assertTrue(meterRegistry.find("rate_limit.rejected").counters().isEmpty());
+    }
+
+    private RateLimitFilter filter(boolean enabled) {
+        RateLimitFilter f = new RateLimitFilter(enabled, "3/PT1M", "10/PT1M", "5/PT1M", "2/PT20M", "1/PT1M");
+        ReflectionTestUtils.setField(f, "backend", new InMemoryRateLimitBackend(1_000, Duration.ofMinutes(30)));
+        ReflectionTestUtils.setField(f, "meterRegistry", meterRegistry);
+        return f;
+    }
+
+    private void assertPassed(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        assertEquals(200, response.getStatus());
+        assertSame(request, chain.getRequest());
+    }
+
+    private static MockHttpServletRequest post(String uri, String ip, String param, String value) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setRemoteAddr(ip);
+        request.setParameter(param, value);
+        return request;
+    }
+}
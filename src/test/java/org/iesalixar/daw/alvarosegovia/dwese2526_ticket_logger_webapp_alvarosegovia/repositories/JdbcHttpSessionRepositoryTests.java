@@ -0,0 +1,191 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.JdbcHttpSessionRepository.JdbcHttpSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Escrituras por diferencias, volcado por lotes del último acceso, caducidad y borrado por usuario
+ * del repositorio de sesiones JDBC. Necesita la misma base de datos que el resto de tests de contexto; los datos se
+ * revierten al terminar.
+ */
+@SpringBootTest
+@Transactional
+class JdbcHttpSessionRepositoryTests {
+
+    private static final Duration GRACE = Duration.ofSeconds(10);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JdbcHttpSessionRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new JdbcHttpSessionRepository(jdbcTemplate, new TransactionTemplate(transactionManager),
+                Duration.ofMinutes(30), GRACE);
+    }
+
+    @Test
+    void writesOnlyChangedAttributes() {
+        JdbcHttpSession session = repository.createSession();
+        session.setAttribute("a", "uno");
+        session.setAttribute("b", "dos");
+        session.setAttribute("c", "tres");
+        repository.save(session);
+        String primaryId = primaryId(session.getId());
+        assertEquals(3, attributeCount(primaryId));
+
+        // Se cambia "b" por detrás: si el guardado reescribiera todos los atributos, lo pisaría
+        jdbcTemplate.update("UPDATE http_session_attributes SET attribute_bytes = ? " +
+                        "WHERE session_primary_id = ? AND attribute_name = 'b'",
+                new SerializingConverter().convert("externo"), primaryId);
+
+        JdbcHttpSession loaded = repository.findById(session.getId());
+        loaded.setAttribute("a", "uno-bis");
+        loaded.removeAttribute("c");
+        repository.save(loaded);
+
+        JdbcHttpSession reloaded = repository.findById(session.getId());
+        assertEquals("uno-bis", reloaded.getAttribute("a"));
+        assertEquals("externo", reloaded.getAttribute("b"));
+        assertNull(reloaded.getAttribute("c"));
+        assertEquals(2, attributeCount(primaryId));
+    }
+
+    @Test
+    void lastAccessIsBufferedUntilFlush() {
+        JdbcHttpSession session = repository.createSession();
+        repository.save(session);
+        long stored = lastAccess(session.getId());
+
+        JdbcHttpSession loaded = repository.findById(session.getId());
+        Instant touched = Instant.ofEpochMilli(stored).plusSeconds(5);
+        loaded.setLastAccessedTime(touched);
+        repository.save(loaded);
+
+        assertEquals(stored, lastAccess(session.getId()), "solo el último acceso: no se escribe al momento");
+        assertEquals(touched, repository.findById(session.getId()).getLastAccessedTime(),
+                "el propio nodo ve el acceso pendiente");
+
+        repository.flushPendingAccesses();
+
+        assertEquals(touched.toEpochMilli(), lastAccess(session.getId()));
+        assertEquals(touched.plus(Duration.ofMinutes(30)).toEpochMilli(), jdbcTemplate.queryForObject(
+                "SELECT expiry_time FROM http_sessions WHERE session_id = ?", Long.class, session.getId()));
+    }
+
+    @Test
+    void expiresOnlyPastTheGraceMargin() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        String expired = saveSession(now.minus(Duration.ofMinutes(2)), Duration.ofMinutes(1));
+        // Caducada hace 3 s según la BD, pero dentro del margen de volcado de otros nodos
+        String withinGrace = saveSession(now.minus(Duration.ofSeconds(63)), Duration.ofMinutes(1));
+        String alive = saveSession(now, Duration.ofMinutes(1));
+        String expiredPrimaryId = primaryId(expired);
+
+        assertNotNull(repository.findById(withinGrace));
+
+        repository.cleanUpExpiredSessions();
+
+        assertNull(primaryIdOrNull(expired));
+        assertEquals(0, attributeCount(expiredPrimaryId), "los atributos se borran en cascada");
+        assertNotNull(primaryIdOrNull(withinGrace));
+        assertNotNull(primaryIdOrNull(alive));
+        assertNull(repository.findById(expired));
+    }
+
+    @Test
+    void deletesEverySessionOfAPrincipal() {
+        JdbcHttpSession anonymous = repository.createSession();
+        repository.save(anonymous);
+        String first = saveAuthenticatedSession("Sessions.Owner@test.local");
+        String second = saveAuthenticatedSession("sessions.owner@test.local");
+        String other = saveAuthenticatedSession("sessions.other@test.local");
+
+        assertEquals(2, repository.deleteByPrincipalName("SESSIONS.OWNER@test.local"));
+
+        assertNull(repository.findById(first));
+        assertNull(repository.findById(second));
+        assertNotNull(repository.findById(other));
+        assertNotNull(repository.findById(anonymous.getId()));
+    }
+
+    @Test
+    void loginOnAnExistingSessionRecordsThePrincipal() {
+        JdbcHttpSession session = repository.createSession();
+        repository.save(session);
+
+        JdbcHttpSession loaded = repository.findById(session.getId());
+        loaded.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY,
+                authenticatedContext("late.login@test.local"));
+        repository.save(loaded);
+
+        assertEquals(1, repository.deleteByPrincipalName("late.login@test.local"));
+        assertNull(repository.findById(session.getId()));
+    }
+
+    private String saveAuthenticatedSession(String username) {
+        JdbcHttpSession session = repository.createSession();
+        session.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY,
+                authenticatedContext(username));
+        repository.save(session);
+        return session.getId();
+    }
+
+    private static SecurityContext authenticatedContext(String username) {
+        return new SecurityContextImpl(UsernamePasswordAuthenticationToken.authenticated(
+                username, null, List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+
+    private String saveSession(Instant lastAccess, Duration maxInactive) {
+        JdbcHttpSession session = repository.createSession();
+        session.setMaxInactiveInterval(maxInactive);
+        session.setLastAccessedTime(lastAccess);
+        session.setAttribute("user", "test");
+        repository.save(session);
+        return session.getId();
+    }
+
+    private String primaryId(String sessionId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT primary_id FROM http_sessions WHERE session_id = ?", String.class, sessionId);
+    }
+
+    private String primaryIdOrNull(String sessionId) {
+        return jdbcTemplate.query("SELECT primary_id FROM http_sessions WHERE session_id = ?",
+                rs -> rs.next() ? rs.getString(1) : null, sessionId);
+    }
+
+    private int attributeCount(String primaryId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM http_session_attributes WHERE session_primary_id = ?", Integer.class, primaryId);
+    }
+
+    private long lastAccess(String sessionId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT last_access_time FROM http_sessions WHERE session_id = ?", Long.class, sessionId);
+    }
+}
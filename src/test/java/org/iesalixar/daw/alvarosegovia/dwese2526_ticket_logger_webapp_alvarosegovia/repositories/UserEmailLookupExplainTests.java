@@ -0,0 +1,107 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Las búsquedas por email deben resolverse con el índice único de {@code email_normalized}
+ * (acceso {@code const}) y no distinguir mayúsculas/minúsculas. El plan se pide sobre el SQL que
+ * genera Hibernate para cada consulta de {@link UserRepository}, capturado con un
+ * {@link StatementInspector}, no sobre una copia escrita a mano.
+ * Necesita la misma base de datos que el resto de tests de contexto; los datos se revierten al terminar.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories."
+        + "UserEmailLookupExplainTests$CapturingStatementInspector")
+@Transactional
+class UserEmailLookupExplainTests {
+
+    private static final String EMAIL = "Explain.Lookup@Test.local";
+    private static final String LOOKUP = "  explain.lookup@TEST.local ";
+    private static final Pattern USERS_ALIAS = Pattern.compile("\\bfrom users (\\w+)");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void insertUser() {
+        jdbcTemplate.update("INSERT INTO users (email, password_hash) VALUES (?, 'x')", EMAIL);
+    }
+
+    @Test
+    void normalizedLookupsUseUniqueIndex() {
+        assertConstLookup(generatedSql(() -> userRepository.findByEmail(LOOKUP)), LOOKUP);
+        assertConstLookup(generatedSql(() -> userRepository.findByEmailIgnoreCase(LOOKUP)), LOOKUP);
+        assertConstLookup(generatedSql(() -> userRepository.findIdByEmail(LOOKUP)), LOOKUP);
+        assertConstLookup(generatedSql(() -> userRepository.existsByEmail(LOOKUP)), LOOKUP);
+        assertConstLookup(generatedSql(() -> userRepository.findProfileFormByEmail(LOOKUP)), LOOKUP);
+        assertConstLookup(generatedSql(() -> userRepository.existsByEmailAndIdNot(LOOKUP, 0L)), LOOKUP, 0L);
+    }
+
+    @Test
+    void lookupsIgnoreCase() {
+        User user = userRepository.findByEmail("explain.lookup@test.LOCAL").orElseThrow();
+
+        assertEquals(EMAIL, user.getEmail());
+        assertTrue(userRepository.findByEmailIgnoreCase("EXPLAIN.LOOKUP@TEST.LOCAL").isPresent());
+        assertTrue(userRepository.existsByEmail("explain.lookup@test.local"));
+        assertFalse(userRepository.existsByEmailAndIdNot("explain.lookup@test.local", user.getId()));
+        assertEquals(List.of(EMAIL), userRepository.findExistingEmails(List.of("explain.lookup@test.local")));
+    }
+
+    /**
+     * Ejecuta la consulta y devuelve la sentencia sobre {@code users} que ha enviado Hibernate.
+     */
+    private String generatedSql(Runnable query) {
+        CapturingStatementInspector.STATEMENTS.clear();
+        query.run();
+        return CapturingStatementInspector.STATEMENTS.stream()
+                .filter(sql -> USERS_ALIAS.matcher(sql).find())
+                .reduce((first, last) -> last)
+                .orElseThrow(() -> new AssertionError("La consulta no ha generado SQL sobre users"));
+    }
+
+    private void assertConstLookup(String sql, Object... params) {
+        Matcher alias = USERS_ALIAS.matcher(sql);
+        assertTrue(alias.find());
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, params);
+
+        Map<String, Object> users = plan.stream()
+                .filter(row -> alias.group(1).equals(row.get("table")))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Sin fila de users en el plan de: " + sql));
+        assertEquals("uk_users_email_normalized", users.get("key"), sql);
+        assertEquals("const", users.get("type"), sql);
+    }
+
+    /**
+     * Guarda el SQL que prepara Hibernate sin modificarlo.
+     */
+    public static class CapturingStatementInspector implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
+
+import jakarta.persistence.EntityManager;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.Role;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.mappers.UserMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Micro-benchmark de integración: bytes asignados por página del listado de usuarios con entidades
+ * completas ({@code findAll} + {@code UserMapper}) frente a la proyección de columnas mínimas.
+ * Necesita la misma base de datos que el resto de tests de contexto; los datos se revierten al terminar.
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@Transactional
+class UserListProjectionBenchmarkTests {
+
+    private static final int USERS = 300;
+    private static final int ITERATIONS = 20;
+    private static final Pageable PAGE = PageRequest.of(0, 100, Sort.by("email"));
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void projectionAllocatesLessPerPageThanEntities() {
+        Role role = new Role("ROLE_BENCH_TEST", "Bench test", null);
+        entityManager.persist(role);
+        String hash = "$2a$10$" + "x".repeat(493); // password_hash a tamaño completo (500)
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setEmail(String.format("bench-%04d@test.local", i));
+            user.setPasswordHash(hash);
+            user.setActive(true);
+            user.setAccountNonLocked(true);
+            user.setRoles(Set.of(role));
+            entityManager.persist(user);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Runnable entities = () -> userRepository.findAll(PAGE).map(UserMapper::toDTO).getContent();
+        Runnable projection = () -> userRepository.findListRowsFiltered(null, PAGE).getContent();
+
+        // Calentamiento (JIT y caché de planes de consulta)
+        measure(entities);
+        measure(projection);
+
+        long entityBytes = measure(entities);
+        long projectionBytes = measure(projection);
+        assertTrue(projectionBytes < entityBytes,
+                "La proyección debería asignar menos memoria por página que las entidades completas (entidades="
+                        + entityBytes + " B, proyección=" + projectionBytes + " B)");
+    }
+
+    /**
+     * Bytes asignados por el hilo actual por iteración (media), limpiando el contexto de persistencia.
+     */
+    private long measure(Runnable pageLoad) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            pageLoad.run();
+            total += threads.getThreadAllocatedBytes(threadId) - before;
+            entityManager.clear();
+        }
+        return total / ITERATIONS;
+    }
+}
@@ -0,0 +1,63 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserDetailDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.Role;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.User;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.entities.UserProfile;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.mappers.UserMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Regresión: el detalle de usuario (usuario + perfil + roles) debe resolverse con una sola sentencia SQL.
+ * Necesita la misma base de datos que el resto de tests de contexto; los datos se revierten al terminar.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class UserRepositoryStatementCountTests {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void findDetailByIdLoadsProfileAndRolesInOneStatement() {
+        Role role = new Role("ROLE_STMT_TEST", "Statement test", null);
+        entityManager.persist(role);
+
+        User user = new User();
+        user.setEmail("stmt-count@test.local");
+        user.setPasswordHash("x");
+        user.setActive(true);
+        user.setAccountNonLocked(true);
+        user.setRoles(Set.of(role));
+        entityManager.persist(user);
+        entityManager.persist(new UserProfile(user, "Stmt", "Count", null, null, null, "es"));
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        UserDetailDTO dto = UserMapper.toDetailDTO(userRepository.findDetailById(user.getId()).orElseThrow());
+
+        assertEquals("Stmt", dto.getFirstName());
+        assertEquals(Set.of("ROLE_STMT_TEST"), dto.getRoles());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,86 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.session.SessionIdChangedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Alta, baja, cambio de id y límite de tamaño del registro de sesiones.
+ */
+class BoundedSessionRegistryTests {
+
+    private static UserDetails user(String email) {
+        return User.withUsername(email).password("x").roles("USER").build();
+    }
+
+    @Test
+    void tracksSessionsPerUserAndExpiresThem() {
+        BoundedSessionRegistry registry = new BoundedSessionRegistry(100, Duration.ofMinutes(30));
+        registry.registerNewSession("s1", user("Ana@Test.local"));
+        registry.registerNewSession("s2", user("ana@test.local"));
+        registry.registerNewSession("s3", user("bob@test.local"));
+
+        assertEquals(3, registry.getSessionCount());
+        assertEquals(2, registry.getUserCount());
+        assertEquals(2, registry.getAllSessions("ANA@test.local", false).size());
+
+        assertEquals(2, registry.expireUserSessions("ana@test.local"));
+        assertTrue(registry.getAllSessions("ana@test.local", false).isEmpty());
+        assertEquals(2, registry.getAllSessions("ana@test.local", true).size());
+
+        registry.removeSessionInformation("s1");
+        registry.removeSessionInformation("s2");
+        assertEquals(1, registry.getSessionCount());
+        assertEquals(1, registry.getUserCount());
+    }
+
+    @Test
+    void followsSessionIdChanges() {
+        BoundedSessionRegistry registry = new BoundedSessionRegistry(100, Duration.ofMinutes(30));
+        registry.registerNewSession("old", user("ana@test.local"));
+
+        registry.onApplicationEvent(new SessionIdChangedEvent("old") {
+            @Override
+            public String getOldSessionId() {
+                return "old";
+            }
+
+            @Override
+            public String getNewSessionId() {
+                return "new";
+            }
+        });
+
+        assertNull(registry.getSessionInformation("old"));
+        SessionInformation info = registry.getSessionInformation("new");
+        assertNotNull(info);
+        assertEquals(1, registry.getSessionCount());
+    }
+
+    @Test
+    void doesNotGrowBeyondMaxSize() {
+        BoundedSessionRegistry registry = new BoundedSessionRegistry(2, Duration.ofMinutes(30));
+        registry.registerNewSession("s1", user("a@test.local"));
+        registry.registerNewSession("s2", user("b@test.local"));
+        registry.registerNewSession("s3", user("c@test.local"));
+
+        assertEquals(2, registry.getSessionCount());
+        assertNull(registry.getSessionInformation("s3"));
+    }
+
+    @Test
+    void purgesIdleSessions() {
+        BoundedSessionRegistry registry = new BoundedSessionRegistry(2, Duration.ZERO.minusSeconds(1));
+        registry.registerNewSession("s1", user("a@test.local"));
+
+        assertEquals(1, registry.purgeStaleSessions());
+        assertEquals(0, registry.getSessionCount());
+        assertEquals(0, registry.getUserCount());
+    }
+}
@@ -0,0 +1,42 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * La caché debe sobrevivir al borrado de credenciales que hace Spring Security tras el login.
+ */
+class CaffeineUserCacheTests {
+
+    private final CaffeineUserCache cache = new CaffeineUserCache(Duration.ofMinutes(5), 100);
+
+    @Test
+    void erasingCredentialsOfReturnedUserDoesNotAffectCachedEntry() {
+        cache.putUserInCache(User.withUsername("Ana@Test.local").password("hash").roles("USER").build());
+
+        UserDetails first = cache.getUserFromCache("ana@test.local");
+        ((User) first).eraseCredentials();
+
+        UserDetails second = cache.getUserFromCache("ana@test.local");
+        assertNull(first.getPassword());
+        assertEquals("hash", second.getPassword());
+    }
+
+    @Test
+    void removeAndClearEvictEntries() {
+        cache.putUserInCache(User.withUsername("a@test.local").password("x").roles("USER").build());
+        cache.putUserInCache(User.withUsername("b@test.local").password("x").roles("USER").build());
+
+        cache.removeUserFromCache("A@test.local");
+        assertNull(cache.getUserFromCache("a@test.local"));
+        assertNotNull(cache.getUserFromCache("b@test.local"));
+
+        cache.clear();
+        assertNull(cache.getUserFromCache("b@test.local"));
+    }
+}
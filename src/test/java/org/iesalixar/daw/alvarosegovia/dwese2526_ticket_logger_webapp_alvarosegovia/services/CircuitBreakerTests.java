@@ -0,0 +1,136 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.CircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * El circuito debe abrirse al superar el porcentaje de fallos de la ventana, rechazar mientras
+ * está abierto y, pasado el plazo, cerrarse o reabrirse según las llamadas de prueba, sin contar
+ * como prueba el resultado de una llamada admitida antes de abrirse.
+ */
+class CircuitBreakerTests {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    // Ventana de 4, mínimo 2 llamadas, abre con >= 50 % de fallos, 10 s abierto, 2 pruebas
+    private final CircuitBreaker breaker =
+            new CircuitBreaker("test", 4, 2, 50, Duration.ofSeconds(10), 2, now::get);
+
+    private void call(boolean fail) {
+        long permission = acquire();
+        if (fail) breaker.onFailure(permission); else breaker.onSuccess(permission);
+    }
+
+    private long acquire() {
+        long permission = breaker.tryAcquirePermission();
+        assertNotEquals(CircuitBreaker.NO_PERMISSION, permission);
+        return permission;
+    }
+
+    private boolean rejected() {
+        return breaker.tryAcquirePermission() == CircuitBreaker.NO_PERMISSION;
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        call(false);
+        call(false);
+        call(false);
+        call(true);
+        assertEquals(State.CLOSED, breaker.getState(), "1 de 4 fallos");
+
+        // La ventana desliza: las 3 últimas buenas se van sustituyendo por fallos
+        call(true);
+        assertEquals(State.OPEN, breaker.getState(), "2 de 4 fallos");
+        assertTrue(rejected());
+    }
+
+    @Test
+    void waitsForMinimumCalls() {
+        call(true);
+        assertEquals(State.CLOSED, breaker.getState());
+        call(true);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenProbesCloseTheCircuit() {
+        call(true);
+        call(true);
+
+        now.addAndGet(9_999);
+        assertTrue(rejected());
+        now.addAndGet(1);
+
+        long probe1 = acquire();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        long probe2 = acquire();
+        assertTrue(rejected(), "solo 2 llamadas de prueba");
+
+        breaker.onSuccess(probe1);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(probe2);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        // Ventana vacía tras cerrarse: un fallo no basta para reabrir
+        call(true);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failedProbeReopens() {
+        call(true);
+        call(true);
+        now.addAndGet(10_000);
+
+        breaker.onFailure(acquire());
+        assertEquals(State.OPEN, breaker.getState());
+        assertTrue(rejected(), "vuelve a esperar el plazo completo");
+    }
+
+    @Test
+    void ignoredProbeIsReturned() {
+        call(true);
+        call(true);
+        now.addAndGet(10_000);
+
+        long probe = acquire();
+        acquire();
+        assertTrue(rejected());
+
+        breaker.onIgnored(probe);
+        acquire();
+    }
+
+    @Test
+    void callAdmittedBeforeOpenDoesNotCountAsProbe() {
+        long slowSuccess1 = acquire();
+        long slowSuccess2 = acquire();
+        long slowFailure = acquire();
+        call(true);
+        call(true);
+        assertEquals(State.OPEN, breaker.getState());
+        now.addAndGet(10_000);
+
+        long probe = acquire();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // Las llamadas admitidas en CLOSED terminan ahora: no cierran ni reabren el circuito
+        breaker.onSuccess(slowSuccess1);
+        breaker.onSuccess(slowSuccess2);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onFailure(slowFailure);
+        breaker.onIgnored(slowFailure);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // Siguen quedando las pruebas reales
+        long probe2 = acquire();
+        breaker.onSuccess(probe);
+        breaker.onSuccess(probe2);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,419 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config.DeadlineClientHttpRequestFactory;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.config.GeminiClientConfig;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.exeptions.ExternalServiceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cliente de Gemini contra un servidor HTTP local que simula la API: reutilización de conexiones
+ * del pool, cada uno de los timeouts (lectura, total y espera de conexión libre) convertidos en
+ * {@link ExternalServiceException} 503 sin retener el hilo más de lo configurado, la entrega
+ * de fragmentos en streaming según llegan, la caché de biografías y el circuit breaker y bulkhead
+ * que cortan las llamadas cuando Gemini está degradado.
+ */
+class GeminiServiceImplTests {
+
+    private static final String OK_BODY =
+            "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\" Biografía generada \"}]}}]}";
+
+    private HttpServer server;
+    private final List<Integer> remotePorts = new CopyOnWriteArrayList<>();
+    private volatile String mode = "ok";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private DeadlineClientHttpRequestFactory requestFactory;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1beta/models/test-model:generateContent", this::handle);
+        server.createContext("/v1beta/models/test-model:streamGenerateContent", this::handleStream);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        if (requestFactory != null) requestFactory.destroy();
+        if (httpClient != null) httpClient.close();
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        remotePorts.add(exchange.getRemoteAddress().getPort());
+        exchange.getRequestBody().readAllBytes();
+        try {
+            if (!"key=test-key".equals(exchange.getRequestURI().getRawQuery())) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            byte[] body = OK_BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            switch (mode) {
+                case "slow" -> {
+                    Thread.sleep(1_500);
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+                case "drip" -> {
+                    // Un byte cada 100 ms: nunca salta el timeout de lectura, solo el total
+                    exchange.sendResponseHeaders(200, 0);
+                    OutputStream out = exchange.getResponseBody();
+                    for (byte b : body) {
+                        out.write(b);
+                        out.flush();
+                        Thread.sleep(100);
+                    }
+                }
+                default -> {
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+            // El cliente abortó la petición
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** Tres eventos SSE separados 300 ms, como hace Gemini con {@code alt=sse}. */
+    private void handleStream(HttpExchange exchange) throws IOException {
+        remotePorts.add(exchange.getRemoteAddress().getPort());
+        exchange.getRequestBody().readAllBytes();
+        try {
+            if (!"alt=sse&key=test-key".equals(exchange.getRequestURI().getRawQuery())) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            if ("malformed".equals(mode)) {
+                out.write("data: {\"candidates\":[\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            for (String text : List.of(" Ana es", " desarrolladora", "\\nJava.")) {
+                String event = "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + text + "\"}]}}]}\r\n\r\n";
+                out.write(event.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(300);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+            // El cliente abortó la petición
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private GeminiServiceImpl service(int maxConnections, Duration readTimeout, Duration totalTimeout,
+                                      Duration poolWaitTimeout) {
+        GeminiClientConfig config = new GeminiClientConfig();
+        connectionManager = config.geminiConnectionManager(
+                maxConnections, Duration.ofSeconds(1), readTimeout, meterRegistry);
+        httpClient = config.geminiHttpClient(connectionManager, poolWaitTimeout, readTimeout, Duration.ofSeconds(30));
+        requestFactory = config.geminiRequestFactory(httpClient, totalTimeout);
+        RestTemplate restTemplate = config.geminiRestTemplate(new RestTemplateBuilder(), requestFactory);
+
+        GeminiServiceImpl service = new GeminiServiceImpl(meterRegistry, Duration.ofMinutes(5), 100, 0.5);
+        ReflectionTestUtils.setField(service, "restTemplate", restTemplate);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "circuitBreaker",
+                new CircuitBreaker("gemini", 20, 10, 50, Duration.ofSeconds(30), 2));
+        ReflectionTestUtils.setField(service, "bulkhead", new Bulkhead(10, Duration.ofMillis(200)));
+        ReflectionTestUtils.setField(service, "apiKey", "test-key");
+        ReflectionTestUtils.setField(service, "baseUrl",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1beta");
+        ReflectionTestUtils.setField(service, "model", "test-model");
+        return service;
+    }
+
+    @Test
+    void reusesPooledConnection() {
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+
+        assertEquals("Biografía generada", service.generateBiography("Ana", "Java"));
+        assertEquals("Biografía generada", service.generateBiography("Luis", "SQL"));
+
+        assertEquals(2, remotePorts.size());
+        assertEquals(remotePorts.get(0), remotePorts.get(1), "la segunda llamada debe reutilizar la conexión");
+
+        Gauge max = meterRegistry.find("httpcomponents.httpclient.pool.total.max")
+                .tag("httpclient", "gemini").gauge();
+        assertNotNull(max);
+        assertEquals(4, max.value());
+    }
+
+    @Test
+    void readTimeoutFailsWith503() {
+        mode = "slow";
+        GeminiServiceImpl service = service(4, Duration.ofMillis(300), Duration.ofSeconds(10), Duration.ofSeconds(1));
+
+        long start = System.nanoTime();
+        ExternalServiceException ex = assertThrows(ExternalServiceException.class,
+                () -> service.generateBiography("Ana", "Java"));
+        assertEquals(503, ex.getStatus());
+        assertTrue(elapsedMs(start) < 1_200, "debe cortar en el timeout de lectura");
+    }
+
+    @Test
+    void totalTimeoutAbortsSlowDrip() {
+        mode = "drip";
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(1), Duration.ofMillis(800), Duration.ofSeconds(1));
+
+        long start = System.nanoTime();
+        ExternalServiceException ex = assertThrows(ExternalServiceException.class,
+                () -> service.generateBiography("Ana", "Java"));
+        assertEquals(503, ex.getStatus());
+        assertTrue(elapsedMs(start) < 2_500, "debe cortar en el timeout total");
+
+        // La conexión abortada no vuelve al pool
+        mode = "ok";
+        assertEquals("Biografía generada", service.generateBiography("Ana", "Java"));
+    }
+
+    @Test
+    void finishedCallsCancelTheirDeadline() throws Exception {
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+        ScheduledThreadPoolExecutor scheduler =
+                (ScheduledThreadPoolExecutor) ReflectionTestUtils.getField(requestFactory, "scheduler");
+
+        service.generateBiography("Ana", "Java");
+        service.streamBiography("Luis", "SQL", false, chunk -> { });
+        assertTrue(scheduler.getQueue().isEmpty(), "los abortos de las llamadas terminadas no deben quedar pendientes");
+
+        requestFactory.destroy();
+        assertTrue(scheduler.isShutdown());
+    }
+
+    @Test
+    void exhaustedPoolFailsFast() throws Exception {
+        mode = "slow";
+        GeminiServiceImpl service = service(1, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofMillis(200));
+
+        CompletableFuture<String> busy = CompletableFuture.supplyAsync(() -> service.generateBiography("Ana", "Java"));
+        // Espera a que la primera llamada ocupe la única conexión
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (remotePorts.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        long start = System.nanoTime();
+        ExternalServiceException ex = assertThrows(ExternalServiceException.class,
+                () -> service.generateBiography("Luis", "SQL"));
+        assertEquals(503, ex.getStatus());
+        assertTrue(elapsedMs(start) < 1_000, "debe fallar en el timeout de espera del pool");
+
+        assertEquals("Biografía generada", busy.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void streamsChunksAsTheyArrive() {
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        List<Long> arrivals = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        service.streamBiography("Ana", "Java", false, chunk -> {
+            chunks.add(chunk);
+            arrivals.add(elapsedMs(start));
+        });
+
+        assertEquals(List.of("Ana es", " desarrolladora", "\nJava."), chunks);
+        assertTrue(arrivals.get(0) < 300, "el primer fragmento no debe esperar al resto: " + arrivals);
+        assertTrue(elapsedMs(start) >= 600);
+    }
+
+    @Test
+    void consumerFailureAbortsStream() {
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+
+        IllegalStateException gone = new IllegalStateException("cliente desconectado");
+        long start = System.nanoTime();
+        IllegalStateException ex = assertThrows(IllegalStateException.class,
+                () -> service.streamBiography("Ana", "Java", false, chunk -> { throw gone; }));
+        assertSame(gone, ex);
+        assertTrue(elapsedMs(start) < 300, "no debe seguir leyendo el stream");
+    }
+
+    @Test
+    void malformedStreamEventFailsWith502() {
+        mode = "malformed";
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+
+        ExternalServiceException ex = assertThrows(ExternalServiceException.class,
+                () -> service.streamBiography("Ana", "Java", false, chunk -> { }));
+        assertEquals(502, ex.getStatus(), "una respuesta ilegible no es un fallo de red");
+    }
+
+    @Test
+    void cachesBiographyByNormalizedPrompt() {
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+
+        assertEquals("Biografía generada", service.generateBiography("Ana García", "Java"));
+        assertEquals("Biografía generada", service.generateBiography("  ana   GARCÍA ", "java"));
+        assertEquals(1, remotePorts.size(), "la segunda llamada debe salir de la caché");
+
+        // Regenerar ignora la caché
+        service.generateBiography("Ana García", "Java", true);
+        assertEquals(2, remotePorts.size());
+
+        // La versión en streaming comparte la caché: un único fragmento sin llamar a Gemini
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        service.streamBiography("Ana García", "Java", false, chunks::add);
+        assertEquals(List.of("Biografía generada"), chunks);
+        assertEquals(2, remotePorts.size());
+
+        assertEquals(2, meterRegistry.get("gemini.biography.cache.saved_calls").counter().count());
+        assertEquals(1.0, meterRegistry.get("gemini.biography.cache.saved_cost").counter().count());
+        assertEquals(1, meterRegistry.get("cache.size").tag("cache", "gemini.biographies").gauge().value());
+    }
+
+    @Test
+    void concurrentRequestsShareOneCall() throws Exception {
+        mode = "slow";
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> service.generateBiography("Ana", "Java"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (remotePorts.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals("Biografía generada", service.generateBiography("Ana", "Java"));
+        assertEquals("Biografía generada", first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, remotePorts.size(), "la segunda petición debe esperar a la llamada en curso");
+        assertEquals(1, meterRegistry.get("gemini.biography.cache.saved_calls").counter().count());
+    }
+
+    @Test
+    void failedGenerationIsNotCached() {
+        mode = "slow";
+        GeminiServiceImpl service = service(4, Duration.ofMillis(300), Duration.ofSeconds(10), Duration.ofSeconds(1));
+        assertThrows(ExternalServiceException.class, () -> service.generateBiography("Ana", "Java"));
+
+        mode = "ok";
+        assertEquals("Biografía generada", service.generateBiography("Ana", "Java"));
+        assertEquals(2, remotePorts.size());
+    }
+
+    @Test
+    void errorDuringGenerationDoesNotLeaveWaitersHanging() {
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+        RestTemplate restTemplate = (RestTemplate) ReflectionTestUtils.getField(service, "restTemplate");
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            throw new AssertionError("fallo simulado");
+        });
+        assertThrows(AssertionError.class, () -> service.generateBiography("Ana", "Java"));
+
+        restTemplate.getInterceptors().clear();
+        String bio = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> service.generateBiography("Ana", "Java"));
+        assertEquals("Biografía generada", bio);
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    void streamedBiographyIsCached() {
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+
+        service.streamBiography("Ana", "Java", false, chunk -> { });
+        assertEquals("Ana es desarrolladora\nJava.", service.generateBiography("Ana", "Java"));
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    void openCircuitFailsFastWithoutCallingGemini() {
+        mode = "slow";
+        GeminiServiceImpl service = service(4, Duration.ofMillis(300), Duration.ofSeconds(10), Duration.ofSeconds(1));
+        CircuitBreaker breaker = new CircuitBreaker("gemini", 4, 2, 50, Duration.ofHours(1), 1);
+        ReflectionTestUtils.setField(service, "circuitBreaker", breaker);
+
+        assertThrows(ExternalServiceException.class, () -> service.generateBiography("Ana", "Java"));
+        assertThrows(ExternalServiceException.class, () -> service.generateBiography("Luis", "SQL"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        long start = System.nanoTime();
+        ExternalServiceException ex = assertThrows(ExternalServiceException.class,
+                () -> service.generateBiography("Eva", "Python"));
+        assertEquals(503, ex.getStatus());
+        assertTrue(elapsedMs(start) < 100, "con el circuito abierto no se espera a Gemini");
+        assertEquals(2, remotePorts.size());
+        assertEquals(1, meterRegistry.get("gemini.calls.rejected").tag("reason", "circuit_open").counter().count());
+    }
+
+    @Test
+    void clientErrorsDoNotOpenCircuit() {
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+        CircuitBreaker breaker = new CircuitBreaker("gemini", 4, 2, 50, Duration.ofHours(1), 1);
+        ReflectionTestUtils.setField(service, "circuitBreaker", breaker);
+        ReflectionTestUtils.setField(service, "apiKey", "wrong-key");
+
+        for (int i = 0; i < 3; i++) {
+            ExternalServiceException ex = assertThrows(ExternalServiceException.class,
+                    () -> service.generateBiography("Ana", "Java", true));
+            assertEquals(403, ex.getStatus());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void fullBulkheadRejectsExtraCalls() throws Exception {
+        mode = "slow";
+        GeminiServiceImpl service = service(4, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(service, "bulkhead", new Bulkhead(1, Duration.ofMillis(100)));
+
+        CompletableFuture<String> busy = CompletableFuture.supplyAsync(() -> service.generateBiography("Ana", "Java"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (remotePorts.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        long start = System.nanoTime();
+        ExternalServiceException ex = assertThrows(ExternalServiceException.class,
+                () -> service.generateBiography("Luis", "SQL"));
+        assertEquals(503, ex.getStatus());
+        assertTrue(elapsedMs(start) < 1_000, "debe fallar tras max-wait");
+        assertEquals(1, meterRegistry.get("gemini.calls.rejected").tag("reason", "bulkhead_full").counter().count());
+
+        assertEquals("Biografía generada", busy.get(5, TimeUnit.SECONDS));
+        assertEquals(1, remotePorts.size());
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,93 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.RateLimitBackend.BucketSpec;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * La cubeta en memoria debe admitir la ráfaga configurada, rellenarse con el tiempo y no
+ * conceder más tokens de los disponibles con peticiones concurrentes.
+ */
+class InMemoryRateLimitBackendTests {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final InMemoryRateLimitBackend backend =
+            new InMemoryRateLimitBackend(1_000, Duration.ofMinutes(30), now::get);
+
+    @Test
+    void parsesSpec() {
+        BucketSpec spec = BucketSpec.parse("5/PT1M");
+        assertEquals(5, spec.capacity());
+        assertEquals(Duration.ofMinutes(1), spec.refillPeriod());
+        assertThrows(IllegalArgumentException.class, () -> BucketSpec.parse("5"));
+    }
+
+    @Test
+    void allowsBurstThenRejectsWithWait() {
+        BucketSpec spec = BucketSpec.parse("3/PT3S");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, backend.tryConsume("k", spec));
+        }
+        long wait = backend.tryConsume("k", spec);
+        assertEquals(1_000, wait);
+
+        // Otra clave tiene su propia cubeta
+        assertEquals(0, backend.tryConsume("other", spec));
+    }
+
+    @Test
+    void refillsOverTime() {
+        BucketSpec spec = BucketSpec.parse("2/PT2S");
+        assertEquals(0, backend.tryConsume("k", spec));
+        assertEquals(0, backend.tryConsume("k", spec));
+        assertTrue(backend.tryConsume("k", spec) > 0);
+
+        now.addAndGet(500);
+        assertEquals(500, backend.tryConsume("k", spec));
+
+        now.addAndGet(500);
+        assertEquals(0, backend.tryConsume("k", spec));
+        assertTrue(backend.tryConsume("k", spec) > 0);
+
+        // Tras mucho tiempo no se acumulan más tokens que la capacidad
+        now.addAndGet(60_000);
+        assertEquals(0, backend.tryConsume("k", spec));
+        assertEquals(0, backend.tryConsume("k", spec));
+        assertTrue(backend.tryConsume("k", spec) > 0);
+    }
+
+    @Test
+    void concurrentConsumersNeverExceedCapacity() throws Exception {
+        BucketSpec spec = BucketSpec.parse("50/PT1H");
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger allowed = new AtomicInteger();
+        try {
+            for (int t = 0; t < threads; t++) {
+                pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 100; i++) {
+                        if (backend.tryConsume("shared", spec) == 0) allowed.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(50, allowed.get());
+    }
+}
@@ -0,0 +1,123 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services.RateLimitBackend.BucketSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cubetas compartidas en {@code rate_limit_buckets}: ráfaga, relleno con el tiempo (se simula
+ * retrasando {@code refilled_at}), consumo concurrente sin conceder tokens de más y purga.
+ * Cada consumo se confirma en su propia transacción, así que las filas de prueba se borran al terminar.
+ * Necesita la misma base de datos que el resto de tests de contexto.
+ */
+@SpringBootTest(properties = "app.rate-limit.backend=jdbc")
+class JdbcRateLimitBackendTests {
+
+    private static final String PREFIX = "test:jdbc-rate-limit:";
+
+    @Autowired
+    private JdbcRateLimitBackend backend;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM rate_limit_buckets WHERE bucket_key LIKE ?", PREFIX + "%");
+    }
+
+    @Test
+    void allowsBurstThenRefillsOverTime() {
+        String key = PREFIX + "refill";
+        BucketSpec spec = BucketSpec.parse("2/PT2M");
+        assertEquals(0, backend.tryConsume(key, spec));
+        assertEquals(0, backend.tryConsume(key, spec));
+
+        long wait = backend.tryConsume(key, spec);
+        assertTrue(wait > 59_000 && wait <= 60_000, "un token cada 60 s, no " + wait);
+
+        // Medio periodo de token: sigue sin haber uno entero
+        age(key, 30_000);
+        wait = backend.tryConsume(key, spec);
+        assertTrue(wait > 29_000 && wait <= 30_000, "faltan unos 30 s, no " + wait);
+
+        age(key, 30_000);
+        assertEquals(0, backend.tryConsume(key, spec));
+        assertTrue(backend.tryConsume(key, spec) > 0);
+
+        // Tras mucho tiempo no se acumulan más tokens que la capacidad
+        age(key, 3_600_000);
+        assertEquals(0, backend.tryConsume(key, spec));
+        assertEquals(0, backend.tryConsume(key, spec));
+        assertTrue(backend.tryConsume(key, spec) > 0);
+    }
+
+    @Test
+    void concurrentConsumersNeverExceedCapacity() throws Exception {
+        // Sin deadlocks ni tokens de más aunque la fila se cree y se consuma a la vez desde varios hilos
+        String key = PREFIX + "shared";
+        BucketSpec spec = BucketSpec.parse("20/PT1H");
+        int threads = 6;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger allowed = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 10; i++) {
+                        if (backend.tryConsume(key, spec) == 0) allowed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+            for (Future<?> worker : workers) {
+                worker.get(); // propaga cualquier error de BD de los hilos
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(20, allowed.get());
+    }
+
+    @Test
+    void purgeDeletesOnlyExpiredBuckets() {
+        BucketSpec spec = BucketSpec.parse("5/PT1M");
+        backend.tryConsume(PREFIX + "expired", spec);
+        backend.tryConsume(PREFIX + "alive", spec);
+        jdbcTemplate.update("UPDATE rate_limit_buckets SET expires_at = NOW() - INTERVAL 1 MINUTE WHERE bucket_key = ?",
+                PREFIX + "expired");
+
+        backend.purgeExpired();
+
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM rate_limit_buckets WHERE bucket_key LIKE ?", Integer.class, PREFIX + "%"));
+        assertEquals(0, backend.tryConsume(PREFIX + "alive", spec));
+    }
+
+    /**
+     * Simula el paso del tiempo retrasando el último relleno de la cubeta.
+     */
+    private void age(String key, long millis) {
+        jdbcTemplate.update("UPDATE rate_limit_buckets SET refilled_at = refilled_at - ? WHERE bucket_key = ?",
+                millis, key);
+    }
+}
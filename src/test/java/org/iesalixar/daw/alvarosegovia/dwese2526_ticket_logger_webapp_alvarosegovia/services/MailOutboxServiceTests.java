@@ -0,0 +1,138 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Entrega de la bandeja de salida contra un SMTP local (GreenMail).
+ * Necesita la misma base de datos que el resto de tests de contexto; las filas creadas se borran al terminar.
+ */
+@SpringBootTest(properties = {
+        "spring.mail.host=127.0.0.1",
+        "spring.mail.port=3025",
+        "spring.mail.username=",
+        "spring.mail.password=",
+        "spring.mail.from=noreply@test.local",
+        "spring.mail.properties.mail.smtp.auth=false",
+        "spring.mail.properties.mail.smtp.starttls.enable=false",
+        "spring.mail.properties.mail.smtp.starttls.required=false",
+        "app.mail.outbox.poll-interval=PT1H"
+})
+class MailOutboxServiceTests {
+
+    private static final String RECIPIENT = "outbox.test@test.local";
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Autowired
+    private MailOutboxService mailOutboxService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM mail_outbox WHERE recipient = ?", RECIPIENT);
+    }
+
+    @Test
+    void committedMessageIsDeliveredAndMarkedSent() throws Exception {
+        Long id = new TransactionTemplate(transactionManager).execute(status -> mailOutboxService.enqueueTemplate(
+                RECIPIENT, "mail.passwordreset.subject", "mail/password-reset",
+                Map.of("resetUrl", "http://localhost/reset?token=abc", "ttlMinutes", 30), Locale.ENGLISH));
+
+        // El aviso tras el commit puede adelantarse a esta llamada: lo que importa es que llegue una vez
+        mailOutboxService.dispatchPending();
+
+        assertTrue(greenMail.waitForIncomingEmail(5000, 1));
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(1, received.length);
+        assertEquals(RECIPIENT, received[0].getAllRecipients()[0].toString());
+
+        // Si lo ha enviado el despachador en segundo plano, marca la fila justo después de la entrega
+        assertEquals("SENT", awaitStatus(id, "SENT", Duration.ofSeconds(5)));
+        // El enlace con el token no se queda guardado tras la entrega
+        assertEquals("{}", jdbcTemplate.queryForObject(
+                "SELECT variables_json FROM mail_outbox WHERE id = ?", String.class, id));
+    }
+
+    @Test
+    void purgeDeletesOnlyFinishedRowsPastRetention() {
+        LocalDateTime old = LocalDateTime.now().minusDays(30);
+        LocalDateTime recent = LocalDateTime.now().minusMinutes(5);
+        insertRow("SENT", old);
+        insertRow("FAILED", old);
+        insertRow("SENT", recent);
+        insertRow("PENDING", old);
+
+        mailOutboxService.purgeFinished();
+
+        assertEquals(List.of("PENDING", "SENT"), jdbcTemplate.queryForList(
+                "SELECT status FROM mail_outbox WHERE recipient = ? ORDER BY status", String.class, RECIPIENT));
+    }
+
+    private void insertRow(String status, LocalDateTime lastAttempt) {
+        jdbcTemplate.update("INSERT INTO mail_outbox (recipient, subject_key, template_name, variables_json, locale, "
+                        + "status, attempts, created_at, next_attempt_at) VALUES (?, 's', 't', '{}', 'es', ?, 1, ?, ?)",
+                RECIPIENT, status, Timestamp.valueOf(lastAttempt), Timestamp.valueOf(lastAttempt));
+    }
+
+    @Test
+    void rolledBackMessageIsNeverSent() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            mailOutboxService.enqueueTemplate(RECIPIENT, "mail.passwordreset.subject", "mail/password-reset",
+                    Map.of("resetUrl", "http://localhost/reset?token=abc", "ttlMinutes", 30), Locale.ENGLISH);
+            status.setRollbackOnly();
+        });
+
+        mailOutboxService.dispatchPending();
+
+        assertEquals(0, greenMail.getReceivedMessages().length);
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM mail_outbox WHERE recipient = ?", Integer.class, RECIPIENT));
+    }
+
+    private String awaitStatus(Long id, String expected, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        String status;
+        do {
+            status = jdbcTemplate.queryForObject("SELECT status FROM mail_outbox WHERE id = ?", String.class, id);
+            if (expected.equals(status)) return status;
+            Thread.sleep(50);
+        } while (System.nanoTime() < deadline);
+        return status;
+    }
+
+    @Test
+    void backoffDoublesUpToTheCap() {
+        Duration initial = Duration.ofSeconds(30);
+        Duration max = Duration.ofHours(1);
+
+        assertEquals(Duration.ofSeconds(30), MailOutboxServiceImpl.backoff(1, initial, max));
+        assertEquals(Duration.ofSeconds(60), MailOutboxServiceImpl.backoff(2, initial, max));
+        assertEquals(Duration.ofMinutes(4), MailOutboxServiceImpl.backoff(4, initial, max));
+        assertEquals(max, MailOutboxServiceImpl.backoff(20, initial, max));
+    }
+}
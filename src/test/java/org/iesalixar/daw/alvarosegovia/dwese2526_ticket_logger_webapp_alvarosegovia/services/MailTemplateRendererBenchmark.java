@@ -0,0 +1,91 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark JMH del renderizado de correos: Thymeleaf completo en cada envío frente a
+ * {@link MailTemplateRenderer} con caché por idioma.
+ * <p>
+ * {@link MailTemplateRendererJmhTest} lo ejecuta en el mismo proceso y con pocas iteraciones
+ * (orientativo, perfil {@code benchmark}). Para una medición seria: {@code main}, con más
+ * iteraciones y forks.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MailTemplateRendererBenchmark {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private MailTemplateRenderer cached;
+    private MailTemplateRenderer uncached;
+
+    @Setup
+    public void setUp() {
+        ResourceBundleMessageSource messageSource = MailTemplateRendererTests.messageSource();
+        SpringTemplateEngine engine = MailTemplateRendererTests.templateEngine(messageSource);
+        cached = new MailTemplateRenderer(engine, messageSource, true, 100);
+        uncached = new MailTemplateRenderer(engine, messageSource, false, 100);
+    }
+
+    @Benchmark
+    public String fullRender() {
+        return render(uncached);
+    }
+
+    @Benchmark
+    public String cachedRender() {
+        return render(cached);
+    }
+
+    private String render(MailTemplateRenderer renderer) {
+        Map<String, Object> vars = Map.of(
+                "resetUrl", "https://app.test/auth/reset-password?token=" + sequence.incrementAndGet(),
+                "ttlMinutes", 30);
+        String subject = renderer.renderSubject("mail.passwordreset.subject", Locale.ENGLISH);
+        return renderer.renderBody("mail/password-reset", subject, vars, Locale.ENGLISH);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(options(1, 5, 5)).run();
+    }
+
+    static Options options(int forks, int warmups, int iterations) {
+        return new OptionsBuilder()
+                .include(MailTemplateRendererBenchmark.class.getSimpleName())
+                .forks(forks)
+                .warmupIterations(warmups)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(iterations)
+                .measurementTime(TimeValue.seconds(1))
+                .build();
+    }
+
+    static double score(Collection<RunResult> results, String method) {
+        return results.stream()
+                .filter(r -> r.getParams().getBenchmark().endsWith("." + method))
+                .findFirst()
+                .orElseThrow()
+                .getPrimaryResult()
+                .getScore();
+    }
+}
@@ -0,0 +1,28 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ejecución corta y en proceso de {@link MailTemplateRendererBenchmark}. Tarda unos segundos y
+ * compara tiempos, así que no forma parte de {@code mvn test}: solo se ejecuta con el perfil
+ * {@code benchmark}. La equivalencia funcional de la caché la cubre {@link MailTemplateRendererTests}.
+ */
+class MailTemplateRendererJmhTest {
+
+    @Test
+    void cachedRenderingHasHigherThroughput() throws Exception {
+        Collection<RunResult> results = new Runner(MailTemplateRendererBenchmark.options(0, 2, 3)).run();
+        double full = MailTemplateRendererBenchmark.score(results, "fullRender");
+        double cached = MailTemplateRendererBenchmark.score(results, "cachedRender");
+
+        assertTrue(cached > full, String.format(
+                "El renderizado con caché debería ser más rápido que el completo (completo=%.0f/s, caché=%.0f/s)",
+                full, cached));
+    }
+}
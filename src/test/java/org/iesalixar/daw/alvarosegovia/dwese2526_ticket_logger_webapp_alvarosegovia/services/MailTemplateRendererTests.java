@@ -0,0 +1,72 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * El renderizado con caché debe producir exactamente el mismo HTML que Thymeleaf.
+ */
+class MailTemplateRendererTests {
+
+    static SpringTemplateEngine templateEngine(ResourceBundleMessageSource messageSource) {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        engine.setTemplateEngineMessageSource(messageSource);
+        return engine;
+    }
+
+    static ResourceBundleMessageSource messageSource() {
+        ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        messageSource.setDefaultEncoding("UTF-8");
+        messageSource.setFallbackToSystemLocale(false);
+        return messageSource;
+    }
+
+    private final ResourceBundleMessageSource messageSource = messageSource();
+    private final SpringTemplateEngine engine = templateEngine(messageSource);
+    private final MailTemplateRenderer renderer = new MailTemplateRenderer(engine, messageSource, true, 100);
+
+    @Test
+    void cachedRenderingMatchesThymeleaf() {
+        for (Locale locale : new Locale[]{Locale.of("es"), Locale.ENGLISH}) {
+            for (String url : new String[]{"https://app.test/auth/reset?token=abc", "https://app.test/r?a=1&b=<x>\"'"}) {
+                Map<String, Object> vars = Map.of("resetUrl", url, "ttlMinutes", 30);
+                String subject = renderer.renderSubject("mail.passwordreset.subject", locale);
+
+                Context ctx = new Context(locale);
+                ctx.setVariables(vars);
+                ctx.setVariable("subject", messageSource.getMessage("mail.passwordreset.subject", null, locale));
+                ctx.setVariable("lang", locale.getLanguage());
+                String expected = engine.process("mail/password-reset", ctx);
+
+                assertEquals(expected, renderer.renderBody("mail/password-reset", subject, vars, locale));
+            }
+        }
+    }
+
+    @Test
+    void disabledCacheRendersEveryTime() {
+        MailTemplateRenderer uncached = new MailTemplateRenderer(engine, messageSource, false, 100);
+        Map<String, Object> vars = Map.of("resetUrl", "https://app.test/x", "ttlMinutes", 30);
+        String subject = uncached.renderSubject("mail.passwordreset.subject", Locale.ENGLISH);
+
+        assertEquals("Password reset", subject);
+        assertEquals(renderer.renderBody("mail/password-reset", subject, vars, Locale.ENGLISH),
+                uncached.renderBody("mail/password-reset", subject, vars, Locale.ENGLISH));
+    }
+}
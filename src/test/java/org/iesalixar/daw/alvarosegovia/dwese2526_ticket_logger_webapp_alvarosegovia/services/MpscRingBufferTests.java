@@ -0,0 +1,82 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * La cola de auditoría no debe bloquear ni perder elementos aceptados con varios productores.
+ */
+class MpscRingBufferTests {
+
+    @Test
+    void roundsCapacityAndRejectsWhenFull() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(99));
+        assertEquals(4, buffer.size());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, buffer.drainTo(drained, 2));
+        assertEquals(List.of(0, 1), drained);
+        assertTrue(buffer.offer(4));
+        assertTrue(buffer.offer(5));
+
+        drained.clear();
+        buffer.drainTo(drained, 10);
+        assertEquals(List.of(2, 3, 4, 5), drained);
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void concurrentProducersLoseNoAcceptedElement() throws Exception {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(256);
+        int producers = 4;
+        int perProducer = 20_000;
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        if (buffer.offer(base + i)) accepted.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+
+            Set<Integer> seen = new HashSet<>();
+            List<Integer> batch = new ArrayList<>();
+            pool.shutdown();
+            while (!pool.isTerminated() || buffer.size() > 0) {
+                batch.clear();
+                buffer.drainTo(batch, 64);
+                for (Integer value : batch) {
+                    assertTrue(seen.add(value), "elemento duplicado: " + value);
+                }
+            }
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(accepted.get(), seen.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
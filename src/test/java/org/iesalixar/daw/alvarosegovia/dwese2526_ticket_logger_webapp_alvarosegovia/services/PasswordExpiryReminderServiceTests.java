@@ -0,0 +1,111 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Campaña de recordatorios de caducidad: ventana, paginación keyset y reanudación sin reenvíos.
+ * Necesita la misma base de datos que el resto de tests de contexto; los usuarios creados se borran al terminar.
+ * Las caducidades de prueba están en el año 2200 para no coincidir con cuentas reales.
+ */
+@SpringBootTest(properties = {
+        "spring.mail.host=127.0.0.1",
+        "spring.mail.port=3025",
+        "spring.mail.username=",
+        "spring.mail.password=",
+        "spring.mail.from=noreply@test.local",
+        "spring.mail.properties.mail.smtp.auth=false",
+        "spring.mail.properties.mail.smtp.starttls.enable=false",
+        "spring.mail.properties.mail.smtp.starttls.required=false",
+        "app.password-expiry.reminders.batch-size=2",
+        "app.password-expiry.reminders.rate-per-second=0"
+})
+class PasswordExpiryReminderServiceTests {
+
+    private static final String DOMAIN = "@reminder.test.local";
+    private static final LocalDateTime FROM = LocalDateTime.of(2200, 1, 1, 0, 0);
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Autowired
+    private PasswordExpiryReminderServiceImpl reminderService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM users WHERE email LIKE ?", "%" + DOMAIN);
+    }
+
+    @Test
+    void remindsUsersInWindowOnceAcrossPages() throws Exception {
+        // Misma caducidad para dos usuarios: el cursor desempata por id
+        insertUser("a", FROM.plusDays(1), true);
+        insertUser("b", FROM.plusDays(1), true);
+        insertUser("c", FROM.plusDays(3), true);
+        insertUser("inactive", FROM.plusDays(2), false);
+        insertUser("later", FROM.plusDays(30), true);
+
+        int sent = reminderService.sendReminders(FROM, FROM.plusDays(7));
+
+        assertEquals(3, sent);
+        assertEquals(Set.of("a" + DOMAIN, "b" + DOMAIN, "c" + DOMAIN), recipients());
+        // Fecha de caducidad en el idioma por defecto (sin perfil): "2 de enero de 2200"
+        assertTrue(GreenMailUtil.getBody(greenMail.getReceivedMessages()[0]).contains("2200"));
+        assertEquals(0, reminderService.sendReminders(FROM, FROM.plusDays(7)));
+    }
+
+    @Test
+    void resumesWithoutRemailingRecordedUsers() throws Exception {
+        long a = insertUser("a", FROM.plusDays(1), true);
+        insertUser("b", FROM.plusDays(2), true);
+        // Ejecución anterior interrumpida tras enviar a "a"
+        jdbcTemplate.update("INSERT INTO password_expiry_reminders (user_id, password_expires_at, sent_at) VALUES (?, ?, ?)",
+                a, Timestamp.valueOf(FROM.plusDays(1)), Timestamp.valueOf(LocalDateTime.now()));
+
+        assertEquals(1, reminderService.sendReminders(FROM, FROM.plusDays(7)));
+        assertEquals(Set.of("b" + DOMAIN), recipients());
+
+        // Con la contraseña cambiada (caducidad nueva) le corresponde otro recordatorio
+        jdbcTemplate.update("UPDATE users SET password_expires_at = ? WHERE id = ?", Timestamp.valueOf(FROM.plusDays(5)), a);
+        assertEquals(1, reminderService.sendReminders(FROM, FROM.plusDays(7)));
+    }
+
+    private long insertUser(String name, LocalDateTime expiresAt, boolean active) {
+        jdbcTemplate.update("INSERT INTO users (email, password_hash, active, password_expires_at) VALUES (?, 'x', ?, ?)",
+                name + DOMAIN, active, Timestamp.valueOf(expiresAt));
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = ?", Long.class, name + DOMAIN);
+    }
+
+    private Set<String> recipients() throws Exception {
+        return Arrays.stream(greenMail.getReceivedMessages())
+                .map(PasswordExpiryReminderServiceTests::recipient)
+                .collect(Collectors.toSet());
+    }
+
+    private static String recipient(MimeMessage message) {
+        try {
+            return message.getAllRecipients()[0].toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * El hash binario debe coincidir con el SHA-256 estándar (el mismo que se guardaba en hex,
+ * para que la migración con UNHEX conserve los tokens vivos) también con el digest reutilizado.
+ */
+class PasswordResetTokenHashTests {
+
+    @Test
+    void matchesStandardSha256() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                HexFormat.of().formatHex(PasswordResetServiceImpl.sha256("abc")));
+        // Reutilizar el digest del hilo no arrastra estado entre llamadas
+        assertArrayEquals(PasswordResetServiceImpl.sha256("abc"), PasswordResetServiceImpl.sha256("abc"));
+        assertEquals(32, PasswordResetServiceImpl.sha256("").length);
+    }
+
+    @Test
+    void generatesUrlSafeUniqueTokens() {
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            String token = PasswordResetServiceImpl.generateSecureToken();
+            assertTrue(token.matches("[A-Za-z0-9_-]{43}"), token);
+            assertTrue(tokens.add(token));
+        }
+    }
+
+    @Test
+    void hashesConsistentlyFromSeveralThreads() throws Exception {
+        byte[] expected = PasswordResetServiceImpl.sha256("token");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        assertArrayEquals(expected, PasswordResetServiceImpl.sha256("token"));
+                    }
+                });
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
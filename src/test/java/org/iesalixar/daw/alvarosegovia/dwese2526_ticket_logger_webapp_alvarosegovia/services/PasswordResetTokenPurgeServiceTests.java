@@ -0,0 +1,67 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Purga por bloques de tokens caducados y exclusión entre ejecuciones.
+ * Necesita la misma base de datos que el resto de tests de contexto; los datos se revierten al terminar.
+ */
+@SpringBootTest(properties = {"app.password-reset.purge.chunk-size=2", "app.password-reset.purge.pause=PT0S"})
+@Transactional
+class PasswordResetTokenPurgeServiceTests {
+
+    @Autowired
+    private PasswordResetTokenPurgeService purgeService;
+
+    @Autowired
+    private SchedulerLock schedulerLock;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void purgesOnlyTokensPastRetentionInChunks() {
+        jdbcTemplate.update("INSERT INTO users (email, password_hash) VALUES ('purge.test@test.local', 'x')");
+        Long userId = jdbcTemplate.queryForObject(
+                "SELECT id FROM users WHERE email = 'purge.test@test.local'", Long.class);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 5; i++) {
+            insertToken(userId, "old-" + i, now.minusDays(3));
+        }
+        insertToken(userId, "recent", now.minusHours(1));
+        insertToken(userId, "active", now.plusMinutes(30));
+
+        int purged = purgeService.purgeExpiredTokens();
+
+        assertTrue(purged >= 5);
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM password_reset_tokens WHERE user_id = ?", Integer.class, userId));
+    }
+
+    @Test
+    void lockIsExclusiveWhileHeld() {
+        AtomicBoolean innerRan = new AtomicBoolean();
+        boolean outerRan = schedulerLock.runExclusively("test-lock", Duration.ofMinutes(1), () ->
+                innerRan.set(schedulerLock.runExclusively("test-lock", Duration.ofMinutes(1), () -> { })));
+
+        assertTrue(outerRan);
+        assertFalse(innerRan.get());
+        assertTrue(schedulerLock.runExclusively("test-lock", Duration.ofMinutes(1), () -> { }));
+    }
+
+    private void insertToken(Long userId, String hash, LocalDateTime expiresAt) {
+        jdbcTemplate.update("INSERT INTO password_reset_tokens (user_id, token_hash, expires_at, created_at) VALUES (?, ?, ?, ?)",
+                userId, PasswordResetServiceImpl.sha256(hash), Timestamp.valueOf(expiresAt), Timestamp.valueOf(expiresAt.minusMinutes(30)));
+    }
+}
@@ -0,0 +1,119 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark JMH del envío de correo contra un SMTP local (GreenMail), en mensajes por segundo:
+ * una conexión por mensaje ({@link JavaMailSenderImpl#send(MimeMessage)}) frente a lotes por una
+ * conexión reutilizada de {@link SmtpTransportPool}.
+ * <p>
+ * {@link SmtpTransportPoolJmhTest} lo ejecuta en el mismo proceso y con pocas iteraciones
+ * (orientativo, perfil {@code benchmark}). Para una medición seria: {@code main}, con más
+ * iteraciones y forks.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SmtpTransportPoolBenchmark {
+
+    static final int BATCH_SIZE = 50;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private GreenMail greenMail;
+    private JavaMailSenderImpl mailSender;
+    private SmtpTransportPool pool;
+
+    @Setup
+    public void setUp() {
+        greenMail = new GreenMail(ServerSetupTest.SMTP.dynamicPort());
+        greenMail.start();
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+        pool = new SmtpTransportPool(mailSender, 1, Duration.ofMinutes(1), Duration.ofSeconds(5),
+                new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.closeAll();
+        greenMail.stop();
+    }
+
+    /** GreenMail guarda en memoria todo lo recibido: se vacía entre iteraciones. */
+    @TearDown(Level.Iteration)
+    public void purgeMailboxes() throws Exception {
+        greenMail.purgeEmailFromAllMailboxes();
+    }
+
+    @Benchmark
+    public void unpooled() throws Exception {
+        mailSender.send(message());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Map<Integer, Exception> pooledBatch() throws Exception {
+        List<MimeMessage> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) batch.add(message());
+        Map<Integer, Exception> failures = pool.sendAll(batch);
+        if (!failures.isEmpty()) throw new IllegalStateException("Fallos en el lote: " + failures);
+        return failures;
+    }
+
+    private MimeMessage message() throws Exception {
+        return SmtpTransportPoolTests.message(mailSender, (int) sequence.incrementAndGet());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(options(1, 5, 5)).run();
+    }
+
+    static Options options(int forks, int warmups, int iterations) {
+        return new OptionsBuilder()
+                .include(SmtpTransportPoolBenchmark.class.getSimpleName())
+                .forks(forks)
+                .warmupIterations(warmups)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(iterations)
+                .measurementTime(TimeValue.seconds(1))
+                .build();
+    }
+
+    static double score(Collection<RunResult> results, String method) {
+        return results.stream()
+                .filter(r -> r.getParams().getBenchmark().endsWith("." + method))
+                .findFirst()
+                .orElseThrow()
+                .getPrimaryResult()
+                .getScore();
+    }
+}
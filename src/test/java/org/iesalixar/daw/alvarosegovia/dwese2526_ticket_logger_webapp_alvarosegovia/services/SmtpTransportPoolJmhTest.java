@@ -0,0 +1,28 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ejecución corta y en proceso de {@link SmtpTransportPoolBenchmark}. Envía miles de correos y
+ * compara tiempos, así que no forma parte de {@code mvn test}: solo se ejecuta con el perfil
+ * {@code benchmark}. La reutilización de conexiones la cubre {@link SmtpTransportPoolTests}.
+ */
+class SmtpTransportPoolJmhTest {
+
+    @Test
+    void pooledBatchesHaveHigherThroughput() throws Exception {
+        Collection<RunResult> results = new Runner(SmtpTransportPoolBenchmark.options(0, 2, 3)).run();
+        double unpooled = SmtpTransportPoolBenchmark.score(results, "unpooled");
+        double pooled = SmtpTransportPoolBenchmark.score(results, "pooledBatch");
+
+        assertTrue(pooled > unpooled, String.format(
+                "Los lotes por el pool deberían enviar más rápido que una conexión por mensaje "
+                        + "(sin pool=%.0f msg/s, pool=%.0f msg/s)", unpooled, pooled));
+    }
+}
@@ -0,0 +1,117 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pool de conexiones contra un SMTP local (GreenMail): lotes por una conexión reutilizada,
+ * reposición de conexiones rotas y espera máxima por una conexión libre. La comparación de
+ * rendimiento con una conexión por mensaje está en {@link SmtpTransportPoolBenchmark}.
+ */
+class SmtpTransportPoolTests {
+
+    private static final int BATCHES = 4;
+    private static final int BATCH_SIZE = 5;
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final JavaMailSenderImpl mailSender = mailSender();
+
+    @Test
+    void pooledBatchesReuseOneConnection() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender, 2, Duration.ofMinutes(1), Duration.ofSeconds(5), meterRegistry);
+        try {
+            for (int b = 0; b < BATCHES; b++) {
+                List<MimeMessage> batch = new ArrayList<>(BATCH_SIZE);
+                for (int i = 0; i < BATCH_SIZE; i++) batch.add(message(b * BATCH_SIZE + i));
+                Map<Integer, Exception> failures = pool.sendAll(batch);
+                assertTrue(failures.isEmpty(), () -> "Fallos en el lote: " + failures);
+            }
+
+            assertTrue(greenMail.waitForIncomingEmail(5_000, BATCHES * BATCH_SIZE));
+            // Todos los lotes han ido por la misma conexión
+            assertEquals(1.0, meterRegistry.get("mail.smtp.connections.opened").counter().count());
+        } finally {
+            pool.closeAll();
+        }
+    }
+
+    @Test
+    void brokenConnectionIsReplaced() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender, 1, Duration.ofMinutes(1), Duration.ofSeconds(5), meterRegistry);
+        try {
+            assertTrue(pool.sendAll(List.of(message(1))).isEmpty());
+
+            // El servidor se reinicia: la conexión del pool queda muerta
+            greenMail.stop();
+            greenMail.start();
+
+            Map<Integer, Exception> failures = pool.sendAll(List.of(message(2), message(3)));
+            // El primero detecta la conexión rota y se reintenta por una nueva: no se pierde ninguno
+            assertTrue(failures.isEmpty(), () -> "Fallos en el lote: " + failures);
+            assertTrue(greenMail.waitForIncomingEmail(5_000, 2));
+            assertEquals(2.0, meterRegistry.get("mail.smtp.connections.opened").counter().count());
+        } finally {
+            pool.closeAll();
+        }
+    }
+
+    @Test
+    void busyPoolFailsTheBatchAfterTheAcquireTimeout() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SmtpTransportPool pool = new SmtpTransportPool(mailSender, 1, Duration.ofMinutes(1), Duration.ofMillis(100), meterRegistry);
+        // Otro lote tiene ocupada la única conexión
+        Semaphore permits = (Semaphore) ReflectionTestUtils.getField(pool, "permits");
+        permits.acquire();
+        try {
+            Map<Integer, Exception> failures = pool.sendAll(List.of(message(1), message(2)));
+
+            assertEquals(Set.of(0, 1), failures.keySet());
+            assertEquals(1.0, meterRegistry.get("mail.smtp.pool.acquire_timeouts").counter().count());
+            assertEquals(0.0, meterRegistry.get("mail.smtp.connections.opened").counter().count());
+        } finally {
+            permits.release();
+            pool.closeAll();
+        }
+    }
+
+    private MimeMessage message(int i) throws Exception {
+        return message(mailSender, i);
+    }
+
+    static MimeMessage message(JavaMailSenderImpl mailSender, int i) throws Exception {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+        helper.setFrom("noreply@test.local");
+        helper.setTo("pool-" + i + "@test.local");
+        helper.setSubject("Mensaje " + i);
+        helper.setText("<p>Mensaje " + i + "</p>", true);
+        return message;
+    }
+
+    private static JavaMailSenderImpl mailSender() {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(ServerSetupTest.SMTP.getPort());
+        return sender;
+    }
+}
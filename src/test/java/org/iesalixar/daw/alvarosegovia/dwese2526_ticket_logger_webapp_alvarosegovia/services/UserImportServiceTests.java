@@ -0,0 +1,113 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserImportRowErrorDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserImportStatusDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Importación CSV de extremo a extremo: validación de filas, resolución de roles, inserción por
+ * bloques, informe de errores y retención del estado. La importación escribe en sus propias
+ * transacciones, así que los usuarios de prueba se borran al terminar.
+ * Necesita la misma base de datos que el resto de tests de contexto.
+ */
+@SpringBootTest(properties = {"app.user-import.batch-size=2", "app.user-import.job-retention=PT2S"})
+class UserImportServiceTests {
+
+    private static final String DOMAIN = "@import.test.local";
+
+    @Autowired
+    private UserImportService importService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM user_roles WHERE user_id IN (SELECT id FROM users WHERE email LIKE ?)",
+                "%" + DOMAIN);
+        jdbcTemplate.update("DELETE FROM users WHERE email LIKE ?", "%" + DOMAIN);
+    }
+
+    @Test
+    void importsValidRowsAndReportsTheRest() throws Exception {
+        String existing = jdbcTemplate.queryForObject("SELECT email FROM users ORDER BY id LIMIT 1", String.class);
+        String csv = String.join("\n",
+                "email,password,roles",
+                "uno" + DOMAIN + ",Password1,ROLE_USER",
+                // La contraseña puede llevar comas; roles sin prefijo y en minúsculas
+                "dos" + DOMAIN + ",Pass,word,2,user|manager",
+                "no-es-un-email,Password1,ROLE_USER",
+                "corta" + DOMAIN + ",corta,ROLE_USER",
+                "sinrol" + DOMAIN + ",Password1,ROLE_NOPE",
+                "UNO" + DOMAIN + ",Password1,ROLE_USER",
+                existing + ",Password1,ROLE_USER",
+                "sin-comas",
+                "",
+                "tres" + DOMAIN + ",Password3,ROLE_ADMIN");
+
+        UserImportStatusDTO status = runImport(csv);
+
+        assertEquals("COMPLETED", status.getStatus());
+        assertEquals(9, status.getTotalRows());
+        assertEquals(9, status.getProcessedRows());
+        assertEquals(3, status.getImportedRows());
+        assertEquals(6, status.getFailedRows());
+
+        Map<Long, String> errors = status.getErrors().stream()
+                .collect(Collectors.toMap(UserImportRowErrorDTO::getLineNumber, UserImportRowErrorDTO::getMessageKey));
+        assertEquals(Map.of(
+                4L, "msg.user-import.error.email",
+                5L, "msg.user-import.error.password",
+                6L, "msg.user-import.error.role",
+                7L, "msg.user-import.error.duplicateInFile",
+                8L, "msg.user-import.error.emailExists",
+                9L, "msg.user-import.error.format"), errors);
+
+        assertEquals(List.of("ROLE_MANAGER", "ROLE_USER"), jdbcTemplate.queryForList(
+                "SELECT r.name FROM user_roles ur JOIN roles r ON r.id = ur.role_id " +
+                "JOIN users u ON u.id = ur.user_id WHERE u.email = ? ORDER BY r.name", String.class, "dos" + DOMAIN));
+
+        Map<String, Object> user = jdbcTemplate.queryForMap(
+                "SELECT password_hash, must_change_password FROM users WHERE email = ?", "dos" + DOMAIN);
+        assertTrue(passwordEncoder.matches("Pass,word,2", (String) user.get("password_hash")));
+        assertEquals(Boolean.FALSE, user.get("must_change_password"),
+                "los importados deben poder entrar con la contraseña del CSV");
+    }
+
+    @Test
+    void finishedJobIsEvictedAfterRetention() throws Exception {
+        UserImportStatusDTO status = runImport("uno" + DOMAIN + ",Password1,ROLE_USER");
+        assertEquals("COMPLETED", status.getStatus());
+
+        Thread.sleep(2_500);
+        assertNull(importService.getStatus(status.getJobId()));
+    }
+
+    private UserImportStatusDTO runImport(String csv) throws InterruptedException {
+        String jobId = importService.startImport(new MockMultipartFile(
+                "file", "users.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8)));
+        long deadline = System.currentTimeMillis() + 30_000;
+        UserImportStatusDTO status = importService.getStatus(jobId);
+        while ("RUNNING".equals(status.getStatus()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            status = importService.getStatus(jobId);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,159 @@
+package org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.services;
+
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.dto.UserFilterDTO;
+import org.iesalixar.daw.alvarosegovia.dwese2526_ticket_logger_webapp_alvarosegovia.repositories.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Asignación masiva de roles contra la base de datos: {@code INSERT IGNORE} y {@code DELETE} por
+ * bloques, rechazo del filtro vacío, protección del rol de administrador de quien lanza el cambio e
+ * invalidación de la caché de login y de la de totales del listado. Los cambios por filtro se
+ * confirman bloque a bloque, así que los usuarios de prueba se borran al terminar.
+ * Necesita la misma base de datos que el resto de tests de contexto.
+ */
+@SpringBootTest
+class UserServiceBulkRoleTests {
+
+    private static final String PREFIX = "bulk-role-";
+    private static final String DOMAIN = "@bulk.test.local";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CaffeineUserCache userCache;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long adminRoleId;
+    private Long managerRoleId;
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        adminRoleId = roleId("ROLE_ADMIN");
+        managerRoleId = roleId("ROLE_MANAGER");
+        for (int i = 0; i < 3; i++) {
+            String email = PREFIX + i + DOMAIN;
+            jdbcTemplate.update("INSERT INTO users (email, password_hash, active, account_non_locked) "
+                    + "VALUES (?, 'x', TRUE, TRUE)", email);
+            userIds.add(jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = ?", Long.class, email));
+        }
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM user_roles WHERE user_id IN (SELECT id FROM users WHERE email LIKE ?)",
+                "%" + DOMAIN);
+        jdbcTemplate.update("DELETE FROM users WHERE email LIKE ?", "%" + DOMAIN);
+        userCache.clear();
+    }
+
+    @Test
+    void grantSkipsExistingAssignmentsAndRevokeDeletesThem() {
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) VALUES (?, ?)", userIds.get(0), managerRoleId);
+
+        assertEquals(2, userService.grantRole(managerRoleId, userIds));
+        assertEquals(0, userService.grantRole(managerRoleId, userIds));
+        assertEquals(3, countAssignments(managerRoleId));
+
+        assertEquals(2, userService.revokeRole(managerRoleId, userIds.subList(0, 2), null));
+        assertEquals(1, countAssignments(managerRoleId));
+    }
+
+    @Test
+    void filterChangesApplyToMatchingUsersOnly() {
+        UserFilterDTO filter = UserFilterDTO.builder().emailPrefix(PREFIX).build();
+
+        assertEquals(3, userService.grantRole(managerRoleId, filter));
+        assertEquals(3, countAssignments(managerRoleId));
+
+        assertEquals(3, userService.revokeRole(managerRoleId, filter, null));
+        assertEquals(0, countAssignments(managerRoleId));
+    }
+
+    @Test
+    void emptyFilterIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> userService.grantRole(managerRoleId, new UserFilterDTO()));
+        assertThrows(IllegalArgumentException.class, () -> userService.revokeRole(managerRoleId, (UserFilterDTO) null, null));
+    }
+
+    @Test
+    void actingAdminKeepsOwnAdminRole() {
+        userService.grantRole(adminRoleId, userIds);
+        String actingEmail = PREFIX + 0 + DOMAIN;
+
+        assertEquals(2, userService.revokeRole(adminRoleId, userIds, actingEmail));
+        assertEquals(1, countAssignments(adminRoleId));
+
+        userService.grantRole(adminRoleId, userIds);
+        UserFilterDTO filter = UserFilterDTO.builder().emailPrefix(PREFIX).build();
+        assertEquals(2, userService.revokeRole(adminRoleId, filter, actingEmail));
+        assertEquals(List.of(userIds.get(0)), jdbcTemplate.queryForList(
+                "SELECT user_id FROM user_roles WHERE role_id = ? AND user_id IN (?, ?, ?)", Long.class,
+                adminRoleId, userIds.get(0), userIds.get(1), userIds.get(2)));
+    }
+
+    @Test
+    void changedUsersAreEvictedFromLoginCache() {
+        String email = PREFIX + 1 + DOMAIN;
+        userCache.putUserInCache(User.withUsername(email).password("x").roles("USER").build());
+
+        userService.grantRole(managerRoleId, List.of(userIds.get(1)));
+        assertNull(userCache.getUserFromCache(email));
+
+        userCache.putUserInCache(User.withUsername(email).password("x").roles("USER", "MANAGER").build());
+        userService.revokeRole(managerRoleId, UserFilterDTO.builder().emailPrefix(PREFIX + 1).build(), null);
+        assertNull(userCache.getUserFromCache(email));
+    }
+
+    @Test
+    void countCacheIsEvictedAfterCommit() {
+        UserFilterDTO filter = UserFilterDTO.builder().roleId(managerRoleId).emailPrefix(PREFIX).build();
+        userService.grantRole(managerRoleId, List.of(userIds.get(0)));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userService.grantRole(managerRoleId, userIds);
+            // Una lectura concurrente antes de confirmar ve y cachea el total antiguo
+            assertEquals(1, CompletableFuture.supplyAsync(() -> countFiltered(filter)).join());
+        });
+
+        assertEquals(3, countFiltered(filter));
+    }
+
+    private long countFiltered(UserFilterDTO filter) {
+        return userRepository.findListRowsFiltered(filter, PageRequest.of(0, 1)).getTotalElements();
+    }
+
+    private Long roleId(String name) {
+        return jdbcTemplate.queryForObject("SELECT id FROM roles WHERE name = ?", Long.class, name);
+    }
+
+    private int countAssignments(Long roleId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM user_roles ur JOIN users u ON u.id = ur.user_id "
+                        + "WHERE ur.role_id = ? AND u.email LIKE ?", Integer.class, roleId, "%" + DOMAIN);
+    }
+}